@@ -0,0 +1,26 @@
+package ch.epfl.alpano;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks of the <code>bench</code> source folder, which have to be compiled with the JMH annotation processor
+ * (<code>jmh-core</code> and <code>jmh-generator-annprocess</code> on the class path).
+ * The usual JMH command line options are accepted, for example a regular expression selecting the benchmarks to run.
+ * The allocation rate of each benchmark is always reported, through the GC profiler.
+ */
+public final class Benchmarks
+{
+    private Benchmarks()
+    {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException
+    {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,73 @@
+package ch.epfl.alpano;
+
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Benchmarks of the root search of a single ray, as done for each pixel of a panorama.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Math2Benchmark
+{
+    private static final int SEARCH_INTERVAL = 64;
+    private static final int DICHOTOMY_STEP = 4;
+
+    private Path directory;
+    private HgtDiscreteElevationModel dem;
+    private DoubleUnaryOperator ray;
+    private double maxDistance;
+    private double firstInterval;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("alpano-bench");
+        dem = new HgtDiscreteElevationModel(SyntheticTerrain.createHgtFile(directory));
+
+        final PanoramaParameters parameters = SyntheticTerrain.parameters(1, 1);
+        final ElevationProfile profile = new ElevationProfile(new ContinuousElevationModel(dem), parameters.observerPosition(), parameters.centerAzimuth(), parameters.maxDistance());
+
+        ray = PanoramaComputer.rayToGroundDistance(profile, parameters.observerElevation(), Math.tan(Math.toRadians(-1)));
+        maxDistance = parameters.maxDistance();
+        firstInterval = Math2.firstIntervalContainingRoot(ray, 0, maxDistance - SEARCH_INTERVAL, SEARCH_INTERVAL);
+
+        if(firstInterval == Double.POSITIVE_INFINITY)
+            throw new IllegalStateException("The ray does not reach the ground.");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        dem.close();
+        dem = null;
+        ray = null;
+
+        System.gc(); // Releases the mapping of the file before deleting it
+        SyntheticTerrain.delete(directory);
+    }
+
+    @Benchmark
+    public double firstIntervalContainingRoot()
+    {
+        return Math2.firstIntervalContainingRoot(ray, 0, maxDistance - SEARCH_INTERVAL, SEARCH_INTERVAL);
+    }
+
+    @Benchmark
+    public double improveRoot()
+    {
+        return Math2.improveRoot(ray, firstInterval, firstInterval + SEARCH_INTERVAL, DICHOTOMY_STEP);
+    }
+}
@@ -0,0 +1,84 @@
+package ch.epfl.alpano;
+
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import ch.epfl.alpano.dem.PyramidDiscreteElevationModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the computation of whole panoramas of several sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PanoramaComputerBenchmark
+{
+    /**
+     * The size of the panorama, as <code>width</code>x<code>height</code>.
+     */
+    @Param({"320x120", "1000x300", "2500x800"})
+    public String size;
+
+    /**
+     * The storage of the panorama.
+     */
+    @Param({"HEAP", "DIRECT", "DIRECT_HALF"})
+    public Panorama.Storage storage;
+
+    /**
+     * The bound of the terrain slope given to the computer, infinite to march the rays by fixed steps.
+     */
+    @Param({"Infinity", "10"})
+    public double maxTerrainSlope;
+
+    /**
+     * Whether the elevation model has a pyramid of its maximal elevations, used to skip spans of the rays.
+     */
+    @Param({"false", "true"})
+    public boolean pyramid;
+
+    private Path directory;
+    private DiscreteElevationModel dem;
+    private PanoramaComputer computer;
+    private PanoramaParameters parameters;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        final String[] dimensions = size.split("x");
+
+        directory = Files.createTempDirectory("alpano-bench");
+        final File file = SyntheticTerrain.createHgtFile(directory);
+        dem = pyramid ? PyramidDiscreteElevationModel.ofHgtFile(file) : new HgtDiscreteElevationModel(file);
+        computer = new PanoramaComputer(new ContinuousElevationModel(dem), maxTerrainSlope);
+        parameters = SyntheticTerrain.parameters(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        computer.close();
+        dem.close();
+        computer = null;
+        dem = null;
+
+        System.gc(); // Releases the mapping of the file before deleting it
+        SyntheticTerrain.delete(directory);
+    }
+
+    @Benchmark
+    public Panorama computePanorama()
+    {
+        return computer.computePanorama(parameters, storage);
+    }
+}
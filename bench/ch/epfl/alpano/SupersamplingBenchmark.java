@@ -0,0 +1,79 @@
+package ch.epfl.alpano;
+
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.PyramidDiscreteElevationModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the computation of supersampled panoramas, with all the pixels supersampled or only the ones on the edges.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SupersamplingBenchmark
+{
+    /**
+     * The display size of the panorama, as <code>width</code>x<code>height</code>.
+     */
+    @Param({"320x120", "1000x300"})
+    public String size;
+
+    /**
+     * The supersampling exponent.
+     */
+    @Param({"1", "2"})
+    public int exponent;
+
+    private static final Set<Panorama.Channel> CHANNELS = EnumSet.of(Panorama.Channel.DISTANCE, Panorama.Channel.SLOPE);
+
+    private Path directory;
+    private DiscreteElevationModel dem;
+    private PanoramaComputer computer;
+    private PanoramaParameters parameters;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        final String[] dimensions = size.split("x");
+
+        directory = Files.createTempDirectory("alpano-bench");
+        dem = PyramidDiscreteElevationModel.ofHgtFile(SyntheticTerrain.createHgtFile(directory));
+        computer = new PanoramaComputer(new ContinuousElevationModel(dem));
+        parameters = SyntheticTerrain.parameters(Integer.parseInt(dimensions[0]) << exponent, Integer.parseInt(dimensions[1]) << exponent);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        computer.close();
+        dem.close();
+        computer = null;
+        dem = null;
+
+        System.gc(); // Releases the mapping of the file before deleting it
+        SyntheticTerrain.delete(directory);
+    }
+
+    @Benchmark
+    public Panorama computeFullSupersampling()
+    {
+        return computer.computePanorama(parameters, Panorama.Storage.HEAP, CHANNELS);
+    }
+
+    @Benchmark
+    public Panorama computeAdaptiveSupersampling()
+    {
+        return computer.computeAdaptivePanorama(parameters, Panorama.Storage.HEAP, CHANNELS, exponent);
+    }
+}
@@ -0,0 +1,128 @@
+package ch.epfl.alpano;
+
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.summit.Summit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A synthetic mountainous terrain, so that the benchmarks can run without the real HGT files.
+ * The terrain covers the tile N46E007, the panoramas are seen from its center.
+ */
+public final class SyntheticTerrain
+{
+    /**
+     * The name of the HGT file covering the terrain.
+     */
+    public static final String TILE_NAME = "N46E007.hgt";
+
+    private static final int LONGITUDE = 7, LATITUDE = 46;
+    private static final int SAMPLES_PER_ROW = DiscreteElevationModel.SAMPLES_PER_DEGREE + 1;
+
+    private static final int OBSERVER_ELEVATION = 1800;
+    private static final int MAX_DISTANCE = 30_000;
+
+    private SyntheticTerrain()
+    {
+    }
+
+    /**
+     * Returns the elevation of the terrain at a sample of the tile.
+     * @param column the column of the sample, from the west
+     * @param row the row of the sample, from the north
+     * @return the elevation (meters)
+     */
+    public static double elevation(int column, int row)
+    {
+        return 1500 + 1000 * Math.sin(column / 150.0) * Math.cos(row / 210.0) + 400 * Math.sin((column + row) / 57.0);
+    }
+
+    /**
+     * Writes the HGT file of the terrain.
+     * @param directory the directory of the file
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    public static File createHgtFile(Path directory) throws IOException
+    {
+        final Path path = directory.resolve(TILE_NAME);
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            final ShortBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * SAMPLES_PER_ROW * SAMPLES_PER_ROW).asShortBuffer();
+
+            for(int row = 0; row < SAMPLES_PER_ROW; row++)
+                for(int column = 0; column < SAMPLES_PER_ROW; column++)
+                    buffer.put(row * SAMPLES_PER_ROW + column, (short) Math.round(elevation(column, row)));
+        }
+
+        return path.toFile();
+    }
+
+    /**
+     * Deletes a directory created for the terrain, and its files.
+     * @param directory the directory
+     * @throws IOException if a file cannot be deleted
+     */
+    public static void delete(Path directory) throws IOException
+    {
+        final List<Path> paths = new ArrayList<>();
+        Files.walk(directory).forEach(paths::add);
+
+        paths.sort(Comparator.reverseOrder());
+
+        for(Path path : paths)
+            Files.deleteIfExists(path);
+    }
+
+    /**
+     * Returns the position of the observer, at the center of the tile.
+     * @return the position
+     */
+    public static GeoPoint observerPosition()
+    {
+        return new GeoPoint(Math.toRadians(LONGITUDE + 0.5), Math.toRadians(LATITUDE + 0.5));
+    }
+
+    /**
+     * Returns the parameters of a panorama looking south from the center of the tile.
+     * @param width the width of the panorama
+     * @param height the height of the panorama
+     * @return the parameters
+     */
+    public static PanoramaParameters parameters(int width, int height)
+    {
+        return new PanoramaParameters(observerPosition(), OBSERVER_ELEVATION, Math.toRadians(180), Math.toRadians(60), MAX_DISTANCE, width, height);
+    }
+
+    /**
+     * Returns summits spread pseudo-randomly over the tile, always the same ones for a given count.
+     * @param count the number of summits
+     * @return the summits
+     */
+    public static List<Summit> summits(int count)
+    {
+        final Random random = new Random(0);
+        final List<Summit> summits = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++)
+        {
+            final int column = random.nextInt(SAMPLES_PER_ROW), row = random.nextInt(SAMPLES_PER_ROW);
+            final GeoPoint position = new GeoPoint(Math.toRadians(LONGITUDE + column / (double) DiscreteElevationModel.SAMPLES_PER_DEGREE), Math.toRadians(LATITUDE + 1 - row / (double) DiscreteElevationModel.SAMPLES_PER_DEGREE));
+
+            summits.add(new Summit("Summit " + i, position, (int) Math.round(elevation(column, row))));
+        }
+
+        return summits;
+    }
+}
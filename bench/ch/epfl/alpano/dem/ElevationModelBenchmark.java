@@ -0,0 +1,110 @@
+package ch.epfl.alpano.dem;
+
+import ch.epfl.alpano.SyntheticTerrain;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the elevation models, following a diagonal of the synthetic tile as the ray marching does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElevationModelBenchmark
+{
+    private static final int POINTS = 4096;
+    private static final int PROFILE_LENGTH = 30_000;
+
+    /**
+     * The number of tiles of the samples cache, 0 to read the file directly.
+     */
+    @Param({"0", "64"})
+    public int cachedTiles;
+
+    private Path directory;
+    private HgtDiscreteElevationModel dem;
+    private ContinuousElevationModel cDEM;
+
+    private final int[] columns = new int[POINTS], rows = new int[POINTS];
+    private final double[] longitudes = new double[POINTS], latitudes = new double[POINTS];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("alpano-bench");
+        dem = new HgtDiscreteElevationModel(SyntheticTerrain.createHgtFile(directory), cachedTiles);
+        cDEM = new ContinuousElevationModel(dem);
+
+        final int x0 = dem.extent().iX().includedFrom(), y0 = dem.extent().iY().includedFrom();
+
+        for(int i = 0; i < POINTS; i++)
+        {
+            final double t = i / (double) POINTS;
+
+            columns[i] = x0 + (int) (t * DiscreteElevationModel.SAMPLES_PER_DEGREE);
+            rows[i] = y0 + (int) (t * DiscreteElevationModel.SAMPLES_PER_DEGREE * 0.7);
+            longitudes[i] = (columns[i] + 0.3) / DiscreteElevationModel.SAMPLES_PER_RADIAN;
+            latitudes[i] = (rows[i] + 0.6) / DiscreteElevationModel.SAMPLES_PER_RADIAN;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        dem.close();
+        dem = null;
+        cDEM = null;
+
+        System.gc(); // Releases the mapping of the file before deleting it
+        SyntheticTerrain.delete(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double elevationSample()
+    {
+        double sum = 0;
+
+        for(int i = 0; i < POINTS; i++)
+            sum += dem.elevationSample(columns[i], rows[i]);
+
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double continuousElevationAt()
+    {
+        double sum = 0;
+
+        for(int i = 0; i < POINTS; i++)
+            sum += cDEM.elevationAt(longitudes[i], latitudes[i]);
+
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double continuousSlopeAt()
+    {
+        double sum = 0;
+
+        for(int i = 0; i < POINTS; i++)
+            sum += cDEM.slopeAt(longitudes[i], latitudes[i]);
+
+        return sum;
+    }
+
+    @Benchmark
+    public ElevationProfile elevationProfile()
+    {
+        return new ElevationProfile(cDEM, SyntheticTerrain.observerPosition(), Math.toRadians(135), PROFILE_LENGTH);
+    }
+}
@@ -0,0 +1,80 @@
+package ch.epfl.alpano.gui;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.SyntheticTerrain;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.Node;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the computation of the labels of the summits visible in a panorama.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LabelizerBenchmark
+{
+    /**
+     * The number of summits of the synthetic terrain.
+     */
+    @Param({"1000", "10000"})
+    public int summits;
+
+    private Path directory;
+    private HgtDiscreteElevationModel dem;
+    private Labelizer labelizer;
+    private PanoramaParameters parameters;
+    private Panorama panorama;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        new JFXPanel(); // Starts the JavaFX toolkit, required by the texts
+
+        directory = Files.createTempDirectory("alpano-bench");
+        dem = new HgtDiscreteElevationModel(SyntheticTerrain.createHgtFile(directory));
+        labelizer = new Labelizer(new ContinuousElevationModel(dem), SyntheticTerrain.summits(summits));
+        parameters = SyntheticTerrain.parameters(2500, 800);
+
+        try(PanoramaComputer computer = new PanoramaComputer(new ContinuousElevationModel(dem)))
+        {
+            panorama = computer.computePanorama(parameters);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        dem.close();
+        dem = null;
+        labelizer = null;
+        panorama = null;
+
+        System.gc(); // Releases the mapping of the file before deleting it
+        SyntheticTerrain.delete(directory);
+    }
+
+    @Benchmark
+    public List<Node> labels()
+    {
+        return labelizer.labels(parameters);
+    }
+
+    @Benchmark
+    public List<Node> labelsFromPanorama()
+    {
+        return labelizer.labels(parameters, panorama);
+    }
+}
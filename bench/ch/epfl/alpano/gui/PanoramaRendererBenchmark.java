@@ -0,0 +1,74 @@
+package ch.epfl.alpano.gui;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.SyntheticTerrain;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import ch.epfl.alpano.render.ArgbPainter;
+import ch.epfl.alpano.render.PanoramaRasterizer;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.image.Image;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the rendering of a panorama with each of the painters of the application.
+ * The panorama is computed once, only its rendering is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PanoramaRendererBenchmark
+{
+    /**
+     * The painter, numbered as in {@link PanoramaUserParameters#painter()}.
+     */
+    @Param({"0", "1", "2"})
+    public int painter;
+
+    private Panorama panorama;
+    private ArgbPainter imagePainter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        new JFXPanel(); // Starts the JavaFX toolkit, required by the images
+
+        final Path directory = Files.createTempDirectory("alpano-bench");
+
+        try(HgtDiscreteElevationModel dem = new HgtDiscreteElevationModel(SyntheticTerrain.createHgtFile(directory)); PanoramaComputer computer = new PanoramaComputer(new ContinuousElevationModel(dem)))
+        {
+            panorama = computer.computePanorama(SyntheticTerrain.parameters(1000, 300));
+        }
+
+        System.gc(); // Releases the mapping of the file before deleting it
+        SyntheticTerrain.delete(directory);
+
+        switch(painter)
+        {
+            case 0:
+                imagePainter = PanoramaRasterizer.coloredPainter(panorama);
+                break;
+            case 1:
+                imagePainter = PanoramaRasterizer.blackWhiteBorderedPainter(panorama);
+                break;
+            default:
+                imagePainter = PanoramaRasterizer.borderedPainter(panorama);
+                break;
+        }
+    }
+
+    @Benchmark
+    public Image renderPanorama()
+    {
+        return PanoramaRenderer.renderPanorama(panorama, imagePainter);
+    }
+}
@@ -0,0 +1,256 @@
+package ch.epfl.alpano;
+
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A cache of full 360° panoramas (cylinders), from which the panoramas of the same observer are extracted without
+ * computing any ray.
+ * A cylinder is computed for each observer, maximal distance and angular resolution, with the columns looking at the
+ * azimuths <code>(k + 1/2) · 2π / n</code>. A panorama can be extracted from a cylinder if its angular resolution divides
+ * the full turn and if its columns and rows fall on the ones of the cylinder, up to
+ * {@value PanoramaComputer#PAN_TOLERANCE} pixel; the other panoramas are computed as usual.
+ * The cache can be shared by several threads: each cylinder is computed once, outside of the lock of the cache, the
+ * threads needing it in the meantime waiting for it.
+ * The cache is meant for the clients showing many views of the same observer; the application and the batch renderer
+ * do not use it, their panoramas rarely sharing an observer.
+ */
+public final class CylindricalPanoramaCache
+{
+    private final PanoramaComputer computer;
+    private final Panorama.Storage storage;
+    private final Set<Panorama.Channel> channels;
+    private final LinkedHashMap<Key, Cylinder> cylinders;
+
+    /**
+     * Creates an empty cache.
+     * @param computer the computer of the cylinders
+     * @param storage the storage of the cylinders, which can be very large
+     * @param channels the channels of the cylinders and of the extracted panoramas
+     * @param maxCylinders the maximal number of cylinders kept, the least recently used ones being dropped
+     * @throws IllegalArgumentException if the number of cylinders is not strictly positive
+     */
+    public CylindricalPanoramaCache(PanoramaComputer computer, Panorama.Storage storage, Set<Panorama.Channel> channels, int maxCylinders)
+    {
+        Preconditions.checkArgument(maxCylinders > 0, "The number of cylinders must be strictly positive.");
+
+        this.computer = Objects.requireNonNull(computer);
+        this.storage = Objects.requireNonNull(storage);
+        this.channels = channels.isEmpty() ? EnumSet.noneOf(Panorama.Channel.class) : EnumSet.copyOf(channels);
+        this.cylinders = new LinkedHashMap<Key, Cylinder>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Cylinder> eldest)
+            {
+                return size() > maxCylinders;
+            }
+        };
+    }
+
+    /**
+     * Returns the panorama of the given parameters, extracted from the corresponding cylinder if possible (computing the
+     * cylinder the first time), else computed.
+     * The extracted panoramas are stored on the heap.
+     * @param parameters the parameters
+     * @return the panorama
+     */
+    public Panorama panorama(PanoramaParameters parameters)
+    {
+        final int columns = columns(parameters);
+
+        if(columns < 0)
+            return computer.computePanorama(parameters, storage, channels);
+
+        final double delta = Math2.PI2 / columns;
+
+        // Column of the cylinder looking at the first column of the panorama, the columns are linear so that the extremes suffice
+        final double first = Math2.angularDistance(0, parameters.azimuthForX(0)) / delta - 0.5;
+        final double last = first + parameters.horizontalFieldOfView() / delta;
+        final double firstRow = (parameters.height() - 1) / 2.0 * (1 - parameters.verticalFieldOfView() / (parameters.height() - 1) / delta);
+
+        if(Math.abs(first - Math.rint(first)) > PanoramaComputer.PAN_TOLERANCE || Math.abs(last - Math.rint(first) - (parameters.width() - 1)) > PanoramaComputer.PAN_TOLERANCE
+                || (parameters.height() > 1 && Math.abs(firstRow) > PanoramaComputer.PAN_TOLERANCE))
+            return computer.computePanorama(parameters, storage, channels);
+
+        final Panorama cylinder = cylinder(parameters, columns);
+        final int offset = (cylinder.parameters().height() - parameters.height()) / 2;
+        final int start = Math.floorMod((int) Math.rint(first), columns);
+
+        final Panorama.Builder builder = new Panorama.Builder(parameters, Panorama.Storage.HEAP, channels);
+
+        for(int x = 0; x < parameters.width(); x++)
+            builder.setColumn(x, cylinder, (start + x) % columns, offset);
+
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of columns of the cylinder of a panorama, if its angular resolution divides the full turn.
+     * @param parameters the parameters of the panorama
+     * @return the number of columns, or -1 if no cylinder matches the panorama
+     */
+    private static int columns(PanoramaParameters parameters)
+    {
+        if(parameters.width() < 2)
+            return -1;
+
+        final double columns = Math2.PI2 / (parameters.horizontalFieldOfView() / (parameters.width() - 1));
+        final double rounded = Math.rint(columns);
+
+        // The error on the resolution accumulates over the whole turn
+        if(Math.abs(columns - rounded) * parameters.width() / rounded > PanoramaComputer.PAN_TOLERANCE || rounded < parameters.width())
+            return -1;
+
+        return (int) rounded;
+    }
+
+    /**
+     * Returns the cylinder containing a panorama, computing it if it is missing or not high enough, or waiting for it if
+     * another thread is computing it.
+     * The rows of the cylinder are centered on the horizon like the ones of the panorama, so that its height has the same
+     * parity.
+     * @param parameters the parameters of the panorama
+     * @param columns the number of columns of the cylinder
+     * @return the cylinder
+     */
+    private Panorama cylinder(PanoramaParameters parameters, int columns)
+    {
+        final Key key = new Key(parameters, columns);
+        final Cylinder cylinder;
+
+        // Only the map is accessed under the lock, the cylinder is computed by the first thread needing it
+        synchronized(cylinders)
+        {
+            final Cylinder cached = cylinders.get(key);
+
+            if(cached != null && cached.height >= parameters.height())
+                return await(cached.panorama);
+
+            cylinder = new Cylinder(parameters.height());
+            cylinders.put(key, cylinder);
+        }
+
+        final double delta = Math2.PI2 / columns;
+
+        // The column k looks at the azimuth (k + 1/2) delta, from delta / 2 to 2π - delta / 2
+        final PanoramaParameters cylinderParameters = new PanoramaParameters(parameters.observerPosition(), parameters.observerElevation(), Math.PI, (columns - 1) * delta, parameters.maxDistance(), columns, parameters.height());
+
+        try
+        {
+            final Panorama computed = computer.computePanorama(cylinderParameters, storage, channels);
+            cylinder.panorama.complete(computed);
+            return computed;
+        }
+        catch(Throwable t)
+        {
+            // The waiting threads fail too, the next ones compute the cylinder again
+            cylinder.panorama.completeExceptionally(t);
+
+            synchronized(cylinders)
+            {
+                cylinders.remove(key, cylinder);
+            }
+
+            throw t;
+        }
+    }
+
+    /**
+     * Waits for a cylinder computed by another thread.
+     * @param panorama the future cylinder
+     * @return the cylinder
+     * @throws RuntimeException if the computation of the cylinder failed
+     */
+    private static Panorama await(CompletableFuture<Panorama> panorama)
+    {
+        try
+        {
+            return panorama.join();
+        }
+        catch(CompletionException e)
+        {
+            // The computation only throws unchecked exceptions
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if(e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of cylinders in the cache, including the ones being computed.
+     * @return the number of cylinders
+     */
+    public int cylinders()
+    {
+        synchronized(cylinders)
+        {
+            return cylinders.size();
+        }
+    }
+
+    /**
+     * A cylinder of the cache, possibly being computed.
+     */
+    private static final class Cylinder
+    {
+        private final int height;
+        private final CompletableFuture<Panorama> panorama = new CompletableFuture<>();
+
+        /**
+         * Creates a cylinder to be computed.
+         * @param height the height of the cylinder
+         */
+        private Cylinder(int height)
+        {
+            this.height = height;
+        }
+    }
+
+    /**
+     * The identity of a cylinder: observer, maximal distance, number of columns and parity of the height.
+     */
+    private static final class Key
+    {
+        private final double longitude, latitude;
+        private final int elevation, maxDistance, columns, parity;
+
+        /**
+         * Creates the key of the cylinder of a panorama.
+         * @param parameters the parameters of the panorama
+         * @param columns the number of columns of the cylinder
+         */
+        private Key(PanoramaParameters parameters, int columns)
+        {
+            this.longitude = parameters.observerPosition().longitude();
+            this.latitude = parameters.observerPosition().latitude();
+            this.elevation = parameters.observerElevation();
+            this.maxDistance = parameters.maxDistance();
+            this.columns = columns;
+            this.parity = parameters.height() % 2;
+        }
+
+        @Override
+        public boolean equals(Object thatO)
+        {
+            if(thatO == null || thatO.getClass() != this.getClass())
+                return false;
+
+            final Key that = (Key) thatO;
+            return Double.compare(this.longitude, that.longitude) == 0 && Double.compare(this.latitude, that.latitude) == 0 && this.elevation == that.elevation
+                    && this.maxDistance == that.maxDistance && this.columns == that.columns && this.parity == that.parity;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(longitude, latitude, elevation, maxDistance, columns, parity);
+        }
+    }
+}
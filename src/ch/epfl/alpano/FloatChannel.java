@@ -0,0 +1,187 @@
+package ch.epfl.alpano;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A channel of a panorama: one value per sample, addressed by its linear index.
+ */
+interface FloatChannel
+{
+    /**
+     * Returns the value of a sample.
+     * @param i the linear index of the sample
+     * @return the value
+     */
+    float get(int i);
+
+    /**
+     * Changes the value of a sample.
+     * @param i the linear index of the sample
+     * @param value the new value
+     */
+    void set(int i, float value);
+
+    /**
+     * Creates a channel stored in a heap array.
+     * @param size the number of samples
+     * @return the channel
+     */
+    static FloatChannel ofArray(int size)
+    {
+        final float[] values = new float[size];
+
+        return new FloatChannel()
+        {
+            @Override
+            public float get(int i)
+            {
+                return values[i];
+            }
+
+            @Override
+            public void set(int i, float value)
+            {
+                values[i] = value;
+            }
+        };
+    }
+
+    /**
+     * Creates a channel that was not computed, and thus can neither be read nor written.
+     * @param name the name of the channel, used in the error messages
+     * @return the channel
+     */
+    static FloatChannel missing(String name)
+    {
+        return new FloatChannel()
+        {
+            @Override
+            public float get(int i)
+            {
+                throw new IllegalStateException("The channel " + name + " was not computed.");
+            }
+
+            @Override
+            public void set(int i, float value)
+            {
+                throw new IllegalStateException("The channel " + name + " is not computed.");
+            }
+        };
+    }
+
+    /**
+     * Creates a channel stored as 32 bits floats in a region of a buffer.
+     * @param buffer the buffer, whose byte order is used
+     * @param offset the position of the first sample in the buffer (bytes)
+     * @param size the number of samples
+     * @return the channel
+     */
+    static FloatChannel ofFloats(ByteBuffer buffer, int offset, int size)
+    {
+        final FloatBuffer values = slice(buffer, offset, size * Float.BYTES).asFloatBuffer();
+
+        return new FloatChannel()
+        {
+            @Override
+            public float get(int i)
+            {
+                return values.get(i);
+            }
+
+            @Override
+            public void set(int i, float value)
+            {
+                values.put(i, value);
+            }
+        };
+    }
+
+    /**
+     * Creates a channel stored as 16 bits floats (IEEE 754 half precision) in a region of a buffer.
+     * The values are rounded to 11 significant bits, and those above 65504 in absolute value become infinite.
+     * @param buffer the buffer, whose byte order is used
+     * @param offset the position of the first sample in the buffer (bytes)
+     * @param size the number of samples
+     * @return the channel
+     */
+    static FloatChannel ofHalfFloats(ByteBuffer buffer, int offset, int size)
+    {
+        final ShortBuffer values = slice(buffer, offset, size * Short.BYTES).asShortBuffer();
+
+        return new FloatChannel()
+        {
+            @Override
+            public float get(int i)
+            {
+                return halfToFloat(values.get(i));
+            }
+
+            @Override
+            public void set(int i, float value)
+            {
+                values.put(i, floatToHalf(value));
+            }
+        };
+    }
+
+    /**
+     * Returns a region of a buffer, keeping its byte order.
+     * @param buffer the buffer
+     * @param offset the position of the region (bytes)
+     * @param length the length of the region (bytes)
+     * @return the region
+     */
+    static ByteBuffer slice(ByteBuffer buffer, int offset, int length)
+    {
+        final ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + length).position(offset);
+
+        return duplicate.slice().order(buffer.order());
+    }
+
+    /**
+     * Converts a half precision float to a float.
+     * @param half the bits of the half precision float
+     * @return the float
+     */
+    static float halfToFloat(short half)
+    {
+        final int sign = (half & 0x8000) << 16, exponent = (half >>> 10) & 0x1F, mantissa = half & 0x3FF;
+
+        if(exponent == 0x1F) // Infinity or NaN
+            return Float.intBitsToFloat(sign | 0x7F800000 | mantissa << 13);
+
+        if(exponent == 0) // Zero or subnormal, whose value is mantissa * 2^-24
+            return (sign != 0 ? -1 : 1) * mantissa * 0x1p-24f;
+
+        return Float.intBitsToFloat(sign | (exponent + 112) << 23 | mantissa << 13);
+    }
+
+    /**
+     * Converts a float to the nearest half precision float.
+     * @param value the float
+     * @return the bits of the half precision float
+     */
+    static short floatToHalf(float value)
+    {
+        final int bits = Float.floatToRawIntBits(value);
+        final int sign = (bits >>> 16) & 0x8000;
+        final float abs = Math.abs(value);
+
+        if(Float.isNaN(value))
+            return (short) (sign | 0x7E00);
+
+        if(abs >= 65520f) // Rounds to infinity
+            return (short) (sign | 0x7C00);
+
+        if(abs < 0x1p-14f) // Subnormal, rounded to the nearest multiple of 2^-24, ties to even (the product is exact)
+            return (short) (sign | (int) Math.rint(abs * 0x1p24f));
+
+        final int magnitude = Float.floatToRawIntBits(abs);
+        final int rounded = magnitude + 0xFFF + ((magnitude >>> 13) & 1); // Rounds the 13 dropped bits to the nearest, ties to even
+
+        return (short) (sign | ((rounded >>> 13) - (112 << 10)));
+    }
+}
@@ -1,7 +1,11 @@
 package ch.epfl.alpano;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents a panorama.
@@ -9,35 +13,52 @@ import java.util.Objects;
 public final class Panorama
 {
     private final PanoramaParameters parameters;
-    private final float[] distance, longitudes, latitudes, elevations, slopes;
+    private final Storage storage;
+    private final ByteBuffer buffer;
+    private final Set<Channel> channelSet;
+    private final FloatChannel distance, longitudes, latitudes, elevations, slopes;
 
     /**
      * Creates a new immutable panorama. This constructor should only be called by its {@link Builder}.
-     * Note that for optimality reasons, the arrays are not copied.
+     * Note that for optimality reasons, the channels are not copied.
      * @param parameters the parameters
-     * @param distances an array containing the distances
-     * @param longitudes an array containing the longitudes
-     * @param latitudes an array containing the latitudes
-     * @param elevations an array containing the elevations
-     * @param slopes an array containing the slopes
+     * @param storage the storage of the channels
+     * @param buffer the buffer containing the channels, <code>null</code> if they are stored on the heap
+     * @param channelSet the channels computed
+     * @param channels the channels, indexed by their {@link Channel#ordinal() ordinal}
      */
-    private Panorama(PanoramaParameters parameters, float[] distances, float[] longitudes, float[] latitudes, float[] elevations, float[] slopes)
+    private Panorama(PanoramaParameters parameters, Storage storage, ByteBuffer buffer, Set<Channel> channelSet, FloatChannel[] channels)
     {
         this.parameters = Objects.requireNonNull(parameters);
+        this.storage = Objects.requireNonNull(storage);
+        this.buffer = buffer;
+        this.channelSet = Collections.unmodifiableSet(EnumSet.copyOf(channelSet));
 
-        final int size = parameters.width() * parameters.height();
+        this.distance = channels[0];
+        this.longitudes = channels[1];
+        this.latitudes = channels[2];
+        this.elevations = channels[3];
+        this.slopes = channels[4];
+    }
+
+    /**
+     * Creates a panorama whose channels are already stored in a buffer, for instance a memory-mapped file, laid out as
+     * described by {@link Storage}. The samples are neither copied nor reset, and the buffer may be read-only.
+     * @param parameters the parameters
+     * @param storage the storage of the channels, other than {@link Storage#HEAP}
+     * @param channels the channels stored in the buffer
+     * @param buffer the buffer, read from its position
+     * @return the panorama
+     * @throws IllegalArgumentException if the storage is {@link Storage#HEAP} or if the buffer is too small
+     */
+    public static Panorama ofBuffer(PanoramaParameters parameters, Storage storage, Set<Channel> channels, ByteBuffer buffer)
+    {
+        Preconditions.checkArgument(storage != Storage.HEAP, "A panorama stored on the heap has no buffer.");
 
-        Preconditions.checkArgument(distances.length == size, "Illegal distances array size.");
-        Preconditions.checkArgument(longitudes.length == size, "Illegal longitudes array size.");
-        Preconditions.checkArgument(latitudes.length == size, "Illegal latitudes array size.");
-        Preconditions.checkArgument(elevations.length == size, "Illegal elevations array size.");
-        Preconditions.checkArgument(slopes.length == size, "Illegal slopes array size.");
+        final Set<Channel> channelSet = channels.isEmpty() ? EnumSet.noneOf(Channel.class) : EnumSet.copyOf(channels);
+        final ByteBuffer region = Builder.region(buffer, storage.bytes(parameters, channelSet));
 
-        this.distance = distances;
-        this.longitudes = longitudes;
-        this.latitudes = latitudes;
-        this.elevations = elevations;
-        this.slopes = slopes;
+        return new Panorama(parameters, storage, region, channelSet, storage.channels(parameters, region, channelSet));
     }
 
     /**
@@ -49,15 +70,48 @@ public final class Panorama
         return parameters;
     }
 
+    /**
+     * Returns the storage of the channels of this panorama.
+     * @return the storage
+     */
+    public Storage storage()
+    {
+        return storage;
+    }
+
+    /**
+     * Returns the channels computed for this panorama, the other ones cannot be read.
+     * @return the channels
+     */
+    public Set<Channel> channels()
+    {
+        return channelSet;
+    }
+
+    /**
+     * Returns a read-only view of the buffer containing the channels of this panorama, laid out as described by {@link Storage}.
+     * The samples are not copied, so that they can be handed to other tools as they are.
+     * @return the buffer
+     * @throws IllegalStateException if the panorama is stored on the heap
+     */
+    public ByteBuffer buffer()
+    {
+        if(buffer == null)
+            throw new IllegalStateException("The panorama is stored on the heap.");
+
+        return buffer.asReadOnlyBuffer().order(buffer.order());
+    }
+
     /**
      * Returns the distance from the projected point to the viewer position.
      * @param x the x coordinate
      * @param y the y coordinate
      * @return the distance to the point
+     * @throws IllegalStateException if the channel was not computed
      */
     public float distanceAt(int x, int y)
     {
-        return distance[linearSampleIndex(x, y)];
+        return distance.get(linearSampleIndex(x, y));
     }
 
     /**
@@ -66,11 +120,12 @@ public final class Panorama
      * @param y the y coordinate
      * @param d the default value
      * @return the distance to the point if it exists, the default value else
+     * @throws IllegalStateException if the channel was not computed
      */
     public float distanceAt(int x, int y, float d)
     {
         if(parameters.isValidSampleIndex(x, y))
-            return distance[parameters.linearSampleIndex(x, y)];
+            return distance.get(parameters.linearSampleIndex(x, y));
         return d;
     }
 
@@ -79,10 +134,11 @@ public final class Panorama
      * @param x the x coordinate
      * @param y the y coordinate
      * @return the longitude
+     * @throws IllegalStateException if the channel was not computed
      */
     public float longitudeAt(int x, int y)
     {
-        return longitudes[linearSampleIndex(x, y)];
+        return longitudes.get(linearSampleIndex(x, y));
     }
 
     /**
@@ -90,10 +146,11 @@ public final class Panorama
      * @param x the x coordinate
      * @param y the y coordinate
      * @return the latitude
+     * @throws IllegalStateException if the channel was not computed
      */
     public float latitudeAt(int x, int y)
     {
-        return latitudes[linearSampleIndex(x, y)];
+        return latitudes.get(linearSampleIndex(x, y));
     }
 
     /**
@@ -101,10 +158,11 @@ public final class Panorama
      * @param x the x coordinate
      * @param y the y coordinate
      * @return the elevation
+     * @throws IllegalStateException if the channel was not computed
      */
     public float elevationAt(int x, int y)
     {
-        return elevations[linearSampleIndex(x, y)];
+        return elevations.get(linearSampleIndex(x, y));
     }
 
     /**
@@ -112,10 +170,11 @@ public final class Panorama
      * @param x the x coordinate
      * @param y the y coordinate
      * @return the slope
+     * @throws IllegalStateException if the channel was not computed
      */
     public float slopeAt(int x, int y)
     {
-        return slopes[linearSampleIndex(x, y)];
+        return slopes.get(linearSampleIndex(x, y));
     }
 
     /**
@@ -132,33 +191,308 @@ public final class Panorama
         return parameters.linearSampleIndex(x, y);
     }
 
+    /**
+     * Returns the samples of a channel.
+     * @param channel the channel
+     * @return the samples
+     */
+    private FloatChannel channel(Channel channel)
+    {
+        switch(channel)
+        {
+            case DISTANCE:
+                return distance;
+            case LONGITUDE:
+                return longitudes;
+            case LATITUDE:
+                return latitudes;
+            case ELEVATION:
+                return elevations;
+            default:
+                return slopes;
+        }
+    }
+
+    /**
+     * A channel of a panorama, giving a value for each of its samples.
+     */
+    public enum Channel
+    {
+        DISTANCE(false),
+        LONGITUDE(false),
+        LATITUDE(false),
+        ELEVATION(true),
+        SLOPE(true);
+
+        private final boolean terrain;
+
+        /**
+         * @param terrain <code>true</code> if the channel describes the terrain rather than a position, making it suitable for half precision
+         */
+        Channel(boolean terrain)
+        {
+            this.terrain = terrain;
+        }
+    }
+
+    /**
+     * The storage of the channels of a panorama.
+     * Except on the heap, the computed channels are stored one after the other in a single little-endian buffer, in the
+     * order of {@link Channel}, each channel containing the samples row by row.
+     */
+    public enum Storage
+    {
+        /**
+         * One array of floats per channel, on the heap.
+         */
+        HEAP(0, 0),
+
+        /**
+         * A direct buffer of 32 bits floats, outside of the heap.
+         */
+        DIRECT(Float.BYTES, Float.BYTES),
+
+        /**
+         * A direct buffer outside of the heap, whose elevations and slopes are stored as 16 bits floats (half precision).
+         * The elevations are then rounded to 2 meters above 2048 meters, and the slopes to about a thousandth of radian.
+         */
+        DIRECT_HALF(Float.BYTES, Short.BYTES);
+
+        private final int positionBytes, terrainBytes;
+
+        /**
+         * @param positionBytes the number of bytes of a distance, longitude or latitude
+         * @param terrainBytes the number of bytes of an elevation or slope
+         */
+        Storage(int positionBytes, int terrainBytes)
+        {
+            this.positionBytes = positionBytes;
+            this.terrainBytes = terrainBytes;
+        }
+
+        /**
+         * Returns the size of the buffer containing all the channels of a panorama.
+         * @param parameters the parameters of the panorama
+         * @return the number of bytes, 0 for panoramas stored on the heap
+         */
+        public long bytes(PanoramaParameters parameters)
+        {
+            return bytes(parameters, EnumSet.allOf(Channel.class));
+        }
+
+        /**
+         * Returns the size of the buffer containing some channels of a panorama.
+         * @param parameters the parameters of the panorama
+         * @param channels the channels stored in the buffer
+         * @return the number of bytes, 0 for panoramas stored on the heap
+         */
+        public long bytes(PanoramaParameters parameters, Set<Channel> channels)
+        {
+            long bytes = 0;
+
+            for(Channel channel : channels)
+                bytes += (long) parameters.width() * parameters.height() * bytes(channel);
+
+            return bytes;
+        }
+
+        /**
+         * Returns the size of a sample of a channel.
+         * @param channel the channel
+         * @return the number of bytes
+         */
+        private int bytes(Channel channel)
+        {
+            return channel.terrain ? terrainBytes : positionBytes;
+        }
+
+        /**
+         * Creates the channels of a panorama.
+         * @param parameters the parameters of the panorama
+         * @param buffer the buffer holding the channels, ignored on the heap
+         * @param channelSet the channels to create, the other ones cannot be accessed
+         * @return the channels, indexed by their {@link Channel#ordinal() ordinal}
+         */
+        private FloatChannel[] channels(PanoramaParameters parameters, ByteBuffer buffer, Set<Channel> channelSet)
+        {
+            final int size = parameters.width() * parameters.height();
+            final FloatChannel[] channels = new FloatChannel[Channel.values().length];
+
+            int offset = 0;
+
+            for(Channel channel : Channel.values())
+            {
+                if(!channelSet.contains(channel))
+                {
+                    channels[channel.ordinal()] = FloatChannel.missing(channel.name());
+                }
+                else if(this == HEAP)
+                {
+                    channels[channel.ordinal()] = FloatChannel.ofArray(size);
+                }
+                else
+                {
+                    channels[channel.ordinal()] = bytes(channel) == Float.BYTES ? FloatChannel.ofFloats(buffer, offset, size) : FloatChannel.ofHalfFloats(buffer, offset, size);
+
+                    offset += size * bytes(channel);
+                }
+            }
+
+            return channels;
+        }
+    }
+
     /**
      * A panorama builder.
      */
     public static final class Builder
     {
         private final PanoramaParameters parameters;
-        private final float[] distances, longitudes, latitudes, elevations, slopes;
+        private final Storage storage;
+        private final ByteBuffer buffer;
+        private final Set<Channel> channelSet;
+        private final FloatChannel[] channels;
+        private final FloatChannel distances, longitudes, latitudes, elevations, slopes;
 
         private boolean built = false;
 
         /**
-         * Creates a new panorama builder.
+         * Creates a new panorama builder, storing the panorama on the heap.
          * @param parameters the parameters (they cannot be changed later on)
          */
         public Builder(PanoramaParameters parameters)
+        {
+            this(parameters, Storage.HEAP);
+        }
+
+        /**
+         * Creates a new panorama builder.
+         * The buffer of the panorama, if any, is allocated outside of the heap.
+         * @param parameters the parameters (they cannot be changed later on)
+         * @param storage the storage of the panorama
+         * @throws IllegalArgumentException if the panorama is too large to fit in a single buffer
+         */
+        public Builder(PanoramaParameters parameters, Storage storage)
+        {
+            this(parameters, storage, storage == Storage.HEAP ? null : allocateDirect(storage.bytes(parameters)));
+        }
+
+        /**
+         * Creates a new panorama builder computing only some channels.
+         * The buffer of the panorama, if any, is allocated outside of the heap and only contains these channels.
+         * @param parameters the parameters (they cannot be changed later on)
+         * @param storage the storage of the panorama
+         * @param channels the channels of the panorama, the other ones can neither be set nor read
+         * @throws IllegalArgumentException if the panorama is too large to fit in a single buffer
+         */
+        public Builder(PanoramaParameters parameters, Storage storage, Set<Channel> channels)
+        {
+            this(parameters, storage, channels, storage == Storage.HEAP ? null : allocateDirect(storage.bytes(parameters, channels)));
+        }
+
+        /**
+         * Creates a new panorama builder writing its channels in the given buffer, for instance a memory-mapped file.
+         * The buffer is used from its position, and its samples are reset.
+         * @param parameters the parameters (they cannot be changed later on)
+         * @param storage the storage of the panorama, other than {@link Storage#HEAP}
+         * @param buffer the buffer, whose {@link ByteBuffer#remaining() remaining} bytes must be at least {@link Storage#bytes(PanoramaParameters)}
+         * @throws IllegalArgumentException if the storage is {@link Storage#HEAP} or if the buffer is too small
+         */
+        public Builder(PanoramaParameters parameters, Storage storage, ByteBuffer buffer)
+        {
+            this(parameters, storage, EnumSet.allOf(Channel.class), buffer);
+        }
+
+        /**
+         * Creates a new panorama builder computing only some channels, writing them in the given buffer.
+         * The buffer is used from its position, and its samples are reset.
+         * @param parameters the parameters (they cannot be changed later on)
+         * @param storage the storage of the panorama, other than {@link Storage#HEAP}
+         * @param channels the channels of the panorama, the other ones can neither be set nor read
+         * @param buffer the buffer, whose {@link ByteBuffer#remaining() remaining} bytes must be at least {@link Storage#bytes(PanoramaParameters, Set)}
+         * @throws IllegalArgumentException if the storage is {@link Storage#HEAP} or if the buffer is too small
+         */
+        public Builder(PanoramaParameters parameters, Storage storage, Set<Channel> channels, ByteBuffer buffer)
         {
             this.parameters = Objects.requireNonNull(parameters);
+            this.storage = Objects.requireNonNull(storage);
+            this.channelSet = channels.isEmpty() ? EnumSet.noneOf(Channel.class) : EnumSet.copyOf(channels);
+
+            if(storage == Storage.HEAP)
+            {
+                Preconditions.checkArgument(buffer == null, "A panorama stored on the heap has no buffer.");
+                this.buffer = null;
+            }
+            else
+            {
+                this.buffer = region(buffer, storage.bytes(parameters, channelSet));
+            }
+
+            this.channels = storage.channels(parameters, this.buffer, channelSet);
+
+            this.distances = this.channels[Channel.DISTANCE.ordinal()];
+            this.longitudes = this.channels[Channel.LONGITUDE.ordinal()];
+            this.latitudes = this.channels[Channel.LATITUDE.ordinal()];
+            this.elevations = this.channels[Channel.ELEVATION.ordinal()];
+            this.slopes = this.channels[Channel.SLOPE.ordinal()];
 
             final int size = parameters.width() * parameters.height();
 
-            this.distances = new float[size];
-            this.longitudes = new float[size];
-            this.latitudes = new float[size];
-            this.elevations = new float[size];
-            this.slopes = new float[size];
+            for(Channel channel : channelSet)
+            {
+                final FloatChannel c = this.channels[channel.ordinal()];
+
+                if(channel == Channel.DISTANCE)
+                {
+                    for(int i = 0; i < size; i++)
+                        c.set(i, Float.POSITIVE_INFINITY);
+                }
+                else if(this.buffer != null) // The arrays are already filled with zeros
+                {
+                    for(int i = 0; i < size; i++)
+                        c.set(i, 0);
+                }
+            }
+        }
 
-            Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        /**
+         * Checks if a channel of the panorama is computed.
+         * @param channel the channel
+         * @return <code>true</code> if the channel can be set, <code>false</code> else
+         */
+        public boolean hasChannel(Channel channel)
+        {
+            return channelSet.contains(channel);
+        }
+
+        /**
+         * Returns the little-endian region of a buffer holding the channels of a panorama.
+         * @param buffer the buffer, used from its position
+         * @param bytes the size of the channels
+         * @return the region
+         * @throws IllegalArgumentException if the buffer is too small
+         */
+        private static ByteBuffer region(ByteBuffer buffer, long bytes)
+        {
+            Preconditions.checkArgument(buffer.remaining() >= bytes, "The buffer is too small.");
+
+            final ByteBuffer region = buffer.slice();
+            region.limit((int) bytes);
+
+            return region.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Allocates a direct buffer.
+         * @param bytes the size of the buffer
+         * @return the buffer
+         * @throws IllegalArgumentException if the size exceeds the capacity of a buffer
+         */
+        private static ByteBuffer allocateDirect(long bytes)
+        {
+            Preconditions.checkArgument(bytes <= Integer.MAX_VALUE, "The panorama is too large to be stored in a single buffer.");
+
+            return ByteBuffer.allocateDirect((int) bytes);
         }
 
         /**
@@ -167,12 +501,12 @@ public final class Panorama
          * @param y the y coordinate
          * @param distance the distance
          * @return this instance
-         * @throws IllegalStateException if built has already been called
+         * @throws IllegalStateException if built has already been called or if the channel is not computed
          */
         public Builder setDistanceAt(int x, int y, float distance)
         {
             checkBuilt();
-            distances[linearSampleIndex(x, y)] = distance;
+            distances.set(linearSampleIndex(x, y), distance);
             return this;
         }
 
@@ -182,12 +516,12 @@ public final class Panorama
          * @param y the y coordinate
          * @param longitude the longitude
          * @return this instance
-         * @throws IllegalStateException if built has already been called
+         * @throws IllegalStateException if built has already been called or if the channel is not computed
          */
         public Builder setLongitudeAt(int x, int y, float longitude)
         {
             checkBuilt();
-            longitudes[linearSampleIndex(x, y)] = longitude;
+            longitudes.set(linearSampleIndex(x, y), longitude);
             return this;
         }
 
@@ -197,12 +531,12 @@ public final class Panorama
          * @param y the y coordinate
          * @param latitude the latitude
          * @return this instance
-         * @throws IllegalStateException if built has already been called
+         * @throws IllegalStateException if built has already been called or if the channel is not computed
          */
         public Builder setLatitudeAt(int x, int y, float latitude)
         {
             checkBuilt();
-            latitudes[linearSampleIndex(x, y)] = latitude;
+            latitudes.set(linearSampleIndex(x, y), latitude);
             return this;
         }
 
@@ -212,12 +546,12 @@ public final class Panorama
          * @param y the y coordinate
          * @param elevation the elevation
          * @return this instance
-         * @throws IllegalStateException if built has already been called
+         * @throws IllegalStateException if built has already been called or if the channel is not computed
          */
         public Builder setElevationAt(int x, int y, float elevation)
         {
             checkBuilt();
-            elevations[linearSampleIndex(x, y)] = elevation;
+            elevations.set(linearSampleIndex(x, y), elevation);
             return this;
         }
 
@@ -227,12 +561,80 @@ public final class Panorama
          * @param y the y coordinate
          * @param slope the slope
          * @return this instance
-         * @throws IllegalStateException if built has already been called
+         * @throws IllegalStateException if built has already been called or if the channel is not computed
          */
         public Builder setSlopeAt(int x, int y, float slope)
         {
             checkBuilt();
-            slopes[linearSampleIndex(x, y)] = slope;
+            slopes.set(linearSampleIndex(x, y), slope);
+            return this;
+        }
+
+        /**
+         * Returns the distance of a sample set so far.
+         * @param x the x coordinate
+         * @param y the y coordinate
+         * @return the distance, or positive infinity if it was not set
+         * @throws IllegalStateException if built has already been called or if the channel is not computed
+         * @throws IndexOutOfBoundsException if the sample is out of the panorama
+         */
+        float distanceAt(int x, int y)
+        {
+            checkBuilt();
+            return distances.get(linearSampleIndex(x, y));
+        }
+
+        /**
+         * Copies the channels of a sample to another sample of this panorama.
+         * @param x the x coordinate of the sample
+         * @param y the y coordinate of the sample
+         * @param sourceX the x coordinate of the copied sample
+         * @param sourceY the y coordinate of the copied sample
+         * @return this instance
+         * @throws IllegalStateException if built has already been called
+         * @throws IndexOutOfBoundsException if a sample is out of the panorama
+         */
+        Builder copySample(int x, int y, int sourceX, int sourceY)
+        {
+            checkBuilt();
+
+            final int i = linearSampleIndex(x, y), source = linearSampleIndex(sourceX, sourceY);
+
+            for(Channel channel : channelSet)
+                channels[channel.ordinal()].set(i, channels[channel.ordinal()].get(source));
+
+            return this;
+        }
+
+        /**
+         * Copies the channels of a column of another panorama, which must contain at least the channels of this builder.
+         * The rows are copied from the given row of the source, as many as the height of this panorama.
+         * @param x the x coordinate of the column
+         * @param source the source panorama
+         * @param sourceX the x coordinate of the column in the source
+         * @param sourceY the y coordinate of the row of the source copied in the first row
+         * @return this instance
+         * @throws IllegalStateException if built has already been called or if a channel is missing from the source
+         * @throws IndexOutOfBoundsException if a sample is out of one of the panoramas
+         */
+        Builder setColumn(int x, Panorama source, int sourceX, int sourceY)
+        {
+            checkBuilt();
+
+            final int height = parameters.height();
+
+            linearSampleIndex(x, height - 1);
+            source.linearSampleIndex(sourceX, sourceY);
+            source.linearSampleIndex(sourceX, sourceY + height - 1);
+
+            for(Channel channel : channelSet)
+            {
+                final FloatChannel from = source.channel(channel), to = channels[channel.ordinal()];
+
+                for(int y = 0; y < height; y++)
+                    to.set(parameters.linearSampleIndex(x, y), from.get(source.parameters.linearSampleIndex(sourceX, sourceY + y)));
+            }
+
             return this;
         }
 
@@ -246,7 +648,37 @@ public final class Panorama
         {
             checkBuilt();
             built = true;
-            return new Panorama(parameters, distances, longitudes, latitudes, elevations, slopes);
+            return new Panorama(parameters, storage, buffer, channelSet, channels);
+        }
+
+        /**
+         * Builds a preview of the panorama, assuming that only the columns whose x coordinate is a multiple of the step
+         * have been set: every other column is a copy of the closest set column on its left.
+         * The builder is left unchanged and can still be modified and built afterwards.
+         * @param step the step between two set columns
+         * @return a new instance of {@link Panorama}
+         * @throws IllegalStateException if built has already been called
+         * @throws IllegalArgumentException if the step is not strictly positive
+         */
+        public Panorama buildPreview(int step)
+        {
+            checkBuilt();
+            Preconditions.checkArgument(step > 0, "The step must be strictly positive.");
+
+            final Builder preview = new Builder(parameters, storage, channelSet);
+
+            for(int y = 0; y < parameters.height(); y++)
+            {
+                for(int x = 0; x < parameters.width(); x++)
+                {
+                    final int i = parameters.linearSampleIndex(x, y), source = parameters.linearSampleIndex(x - x % step, y);
+
+                    for(Channel channel : channelSet)
+                        preview.channels[channel.ordinal()].set(i, channels[channel.ordinal()].get(source));
+                }
+            }
+
+            return preview.build();
         }
 
         /**
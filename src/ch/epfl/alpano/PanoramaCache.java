@@ -0,0 +1,322 @@
+package ch.epfl.alpano;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of computed panoramas stored in a directory, one file per panorama.
+ * The files are named after a SHA-256 hash of the parameters of the panorama and of the identity of the elevation model
+ * it was computed from, so that a panorama computed from other elevations is never returned.
+ * A file contains a header followed by the channels of the panorama, laid out as described by {@link Panorama.Storage#DIRECT},
+ * and is memory-mapped when read back. Once the files exceed the size of the cache, the least recently used ones (as
+ * dated by their modification time) are deleted.
+ */
+public final class PanoramaCache
+{
+    /**
+     * Extension of the files of the cache.
+     */
+    public static final String FILE_EXTENSION = ".pano";
+
+    private static final int MAGIC = 0x414C5050; // "ALPP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64; // Magic, version, channels and hash, padded to keep the samples aligned
+
+    private final File directory;
+    private final String demIdentity;
+    private final long maxBytes;
+
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    /**
+     * Creates a cache in a directory, created if needed.
+     * @param directory the directory of the files
+     * @param demIdentity a text identifying the elevation model the panoramas are computed from, for instance {@link #hgtIdentity(File)}
+     * @param maxBytes the maximal size of the files of the cache
+     * @throws IllegalArgumentException if the directory cannot be created or if the size is not strictly positive
+     */
+    public PanoramaCache(File directory, String demIdentity, long maxBytes)
+    {
+        Preconditions.checkArgument(maxBytes > 0, "The size of the cache must be strictly positive.");
+
+        directory.mkdirs();
+        Preconditions.checkArgument(directory.isDirectory(), "The specified directory does not exist.");
+
+        this.directory = directory;
+        this.demIdentity = Objects.requireNonNull(demIdentity);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a text identifying the HGT files of a directory by their names, lengths and modification times, changing
+     * as soon as one of them is added, removed or replaced.
+     * @param directory the directory
+     * @return the identity
+     */
+    public static String hgtIdentity(File directory)
+    {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(".hgt"));
+        final List<String> descriptions = new ArrayList<>();
+
+        if(files != null)
+            for(File file : files)
+                descriptions.add(file.getName() + ":" + file.length() + ":" + file.lastModified());
+
+        Collections.sort(descriptions);
+
+        return String.join(",", descriptions);
+    }
+
+    /**
+     * Returns the panorama stored for the given parameters, if it contains at least the requested channels.
+     * The returned panorama is memory-mapped and its storage is {@link Panorama.Storage#DIRECT}.
+     * @param parameters the parameters of the panorama
+     * @param channels the channels needed
+     * @return the panorama, or <code>null</code> if the cache does not contain it
+     */
+    public Panorama get(PanoramaParameters parameters, Set<Panorama.Channel> channels)
+    {
+        final byte[] hash = hash(parameters);
+        final File file = file(hash);
+
+        final Panorama panorama = read(file, parameters, hash);
+
+        if(panorama == null || !panorama.channels().containsAll(channels))
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        file.setLastModified(System.currentTimeMillis());
+        hits.incrementAndGet();
+
+        return panorama;
+    }
+
+    /**
+     * Stores a panorama, replacing the one stored for the same parameters, then deletes the least recently used files
+     * exceeding the size of the cache.
+     * The errors are ignored since the panorama can always be computed again.
+     * @param panorama the panorama
+     * @return <code>true</code> if the panorama was stored, <code>false</code> else
+     */
+    public boolean put(Panorama panorama)
+    {
+        final PanoramaParameters parameters = panorama.parameters();
+        final byte[] hash = hash(parameters);
+        final long bytes = HEADER_BYTES + Panorama.Storage.DIRECT.bytes(parameters, panorama.channels());
+
+        if(bytes > maxBytes)
+            return false;
+
+        File temporary = null;
+
+        try
+        {
+            temporary = File.createTempFile("panorama", ".tmp", directory);
+
+            try(RandomAccessFile output = new RandomAccessFile(temporary, "rw"))
+            {
+                final MappedByteBuffer buffer = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(mask(panorama.channels())).put(hash);
+                buffer.position(HEADER_BYTES);
+
+                final Panorama.Builder builder = new Panorama.Builder(parameters, Panorama.Storage.DIRECT, panorama.channels(), buffer);
+
+                for(int x = 0; x < parameters.width(); x++)
+                    builder.setColumn(x, panorama, x, 0);
+
+                buffer.force();
+            }
+
+            // Readers never see a partially written file
+            Files.move(temporary.toPath(), file(hash).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e)
+        {
+            if(temporary != null)
+                temporary.delete();
+
+            return false;
+        }
+
+        evict();
+
+        return true;
+    }
+
+    /**
+     * Reads a panorama from a file of the cache.
+     * @param file the file
+     * @param parameters the parameters of the panorama
+     * @param hash the hash of the parameters, written in the header
+     * @return the panorama, or <code>null</code> if the file does not exist or is not valid
+     */
+    private static Panorama read(File file, PanoramaParameters parameters, byte[] hash)
+    {
+        if(!file.isFile())
+            return null;
+
+        try(FileInputStream stream = new FileInputStream(file))
+        {
+            final FileChannel channel = stream.getChannel();
+
+            if(channel.size() < HEADER_BYTES)
+                return null;
+
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            final Set<Panorama.Channel> channels = channels(buffer.getInt());
+
+            final byte[] header = new byte[hash.length];
+            buffer.get(header);
+
+            if(!Arrays.equals(header, hash) || channel.size() != HEADER_BYTES + Panorama.Storage.DIRECT.bytes(parameters, channels))
+                return null;
+
+            buffer.position(HEADER_BYTES);
+
+            return Panorama.ofBuffer(parameters, Panorama.Storage.DIRECT, channels, buffer);
+        }
+        catch(IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the files fit in the size of the cache.
+     */
+    private synchronized void evict()
+    {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_EXTENSION));
+
+        if(files == null)
+            return;
+
+        long bytes = 0;
+        for(File file : files)
+            bytes += file.length();
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        // The mappings of deleted files remain valid, so that panoramas still in use are not affected
+        for(int i = 0; i < files.length && bytes > maxBytes; i++)
+        {
+            final long length = files[i].length();
+
+            if(files[i].delete())
+                bytes -= length;
+        }
+    }
+
+    /**
+     * Returns the file storing the panorama of the given hash.
+     * @param hash the hash
+     * @return the file
+     */
+    private File file(byte[] hash)
+    {
+        final StringBuilder name = new StringBuilder();
+
+        for(byte b : hash)
+            name.append(String.format("%02x", b));
+
+        return new File(directory, name + FILE_EXTENSION);
+    }
+
+    /**
+     * Computes the hash identifying a panorama.
+     * @param parameters the parameters of the panorama
+     * @return the SHA-256 hash of the parameters and of the identity of the elevation model
+     */
+    private byte[] hash(PanoramaParameters parameters)
+    {
+        try
+        {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            try(DataOutputStream key = new DataOutputStream(bytes))
+            {
+                key.writeDouble(parameters.observerPosition().longitude());
+                key.writeDouble(parameters.observerPosition().latitude());
+                key.writeInt(parameters.observerElevation());
+                key.writeDouble(parameters.centerAzimuth());
+                key.writeDouble(parameters.horizontalFieldOfView());
+                key.writeInt(parameters.maxDistance());
+                key.writeInt(parameters.width());
+                key.writeInt(parameters.height());
+                key.writeUTF(demIdentity);
+            }
+
+            return MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+        }
+        catch(IOException | NoSuchAlgorithmException e) // Cannot happen: the stream is in memory and SHA-256 is always available
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encodes a set of channels as a bit mask, indexed by their ordinals.
+     * @param channels the channels
+     * @return the mask
+     */
+    private static int mask(Set<Panorama.Channel> channels)
+    {
+        int mask = 0;
+
+        for(Panorama.Channel channel : channels)
+            mask |= 1 << channel.ordinal();
+
+        return mask;
+    }
+
+    /**
+     * Decodes a bit mask of channels.
+     * @param mask the mask
+     * @return the channels
+     */
+    private static Set<Panorama.Channel> channels(int mask)
+    {
+        final Set<Panorama.Channel> channels = EnumSet.noneOf(Panorama.Channel.class);
+
+        for(Panorama.Channel channel : Panorama.Channel.values())
+            if((mask & (1 << channel.ordinal())) != 0)
+                channels.add(channel);
+
+        return channels;
+    }
+
+    /**
+     * Returns the number of panoramas read from the cache.
+     * @return the number of hits
+     */
+    public long hits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of panoramas requested but missing from the cache.
+     * @return the number of misses
+     */
+    public long misses()
+    {
+        return misses.get();
+    }
+}
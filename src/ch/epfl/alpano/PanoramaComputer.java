@@ -6,34 +6,146 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyProperty;
 import javafx.beans.property.SimpleObjectProperty;
 
+import java.util.EnumSet;
 import java.util.Objects;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 /**
  * A panorama calculator.
+ * The computation is distributed over a long-lived work-stealing pool, which is released by {@link #close()}.
+ * The rays are marched by steps of {@value #SEARCH_INTERVAL} meters. When the computer knows a bound of the slope of the
+ * terrain (see {@link ContinuousElevationModel#maxSlope()}), the steps that cannot reach the ground given the height of
+ * the ray above it are skipped, without changing the result. When the elevation model knows the highest terrain of an area (see
+ * {@link ch.epfl.alpano.dem.PyramidDiscreteElevationModel}), the spans of steps where the ray passes above it are
+ * skipped too, without changing the result.
  */
-public final class PanoramaComputer
+public final class PanoramaComputer implements AutoCloseable
 {
     private static final int SEARCH_INTERVAL = 64;
     private static final int DICHOTOMY_STEP = 4;
 
+    /**
+     * A columns range is only split while the pool has at most this number of queued tasks left to steal.
+     */
+    private static final int MAX_SURPLUS_TASKS = 2;
+
     private static final double PROGRESSBAR_STEPS = 100.0;
 
+    /**
+     * The maximal offset (pixels) between a column and the column of a previous panorama it is copied from.
+     * It only absorbs the rounding errors of the angles, so that a copied column is the one that would be computed and
+     * the result does not depend on the panoramas computed before.
+     */
+    public static final double PAN_TOLERANCE = 1e-9;
+
+    /**
+     * The default difference of distance (meters) between two pixels from which the adaptive supersampling refines them,
+     * where the painters start to draw the outlines.
+     */
+    public static final double EDGE_DISTANCE = 500;
+
     private final ObjectProperty<Double> progress = new SimpleObjectProperty<>(0.0);
 
     private final ContinuousElevationModel dem;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final double maxTerrainSlope;
 
     /**
-     * Creates a new instance from a continuous elevation model (DEM).
+     * Creates a new instance from a continuous elevation model (DEM), marching the rays by fixed steps.
+     * The computer creates its own pool, which is shut down when the computer is closed.
      * @param dem the continuous elevation model
      */
     public PanoramaComputer(ContinuousElevationModel dem)
     {
+        this(dem, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Creates a new instance from a continuous elevation model (DEM) and a shared pool, marching the rays by fixed steps.
+     * The pool is not shut down when the computer is closed.
+     * @param dem the continuous elevation model
+     * @param pool the pool used to compute the panoramas
+     */
+    public PanoramaComputer(ContinuousElevationModel dem, ForkJoinPool pool)
+    {
+        this(dem, pool, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Creates a new instance from a continuous elevation model (DEM) whose slope is bounded.
+     * The computer creates its own pool, which is shut down when the computer is closed.
+     * @param dem the continuous elevation model
+     * @param maxTerrainSlope a bound of the slope of the terrain along a profile (meters per meter), for instance
+     * {@link ContinuousElevationModel#maxSlope()}, or positive infinity to march by fixed steps
+     * @throws IllegalArgumentException if the slope is not strictly positive
+     */
+    public PanoramaComputer(ContinuousElevationModel dem, double maxTerrainSlope)
+    {
+        this(Objects.requireNonNull(dem), new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1)), true, maxTerrainSlope);
+    }
+
+    /**
+     * Creates a new instance from a continuous elevation model (DEM) whose slope is bounded and a shared pool.
+     * The pool is not shut down when the computer is closed.
+     * @param dem the continuous elevation model
+     * @param pool the pool used to compute the panoramas
+     * @param maxTerrainSlope a bound of the slope of the terrain along a profile (meters per meter), for instance
+     * {@link ContinuousElevationModel#maxSlope()}, or positive infinity to march by fixed steps
+     * @throws IllegalArgumentException if the slope is not strictly positive
+     */
+    public PanoramaComputer(ContinuousElevationModel dem, ForkJoinPool pool, double maxTerrainSlope)
+    {
+        this(dem, pool, false, maxTerrainSlope);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param dem the continuous elevation model
+     * @param pool the pool used to compute the panoramas
+     * @param ownsPool <code>true</code> if the pool has to be shut down on {@link #close()}
+     * @param maxTerrainSlope the maximal slope of the terrain, or positive infinity to march by fixed steps
+     * @throws IllegalArgumentException if the slope is not strictly positive
+     */
+    private PanoramaComputer(ContinuousElevationModel dem, ForkJoinPool pool, boolean ownsPool, double maxTerrainSlope)
+    {
+        Preconditions.checkArgument(maxTerrainSlope > 0, "The maximal slope of the terrain must be strictly positive.");
+
         this.dem = Objects.requireNonNull(dem);
+        this.pool = Objects.requireNonNull(pool);
+        this.ownsPool = ownsPool;
+        this.maxTerrainSlope = maxTerrainSlope;
+    }
+
+    /**
+     * Returns the parameters of a panorama turned by less than half a column, so that its columns look in the same
+     * directions as the ones of a previous panorama, which can then be copied (see
+     * {@link #computePanorama(PanoramaParameters, Panorama.Storage, Set, Panorama)}).
+     * A pan of any angle then only computes the newly exposed columns, at the cost of a view off by a fraction of a column.
+     * @param parameters the parameters of the new panorama
+     * @param previous the parameters of the previous panorama
+     * @return the aligned parameters, or the given ones if no column of the previous panorama can be copied
+     */
+    public static PanoramaParameters alignedParameters(PanoramaParameters parameters, PanoramaParameters previous)
+    {
+        final double shift = PreviousColumns.shift(parameters, previous);
+
+        if(!PreviousColumns.overlaps(parameters, previous, shift) || Math.abs(shift - Math.rint(shift)) <= PAN_TOLERANCE)
+            return parameters;
+
+        final double delta = parameters.horizontalFieldOfView() / (parameters.width() - 1);
+
+        return new PanoramaParameters(parameters.observerPosition(), parameters.observerElevation(), Azimuth.canonicalize(parameters.centerAzimuth() + (Math.rint(shift) - shift) * delta),
+                parameters.horizontalFieldOfView(), parameters.maxDistance(), parameters.width(), parameters.height());
     }
 
     /**
@@ -43,71 +155,325 @@ public final class PanoramaComputer
      */
     public Panorama computePanorama(PanoramaParameters parameters)
     {
-        final Panorama.Builder builder = new Panorama.Builder(parameters);
+        return computePanorama(parameters, Panorama.Storage.HEAP);
+    }
+
+    /**
+     * Computes a panorama for the given parameters, stored as specified.
+     * @param parameters the parameters
+     * @param storage the storage of the panorama
+     * @return a panorama
+     */
+    public Panorama computePanorama(PanoramaParameters parameters, Panorama.Storage storage)
+    {
+        return computePanorama(parameters, storage, EnumSet.allOf(Panorama.Channel.class));
+    }
+
+    /**
+     * Computes some channels of a panorama for the given parameters, stored as specified.
+     * The other channels are neither evaluated nor allocated.
+     * @param parameters the parameters
+     * @param storage the storage of the panorama
+     * @param channels the channels to compute
+     * @return a panorama
+     */
+    public Panorama computePanorama(PanoramaParameters parameters, Panorama.Storage storage, Set<Panorama.Channel> channels)
+    {
+        return computePanorama(parameters, storage, channels, null);
+    }
+
+    /**
+     * Computes some channels of a panorama for the given parameters, copying the columns of a previous panorama that
+     * look in the same directions, for instance after a pan of the view.
+     * The columns are copied if the previous panorama has the same observer, maximal distance, height and angular
+     * resolution, and if the pan is a whole number of columns, up to {@value #PAN_TOLERANCE} pixel. Only the newly exposed
+     * columns are computed, so that the cost of a pan is proportional to its angle.
+     * @param parameters the parameters
+     * @param storage the storage of the panorama
+     * @param channels the channels to compute
+     * @param previous the previous panorama, or <code>null</code> to compute all the columns
+     * @return a panorama
+     */
+    public Panorama computePanorama(PanoramaParameters parameters, Panorama.Storage storage, Set<Panorama.Channel> channels, Panorama previous)
+    {
+        final Panorama.Builder builder = new Panorama.Builder(parameters, storage, channels);
+
+        progress.set(0.0);
+
+        pool.invoke(new ColumnsTask(columnComputation(parameters, builder, PreviousColumns.of(parameters, channels, previous)), new AtomicInteger(0), parameters.width(), () -> false, 0, 1, 0, parameters.width()));
+
+        return builder.build();
+    }
+
+    /**
+     * Computes some channels of a supersampled panorama for the given parameters, marching all the rays of a pixel only
+     * where it lies on an edge of the terrain, as {@link #computeAdaptivePanorama(PanoramaParameters, Panorama.Storage, Set, int, double)}
+     * does with an edge distance of {@value #EDGE_DISTANCE} meters.
+     * @param parameters the parameters, whose width and height are multiples of <code>2^exponent</code>
+     * @param storage the storage of the panorama
+     * @param channels the channels to compute, including the distance
+     * @param supersamplingExponent the supersampling exponent of the parameters
+     * @return a panorama
+     * @throws IllegalArgumentException if the exponent is negative, if the size of the panorama is not a multiple of the
+     * size of a pixel or if the distance is not computed
+     */
+    public Panorama computeAdaptivePanorama(PanoramaParameters parameters, Panorama.Storage storage, Set<Panorama.Channel> channels, int supersamplingExponent)
+    {
+        return computeAdaptivePanorama(parameters, storage, channels, supersamplingExponent, EDGE_DISTANCE);
+    }
+
+    /**
+     * Computes some channels of a supersampled panorama for the given parameters, marching all the rays of a pixel only
+     * where it lies on an edge of the terrain.
+     * A pixel covers a block of <code>2^exponent</code> by <code>2^exponent</code> samples. A first pass computes the
+     * sample in the middle of each block. A pixel lies on an edge if the distance of its middle sample differs by more
+     * than the threshold from the one of a neighbor pixel, in which case all the samples of both pixels are computed by
+     * a second pass; the other pixels are filled with their middle sample. The threshold is compared in both directions,
+     * unlike {@link ch.epfl.alpano.render.ChannelPainter#maxDistanceToNeighbors}, so that both sides of a silhouette
+     * are refined.
+     * Painted with the same supersampling exponent, the panorama looks like a fully supersampled one for the cost of
+     * the edges only.
+     * @param parameters the parameters, whose width and height are multiples of <code>2^exponent</code>
+     * @param storage the storage of the panorama
+     * @param channels the channels to compute, including the distance
+     * @param supersamplingExponent the supersampling exponent of the parameters
+     * @param edgeDistance the minimal difference of distance (meters) between two pixels on both sides of an edge
+     * @return a panorama
+     * @throws IllegalArgumentException if the exponent is negative, if the size of the panorama is not a multiple of the
+     * size of a pixel, if the distance is not computed or if the threshold is not strictly positive
+     */
+    public Panorama computeAdaptivePanorama(PanoramaParameters parameters, Panorama.Storage storage, Set<Panorama.Channel> channels, int supersamplingExponent, double edgeDistance)
+    {
+        Preconditions.checkArgument(supersamplingExponent >= 0, "The supersampling exponent must be positive.");
+        Preconditions.checkArgument(channels.contains(Panorama.Channel.DISTANCE), "The distance is needed to detect the edges.");
+        Preconditions.checkArgument(edgeDistance > 0, "The edge distance must be strictly positive.");
+
+        final int samples = 1 << supersamplingExponent, middle = samples / 2;
+        final int width = parameters.width() / samples, height = parameters.height() / samples;
+
+        Preconditions.checkArgument(width * samples == parameters.width() && height * samples == parameters.height(), "The size of the panorama must be a multiple of the size of a pixel.");
 
-        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1));
+        if(supersamplingExponent == 0)
+            return computePanorama(parameters, storage, channels);
 
+        final Panorama.Builder builder = new Panorama.Builder(parameters, storage, channels);
         final AtomicInteger progression = new AtomicInteger(0);
+
         progress.set(0.0);
 
-        final double inverseSteps = 1.0 / PROGRESSBAR_STEPS;
+        pool.invoke(new ColumnsTask(x -> computeColumn(parameters, builder, x, y -> y % samples == middle), progression, width + parameters.width(), () -> false, middle, samples, 0, width));
+
+        final boolean[] edges = new boolean[width * height];
 
-        for(int x = 0; x < parameters.width(); x++)
+        for(int y = 0; y < height; y++)
         {
-            final double azimuth = parameters.azimuthForX(x);
+            for(int x = 0; x < width; x++)
+            {
+                final float distance = builder.distanceAt(x * samples + middle, y * samples + middle);
 
-            final ElevationProfile profile = new ElevationProfile(dem, parameters.observerPosition(), azimuth, parameters.maxDistance());
+                // The difference is infinite between the terrain and the sky, and not a number between two rays of the sky
+                if(x + 1 < width && Math.abs(builder.distanceAt((x + 1) * samples + middle, y * samples + middle) - distance) > edgeDistance)
+                    edges[y * width + x] = edges[y * width + x + 1] = true;
+                if(y + 1 < height && Math.abs(builder.distanceAt(x * samples + middle, (y + 1) * samples + middle) - distance) > edgeDistance)
+                    edges[y * width + x] = edges[(y + 1) * width + x] = true;
+            }
+        }
 
-            final int x1 = x;
+        // Each column only reads the middle samples of the pixels that are not refined, which the second pass never writes
+        pool.invoke(new ColumnsTask(x ->
+        {
+            final int pixel = x / samples;
+            boolean refined = false;
 
-            executor.execute(() ->
+            for(int y = 0; y < height; y++)
             {
-                double lastRoot = 0;
+                if(edges[y * width + pixel])
+                    refined = true;
+                else
+                    for(int dy = 0; dy < samples; dy++)
+                        builder.copySample(x, y * samples + dy, pixel * samples + middle, y * samples + middle);
+            }
 
-                for(int y = parameters.height() - 1; y >= 0; y--)
-                {
-                    final double altitude = parameters.altitudeForY(y);
+            if(refined)
+                computeColumn(parameters, builder, x, y -> edges[y / samples * width + pixel]);
+        }, progression, width + parameters.width(), () -> false, 0, 1, 0, parameters.width()));
 
-                    final DoubleUnaryOperator function = rayToGroundDistance(profile, parameters.observerElevation(), Math.tan(altitude));
+        return builder.build();
+    }
 
-                    final double firstInterval = Math2.firstIntervalContainingRoot(function, lastRoot, parameters.maxDistance() - SEARCH_INTERVAL, SEARCH_INTERVAL);
+    /**
+     * Starts the computation of a panorama for the given parameters and returns immediately.
+     * Cancelling the returned future stops the computation once the columns being computed are done.
+     * @param parameters the parameters
+     * @return a future completed with the panorama, or exceptionally if the computation failed
+     */
+    public CompletableFuture<Panorama> computePanoramaAsync(PanoramaParameters parameters)
+    {
+        return computePanoramaAsync(parameters, 1, p -> {});
+    }
 
-                    if(firstInterval != Double.POSITIVE_INFINITY)
-                    {
-                        final double root = Math2.improveRoot(function, firstInterval, firstInterval + SEARCH_INTERVAL, DICHOTOMY_STEP);
+    /**
+     * Starts a progressive computation of a panorama for the given parameters and returns immediately.
+     * The columns are computed in passes: the first one computes every <code>initialStep</code>-th column, each of the
+     * following ones computes the columns lying in the middle of the previous ones, until all of them are computed.
+     * Every column is computed exactly once, so that the final panorama is identical to the one returned by
+     * {@link #computePanorama(PanoramaParameters)}.
+     * After each pass but the last one, a preview (see {@link Panorama.Builder#buildPreview(int)}) is given to the consumer,
+     * from a thread of the pool.
+     * @param parameters the parameters
+     * @param initialStep the columns step of the first pass, must be a power of two
+     * @param previews the consumer of the intermediate previews
+     * @return a future completed with the panorama, or exceptionally if the computation failed
+     * @throws IllegalArgumentException if the initial step is not a strictly positive power of two
+     */
+    public CompletableFuture<Panorama> computePanoramaAsync(PanoramaParameters parameters, int initialStep, Consumer<Panorama> previews)
+    {
+        return computePanoramaAsync(parameters, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), initialStep, previews);
+    }
 
-                        final GeoPoint position = profile.positionAt(root);
+    /**
+     * Starts a progressive computation of a panorama for the given parameters and returns immediately, as
+     * {@link #computePanoramaAsync(PanoramaParameters, int, Consumer)} does.
+     * Only the given channels of the panorama and its previews are computed, and they are stored as specified.
+     * @param parameters the parameters
+     * @param storage the storage of the panorama
+     * @param channels the channels to compute
+     * @param initialStep the columns step of the first pass, must be a power of two
+     * @param previews the consumer of the intermediate previews
+     * @return a future completed with the panorama, or exceptionally if the computation failed
+     * @throws IllegalArgumentException if the initial step is not a strictly positive power of two
+     */
+    public CompletableFuture<Panorama> computePanoramaAsync(PanoramaParameters parameters, Panorama.Storage storage, Set<Panorama.Channel> channels, int initialStep, Consumer<Panorama> previews)
+    {
+        return computePanoramaAsync(parameters, storage, channels, null, initialStep, previews);
+    }
 
-                        builder.setDistanceAt(x1, y, (float) (root / Math.cos(altitude)));
-                        builder.setLongitudeAt(x1, y, (float) position.longitude());
-                        builder.setLatitudeAt(x1, y, (float) position.latitude());
-                        builder.setElevationAt(x1, y, (float) profile.elevationAt(root));
-                        builder.setSlopeAt(x1, y, (float) profile.slopeAt(root));
+    /**
+     * Starts a progressive computation of a panorama for the given parameters and returns immediately, as
+     * {@link #computePanoramaAsync(PanoramaParameters, Panorama.Storage, Set, int, Consumer)} does, copying the columns
+     * of a previous panorama as {@link #computePanorama(PanoramaParameters, Panorama.Storage, Set, Panorama)} does.
+     * @param parameters the parameters
+     * @param storage the storage of the panorama
+     * @param channels the channels to compute
+     * @param previous the previous panorama, or <code>null</code> to compute all the columns
+     * @param initialStep the columns step of the first pass, must be a power of two
+     * @param previews the consumer of the intermediate previews
+     * @return a future completed with the panorama, or exceptionally if the computation failed
+     * @throws IllegalArgumentException if the initial step is not a strictly positive power of two
+     */
+    public CompletableFuture<Panorama> computePanoramaAsync(PanoramaParameters parameters, Panorama.Storage storage, Set<Panorama.Channel> channels, Panorama previous, int initialStep, Consumer<Panorama> previews)
+    {
+        Preconditions.checkArgument(initialStep > 0 && Integer.bitCount(initialStep) == 1, "The initial step must be a strictly positive power of two.");
+        Objects.requireNonNull(previews);
 
-                        lastRoot = root;
-                    }
-                    else
-                    {
-                        break;
-                    }
+        final Panorama.Builder builder = new Panorama.Builder(parameters, storage, channels);
+        final IntConsumer column = columnComputation(parameters, builder, PreviousColumns.of(parameters, channels, previous));
+        final CompletableFuture<Panorama> result = new CompletableFuture<>();
+        final AtomicInteger progression = new AtomicInteger(0);
+
+        progress.set(0.0);
+
+        pool.execute(() ->
+        {
+            try
+            {
+                for(int step = initialStep; step >= 1; step >>= 1)
+                {
+                    // The first pass starts from the first column, the following ones fill the middle of the gaps
+                    final int offset = step == initialStep ? 0 : step, stride = step == initialStep ? step : 2 * step;
+                    final int count = Math.max(parameters.width() - offset + stride - 1, 0) / stride;
+
+                    new ColumnsTask(column, progression, parameters.width(), result::isDone, offset, stride, 0, count).invoke();
+
+                    if(result.isDone())
+                        return;
+
+                    if(step > 1)
+                        previews.accept(builder.buildPreview(step));
                 }
 
-                progress.set(inverseSteps * Math.round(PROGRESSBAR_STEPS * progression.incrementAndGet() / parameters.width()));
-            });
-        }
+                result.complete(builder.build());
+            }
+            catch(RuntimeException e)
+            {
+                result.completeExceptionally(e);
+            }
+        });
 
-        executor.shutdown();
+        return result;
+    }
 
-        try
+    /**
+     * Returns the computation of the columns of a panorama, copying them from a previous panorama when possible.
+     * @param parameters the parameters
+     * @param builder the panorama builder
+     * @param previous the columns copied from a previous panorama, or <code>null</code>
+     * @return the computation of the column of a given x coordinate
+     */
+    private IntConsumer columnComputation(PanoramaParameters parameters, Panorama.Builder builder, PreviousColumns previous)
+    {
+        return x ->
         {
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        }
-        catch(InterruptedException e)
+            if(previous == null || !previous.copy(builder, x))
+                computeColumn(parameters, builder, x, y -> true);
+        };
+    }
+
+    /**
+     * Computes some rows of a single column of the panorama.
+     * The rows are computed from the bottom to the top, each ray being searched beyond the ground reached by the previous
+     * computed one; the skipped rows are left unchanged.
+     * @param parameters the parameters
+     * @param builder the panorama builder
+     * @param x the x coordinate of the column
+     * @param rows the condition on the y coordinate of the rows to compute
+     */
+    private void computeColumn(PanoramaParameters parameters, Panorama.Builder builder, int x, IntPredicate rows)
+    {
+        final double azimuth = parameters.azimuthForX(x);
+
+        final ElevationProfile profile = new ElevationProfile(dem, parameters.observerPosition(), azimuth, parameters.maxDistance());
+
+        // A single evaluator is reused for all the rays of the column, so that the root search does not allocate
+        final RayToGroundDistance function = new RayToGroundDistance(profile, parameters.observerElevation(), 0, maxTerrainSlope);
+
+        final boolean longitude = builder.hasChannel(Panorama.Channel.LONGITUDE), latitude = builder.hasChannel(Panorama.Channel.LATITUDE);
+        final boolean elevation = builder.hasChannel(Panorama.Channel.ELEVATION), slope = builder.hasChannel(Panorama.Channel.SLOPE);
+        final boolean distance = builder.hasChannel(Panorama.Channel.DISTANCE);
+
+        double lastRoot = 0;
+
+        for(int y = parameters.height() - 1; y >= 0; y--)
         {
-            e.printStackTrace();
-        }
+            if(!rows.test(y))
+                continue;
 
-        return builder.build();
+            final double altitude = parameters.altitudeForY(y);
+
+            function.setRaySlope(Math.tan(altitude));
+
+            final double root = function.firstRoot(lastRoot, parameters.maxDistance() - SEARCH_INTERVAL);
+
+            if(root != Double.POSITIVE_INFINITY)
+            {
+                if(distance)
+                    builder.setDistanceAt(x, y, (float) (root / Math.cos(altitude)));
+                if(longitude)
+                    builder.setLongitudeAt(x, y, (float) profile.longitudeAt(root));
+                if(latitude)
+                    builder.setLatitudeAt(x, y, (float) profile.latitudeAt(root));
+                if(elevation)
+                    builder.setElevationAt(x, y, (float) function.rootElevation());
+                if(slope)
+                    builder.setSlopeAt(x, y, (float) profile.slopeAt(root));
+
+                lastRoot = root;
+            }
+            else
+            {
+                break;
+            }
+        }
     }
 
     /**
@@ -119,15 +485,440 @@ public final class PanoramaComputer
      */
     public static DoubleUnaryOperator rayToGroundDistance(ElevationProfile profile, double ray0, double raySlope)
     {
-        final double refraction = 0.13;
+        return new RayToGroundDistance(profile, ray0, raySlope, Double.POSITIVE_INFINITY);
+    }
 
-        final double d = (1 - refraction) / (2 * Distance.EARTH_RADIUS);
+    /**
+     * Returns the distance between a ray and the ground at a given distance from the viewer, where the elevation of the
+     * ground is known, without any elevation profile.
+     * @param ray0 the elevation of the viewer
+     * @param raySlope the slope of the ray (radians)
+     * @param x the distance from the viewer (meters)
+     * @param elevation the elevation of the ground at this distance
+     * @return the distance, positive if the ray passes above the ground
+     */
+    public static double rayToGroundDistance(double ray0, double raySlope, double x, double elevation)
+    {
+        return ray0 + x * raySlope - elevation + RayToGroundDistance.D * Math2.sq(x);
+    }
 
-        return x -> ray0 + x * raySlope - profile.elevationAt(x) + d * Math2.sq(x);
+    /**
+     * Returns the pool computing the panoramas, which can run other parallel computations between them.
+     * @return the pool
+     */
+    public ForkJoinPool pool()
+    {
+        return pool;
     }
 
     public ReadOnlyProperty<Double> progressProperty()
     {
         return progress;
     }
+
+    /**
+     * Shuts down the pool if it was created by this computer.
+     * Computations that are already running are completed.
+     */
+    @Override
+    public void close()
+    {
+        if(ownsPool)
+            pool.shutdown();
+    }
+
+    /**
+     * The distance travelled by a ray to the ground, whose slope can be changed so that the same instance serves all the rays of a column.
+     */
+    private static final class RayToGroundDistance implements DoubleUnaryOperator
+    {
+        private static final double REFRACTION = 0.13;
+        private static final double D = (1 - REFRACTION) / (2 * Distance.EARTH_RADIUS);
+
+        /**
+         * Number of steps of the spans compared to the bounds of the terrain, and of the steps marched before comparing
+         * again after a span that reaches the terrain.
+         */
+        private static final int LONG_SPAN = 32, SHORT_SPAN = 8, PLAIN_STEPS = SHORT_SPAN;
+
+        /**
+         * Minimal height of the ray above the highest terrain of a span to skip it, absorbing the rounding errors.
+         */
+        private static final double SPAN_CLEARANCE = 1e-3;
+
+        private final ElevationProfile profile;
+        private final double ray0;
+        private final double maxTerrainSlope;
+        private double raySlope;
+
+        /**
+         * Whether the elevation model knows bounds of the terrain, and the number of steps to march before asking again
+         * after a span that could not be skipped.
+         */
+        private boolean bounded = true;
+        private int plainSteps = 0;
+
+        /**
+         * The elevation of the ground at the last evaluated point, and at the last root found.
+         */
+        private double elevation, rootElevation;
+
+        /**
+         * Creates a new function.
+         * @param profile the elevation profile
+         * @param ray0 the elevation of the viewer
+         * @param raySlope the slope of the ray (radians)
+         * @param maxTerrainSlope the maximal slope of the terrain, or positive infinity to march by fixed steps
+         */
+        private RayToGroundDistance(ElevationProfile profile, double ray0, double raySlope, double maxTerrainSlope)
+        {
+            this.profile = Objects.requireNonNull(profile);
+            this.ray0 = ray0;
+            this.raySlope = raySlope;
+            this.maxTerrainSlope = maxTerrainSlope;
+        }
+
+        /**
+         * Changes the slope of the ray.
+         * @param raySlope the new slope (radians)
+         */
+        private void setRaySlope(double raySlope)
+        {
+            this.raySlope = raySlope;
+        }
+
+        @Override
+        public double applyAsDouble(double x)
+        {
+            elevation = profile.elevationAt(x);
+
+            return ray0 + x * raySlope - elevation + D * Math2.sq(x);
+        }
+
+        /**
+         * Finds the first root of the function, with the same result as {@link Math2#firstIntervalContainingRoot} with a
+         * step of {@value #SEARCH_INTERVAL} followed by {@link Math2#improveRoot} with a precision of {@value #DICHOTOMY_STEP}.
+         * Unlike them, each point is only evaluated once: the value at the upper bound of an interval is reused as the value
+         * at the lower bound of the next one, and the dichotomy keeps the value at its lower bound.
+         * <p>
+         * With a bound of the terrain slope, the height of the ray above the ground decreases by at most
+         * <code>maxTerrainSlope - raySlope - 2 * D * x</code> per meter after <code>x</code>. The following points of the
+         * search that are closer than the height divided by this rate are then above the ground, and are skipped.
+         * <p>
+         * When the elevation model knows bounds of the terrain, the spans of steps over which the ray stays above the
+         * highest terrain are skipped as well (see {@link #skippableSteps(double, double)}).
+         * @param minX the lower bound of the search
+         * @param maxX the upper bound of the first point of the last interval
+         * @return the root, or positive infinity if the ray does not reach the ground
+         */
+        private double firstRoot(double minX, double maxX)
+        {
+            if(minX > maxX - SEARCH_INTERVAL)
+                return Double.POSITIVE_INFINITY;
+
+            double x1 = minX;
+            double f1 = applyAsDouble(x1), e1 = elevation;
+
+            plainSteps = 0;
+
+            while(x1 <= maxX - SEARCH_INTERVAL)
+            {
+                if(f1 > 0 && maxTerrainSlope != Double.POSITIVE_INFINITY)
+                {
+                    final double descent = maxTerrainSlope - raySlope - 2 * D * x1;
+
+                    if(descent <= 0) // The ray moves away from the ground
+                        return Double.POSITIVE_INFINITY;
+
+                    // Number of following points closer than the distance needed by the ray to reach the ground
+                    final double skipped = Math.ceil(f1 / descent / SEARCH_INTERVAL) - 1;
+
+                    if(skipped > 0)
+                    {
+                        if(x1 + skipped * SEARCH_INTERVAL > maxX - SEARCH_INTERVAL) // All the remaining intervals are above the ground
+                            return Double.POSITIVE_INFINITY;
+
+                        for(int i = 0; i < skipped; i++) // The same points as the fixed steps, accumulated the same way
+                            x1 += SEARCH_INTERVAL;
+
+                        f1 = applyAsDouble(x1);
+                        e1 = elevation;
+
+                        continue;
+                    }
+                }
+
+                if(f1 > 0 && bounded && plainSteps == 0)
+                {
+                    final int skipped = skippableSteps(x1, maxX);
+
+                    if(skipped > 0)
+                    {
+                        for(int i = 0; i < skipped; i++) // The same points as the fixed steps, accumulated the same way
+                            x1 += SEARCH_INTERVAL;
+
+                        f1 = applyAsDouble(x1);
+                        e1 = elevation;
+
+                        continue;
+                    }
+
+                    plainSteps = PLAIN_STEPS;
+                }
+
+                if(plainSteps > 0)
+                    plainSteps--;
+
+                final double x2 = x1 + SEARCH_INTERVAL;
+                final double f2 = applyAsDouble(x2), e2 = elevation;
+
+                if(f1 * f2 <= 0)
+                    return improveRoot(x1, x2, f1, e1);
+
+                x1 = x2;
+                f1 = f2;
+                e1 = e2;
+            }
+
+            return Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * Returns the number of following steps that are entirely above the ground, by comparing the lowest point of the
+         * ray over a span of {@value #LONG_SPAN} then {@value #SHORT_SPAN} steps to the highest terrain of the span.
+         * Since the height of the ray is convex, its lowest point over a span is at one of its ends or at its vertex.
+         * @param x1 the beginning of the span, above the ground
+         * @param maxX the upper bound of the first point of the last interval
+         * @return the number of steps that can be skipped, or 0 if none
+         */
+        private int skippableSteps(double x1, double maxX)
+        {
+            final int remaining = (int) Math.floor((maxX - x1) / SEARCH_INTERVAL);
+
+            for(int span : new int[] {LONG_SPAN, SHORT_SPAN})
+            {
+                final int steps = Math.min(span, remaining);
+
+                if(steps <= 0)
+                    return 0;
+
+                final double x2 = x1 + steps * SEARCH_INTERVAL;
+                final double maxElevation = profile.maxElevationBetween(x1, x2);
+
+                if(maxElevation == Double.POSITIVE_INFINITY) // The elevation model knows no bound
+                {
+                    bounded = false;
+
+                    return 0;
+                }
+
+                final double lowest = Math.max(x1, Math.min(-raySlope / (2 * D), x2));
+                final double clearance = ray0 + lowest * raySlope + D * Math2.sq(lowest) - maxElevation;
+
+                if(clearance > SPAN_CLEARANCE)
+                    return steps;
+            }
+
+            return 0;
+        }
+
+        /**
+         * Refines a root by dichotomy, keeping the value of the function at the lower bound.
+         * @param x1 the lower bound
+         * @param x2 the upper bound
+         * @param f1 the value of the function at the lower bound
+         * @param e1 the elevation of the ground at the lower bound
+         * @return the lower bound of the final interval
+         */
+        private double improveRoot(double x1, double x2, double f1, double e1)
+        {
+            while(x2 - x1 > DICHOTOMY_STEP)
+            {
+                final double m = (x1 + x2) / 2.0;
+                final double fm = applyAsDouble(m);
+
+                if(f1 * fm > 0)
+                {
+                    x1 = m;
+                    f1 = fm;
+                    e1 = elevation;
+                }
+                else
+                {
+                    x2 = m;
+                }
+            }
+
+            rootElevation = e1;
+
+            return x1;
+        }
+
+        /**
+         * Returns the elevation of the ground at the last root found by {@link #firstRoot(double, double)}.
+         * @return the elevation
+         */
+        private double rootElevation()
+        {
+            return rootElevation;
+        }
+    }
+
+    /**
+     * The columns of a previous panorama that can be copied in a new one, offset by a whole number of columns.
+     */
+    private static final class PreviousColumns
+    {
+        private final Panorama previous;
+        private final int shift;
+
+        /**
+         * Creates a new instance.
+         * @param previous the previous panorama
+         * @param shift the x coordinate in the previous panorama of the first column of the new one
+         */
+        private PreviousColumns(Panorama previous, int shift)
+        {
+            this.previous = previous;
+            this.shift = shift;
+        }
+
+        /**
+         * Returns the columns of a previous panorama that can be copied in a new one.
+         * @param parameters the parameters of the new panorama
+         * @param channels the channels of the new panorama
+         * @param previous the previous panorama, or <code>null</code>
+         * @return the columns, or <code>null</code> if none can be copied
+         */
+        private static PreviousColumns of(PanoramaParameters parameters, Set<Panorama.Channel> channels, Panorama previous)
+        {
+            if(previous == null || !previous.channels().containsAll(channels))
+                return null;
+
+            final double shift = shift(parameters, previous.parameters());
+            final double rounded = Math.rint(shift);
+
+            if(!overlaps(parameters, previous.parameters(), shift) || Math.abs(shift - rounded) > PAN_TOLERANCE)
+                return null;
+
+            return new PreviousColumns(previous, (int) rounded);
+        }
+
+        /**
+         * Returns the offset between the first columns of two panoramas whose columns are cast the same way.
+         * @param parameters the parameters of the new panorama
+         * @param previous the parameters of the previous panorama
+         * @return the x coordinate in the previous panorama of the first column of the new one, possibly fractional, or
+         * NaN if the panoramas do not have the same observer, maximal distance, height and angular resolution
+         */
+        private static double shift(PanoramaParameters parameters, PanoramaParameters previous)
+        {
+            final boolean sameRays = previous.observerPosition().longitude() == parameters.observerPosition().longitude() && previous.observerPosition().latitude() == parameters.observerPosition().latitude()
+                    && previous.observerElevation() == parameters.observerElevation() && previous.maxDistance() == parameters.maxDistance()
+                    && previous.height() == parameters.height() && previous.verticalFieldOfView() == parameters.verticalFieldOfView();
+
+            final double delta = parameters.horizontalFieldOfView() / (parameters.width() - 1);
+
+            if(!sameRays || previous.horizontalFieldOfView() / (previous.width() - 1) != delta)
+                return Double.NaN;
+
+            return (Math2.angularDistance(previous.centerAzimuth(), parameters.centerAzimuth()) - (parameters.width() - previous.width()) * delta / 2) / delta;
+        }
+
+        /**
+         * Returns whether two panoramas offset by a number of columns have columns in common once rounded.
+         * @param parameters the parameters of the new panorama
+         * @param previous the parameters of the previous panorama
+         * @param shift the offset of the first columns (see {@link #shift(PanoramaParameters, PanoramaParameters)})
+         * @return <code>true</code> if the panoramas overlap
+         */
+        private static boolean overlaps(PanoramaParameters parameters, PanoramaParameters previous, double shift)
+        {
+            final double rounded = Math.rint(shift);
+
+            return !Double.isNaN(shift) && rounded < previous.width() && rounded > -parameters.width();
+        }
+
+        /**
+         * Copies a column of the previous panorama, if it exists.
+         * @param builder the builder of the new panorama
+         * @param x the x coordinate of the column in the new panorama
+         * @return <code>true</code> if the column was copied, <code>false</code> else
+         */
+        private boolean copy(Panorama.Builder builder, int x)
+        {
+            final int px = x + shift;
+
+            if(px < 0 || px >= previous.parameters().width())
+                return false;
+
+            builder.setColumn(x, previous, px, 0);
+
+            return true;
+        }
+    }
+
+    /**
+     * A task computing a range of columns, split in halves as long as other workers are likely to steal them.
+     * The columns are designated by their index <code>i</code>, corresponding to the x coordinate <code>offset + i * stride</code>.
+     */
+    private final class ColumnsTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final IntConsumer column;
+        private final AtomicInteger progression;
+        private final int columns;
+        private final BooleanSupplier cancelled;
+        private final int offset, stride;
+        private final int from, to;
+
+        /**
+         * Creates a new task.
+         * @param column the computation of the column of a given x coordinate
+         * @param progression the number of columns computed so far
+         * @param columns the number of columns of the whole computation, for the progress
+         * @param cancelled the condition checked before each column, remaining columns are skipped once it holds
+         * @param offset the x coordinate of the column of index 0
+         * @param stride the x distance between two consecutive columns
+         * @param from the index of the first column (included)
+         * @param to the index of the last column (excluded)
+         */
+        private ColumnsTask(IntConsumer column, AtomicInteger progression, int columns, BooleanSupplier cancelled, int offset, int stride, int from, int to)
+        {
+            this.column = column;
+            this.progression = progression;
+            this.columns = columns;
+            this.cancelled = cancelled;
+            this.offset = offset;
+            this.stride = stride;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(cancelled.getAsBoolean())
+                return;
+
+            if(to - from > 1 && getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS)
+            {
+                final int middle = (from + to) >>> 1;
+
+                invokeAll(new ColumnsTask(column, progression, columns, cancelled, offset, stride, from, middle), new ColumnsTask(column, progression, columns, cancelled, offset, stride, middle, to));
+            }
+            else
+            {
+                final double inverseSteps = 1.0 / PROGRESSBAR_STEPS;
+
+                for(int i = from; i < to && !cancelled.getAsBoolean(); i++)
+                {
+                    column.accept(offset + i * stride);
+
+                    progress.set(inverseSteps * Math.round(PROGRESSBAR_STEPS * progression.incrementAndGet() / columns));
+                }
+            }
+        }
+    }
 }
@@ -172,6 +172,24 @@ public final class PanoramaParameters
         return (0 - a) / delta + (height - 1) / 2.0;
     }
 
+    @Override
+    public boolean equals(Object thatO)
+    {
+        if(thatO == null || thatO.getClass() != this.getClass())
+            return false;
+
+        final PanoramaParameters that = (PanoramaParameters) thatO;
+        return Double.compare(this.observerPosition.longitude(), that.observerPosition.longitude()) == 0 && Double.compare(this.observerPosition.latitude(), that.observerPosition.latitude()) == 0
+                && this.observerElevation == that.observerElevation && Double.compare(this.centerAzimuth, that.centerAzimuth) == 0 && Double.compare(this.horizontalFieldOfView, that.horizontalFieldOfView) == 0
+                && this.maxDistance == that.maxDistance && this.width == that.width && this.height == that.height;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(observerPosition.longitude(), observerPosition.latitude(), observerElevation, centerAzimuth, horizontalFieldOfView, maxDistance, width, height);
+    }
+
     /**
      * Checks if the coordinates are located in the interval.
      * @param x the x coordinate
@@ -0,0 +1,55 @@
+package ch.epfl.alpano.batch;
+
+import ch.epfl.alpano.Preconditions;
+import ch.epfl.alpano.gui.PanoramaUserParameters;
+
+import java.util.Objects;
+
+/**
+ * A panorama to render in a batch: its parameters and the name of the image file.
+ */
+public final class BatchJob
+{
+    private final String name;
+    private final PanoramaUserParameters parameters;
+
+    /**
+     * Creates a job.
+     * @param name the name of the image file, without extension
+     * @param parameters the parameters of the panorama
+     * @throws IllegalArgumentException if the name is empty, contains a path separator or a null character, or designates a
+     * directory (<code>.</code> or <code>..</code>), so that the image file stays in the directory of the batch
+     */
+    public BatchJob(String name, PanoramaUserParameters parameters)
+    {
+        Preconditions.checkArgument(!name.isEmpty() && !name.equals(".") && !name.equals("..") && name.indexOf('/') < 0 && name.indexOf('\\') < 0
+                && name.indexOf('\0') < 0, "The name must be a non-empty file name.");
+
+        this.name = name;
+        this.parameters = Objects.requireNonNull(parameters);
+    }
+
+    /**
+     * Returns the name of the image file, without extension.
+     * @return the name
+     */
+    public String name()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the parameters of the panorama.
+     * @return the parameters
+     */
+    public PanoramaUserParameters parameters()
+    {
+        return parameters;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,334 @@
+package ch.epfl.alpano.batch;
+
+import ch.epfl.alpano.Preconditions;
+import ch.epfl.alpano.gui.PanoramaUserParameters;
+import ch.epfl.alpano.gui.UserParameter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Util class to parse the panoramas of a batch from a CSV or JSON file.
+ * Each panorama gives a value to every {@link UserParameter}, named after it in lower case (for instance
+ * <code>observer_longitude</code>), and optionally a <code>name</code> for its image file, which defaults to its
+ * position in the file. The names cannot contain a path separator, so that the images stay in the output directory.
+ * Unlike the values entered in the application, the values are not sanitized: a value out of its range, or a column
+ * named after no parameter, makes the file incorrect rather than render another panorama than the requested one.
+ * <ul>
+ *     <li>A CSV file starts with a header line naming the columns, separated by commas. The empty lines and the lines
+ *     starting with <code>#</code> are ignored.</li>
+ *     <li>A JSON file contains an array of flat objects whose values are integers, or strings for the names.</li>
+ * </ul>
+ */
+public final class BatchJobParser
+{
+    private static final String NAME = "name";
+
+    private BatchJobParser() // Not instantiable
+    {}
+
+    /**
+     * Returns the jobs read from a file, parsed as JSON if its name ends with <code>.json</code>, else as CSV.
+     * @param file the file to read
+     * @return the jobs, in the order of the file
+     * @throws IOException if an IO exception occurs or if the format is incorrect
+     */
+    public static List<BatchJob> readJobsFrom(File file) throws IOException
+    {
+        try(Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))
+        {
+            return file.getName().toLowerCase(Locale.ROOT).endsWith(".json") ? readJson(reader) : readCsv(reader);
+        }
+    }
+
+    /**
+     * Returns the jobs read from CSV lines.
+     * @param reader the reader of the lines
+     * @return the jobs, in the order of the lines
+     * @throws IOException if an IO exception occurs or if the format is incorrect
+     */
+    public static List<BatchJob> readCsv(Reader reader) throws IOException
+    {
+        final BufferedReader lines = new BufferedReader(reader);
+        final List<Map<String, String>> records = new ArrayList<>();
+
+        String[] header = null;
+        String line;
+
+        while((line = lines.readLine()) != null)
+        {
+            line = line.trim();
+
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            final String[] fields = line.split(",", -1);
+
+            if(header == null)
+            {
+                header = fields;
+                continue;
+            }
+
+            if(fields.length != header.length)
+                throw new IOException("The line " + (records.size() + 1) + " does not have " + header.length + " fields.");
+
+            final Map<String, String> record = new HashMap<>();
+            for(int i = 0; i < fields.length; i++)
+                record.put(header[i].trim().toLowerCase(Locale.ROOT), fields[i].trim());
+
+            records.add(record);
+        }
+
+        return jobs(records);
+    }
+
+    /**
+     * Returns the jobs read from a JSON array.
+     * @param reader the reader of the array
+     * @return the jobs, in the order of the array
+     * @throws IOException if an IO exception occurs or if the format is incorrect
+     */
+    public static List<BatchJob> readJson(Reader reader) throws IOException
+    {
+        final StringBuilder text = new StringBuilder();
+        final char[] buffer = new char[8192];
+
+        int read;
+        while((read = reader.read(buffer)) >= 0)
+            text.append(buffer, 0, read);
+
+        try
+        {
+            return jobs(new JsonArray(text.toString()).objects());
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Converts records of named values to jobs.
+     * @param records the records
+     * @return the jobs
+     * @throws IOException if a parameter is missing, unknown, not an integer or out of its range, or if two jobs have
+     * the same name
+     */
+    private static List<BatchJob> jobs(List<Map<String, String>> records) throws IOException
+    {
+        final List<BatchJob> jobs = new ArrayList<>();
+        final Set<String> names = new HashSet<>();
+        final Set<String> columns = new HashSet<>();
+
+        columns.add(NAME);
+        for(UserParameter parameter : UserParameter.values())
+            columns.add(parameter.name().toLowerCase(Locale.ROOT));
+
+        try
+        {
+            for(Map<String, String> record : records)
+            {
+                for(String column : record.keySet())
+                    Preconditions.checkArgument(columns.contains(column), "The parameter " + column + " is unknown.");
+
+                final Map<UserParameter, Integer> parameters = new EnumMap<>(UserParameter.class);
+
+                for(UserParameter parameter : UserParameter.values())
+                {
+                    final String value = record.get(parameter.name().toLowerCase(Locale.ROOT));
+
+                    Preconditions.checkArgument(value != null, "The parameter " + parameter.name().toLowerCase(Locale.ROOT) + " is missing.");
+
+                    parameters.put(parameter, Integer.parseInt(value));
+                }
+
+                final String name = record.getOrDefault(NAME, "");
+                final BatchJob job = new BatchJob(name.isEmpty() ? String.format("panorama-%05d", jobs.size() + 1) : name, new PanoramaUserParameters(parameters));
+
+                for(UserParameter parameter : UserParameter.values())
+                {
+                    final int sanitized = job.parameters().get(parameter);
+
+                    Preconditions.checkArgument(sanitized == parameters.get(parameter), "The value " + parameters.get(parameter) + " of the parameter " + parameter.name().toLowerCase(Locale.ROOT) + " is out of range, the nearest valid value is " + sanitized + ".");
+                }
+
+                Preconditions.checkArgument(names.add(job.name()), "The name " + job.name() + " is used twice.");
+
+                jobs.add(job);
+            }
+        }
+        catch(IllegalArgumentException e) // Also thrown on invalid numbers
+        {
+            throw new IOException("Invalid panorama " + (jobs.size() + 1) + ": " + e.getMessage(), e);
+        }
+
+        return Collections.unmodifiableList(jobs);
+    }
+
+    /**
+     * A JSON array of flat objects, whose values are strings or numbers.
+     */
+    private static final class JsonArray
+    {
+        private final String text;
+        private int position;
+
+        /**
+         * Creates a new instance.
+         * @param text the text of the array
+         */
+        private JsonArray(String text)
+        {
+            this.text = text;
+        }
+
+        /**
+         * Parses the objects of the array.
+         * @return the objects, their values as text
+         * @throws IllegalArgumentException if the text is not such an array
+         */
+        private List<Map<String, String>> objects()
+        {
+            final List<Map<String, String>> objects = new ArrayList<>();
+
+            expect('[');
+
+            if(!consume(']'))
+            {
+                do
+                    objects.add(object());
+                while(consume(','));
+
+                expect(']');
+            }
+
+            skipWhitespace();
+            Preconditions.checkArgument(position == text.length(), "Unexpected text after the array.");
+
+            return objects;
+        }
+
+        /**
+         * Parses an object.
+         * @return its values, as text
+         */
+        private Map<String, String> object()
+        {
+            final Map<String, String> values = new HashMap<>();
+
+            expect('{');
+
+            if(!consume('}'))
+            {
+                do
+                {
+                    final String key = string();
+                    expect(':');
+                    values.put(key.toLowerCase(Locale.ROOT), peek() == '"' ? string() : number());
+                }
+                while(consume(','));
+
+                expect('}');
+            }
+
+            return values;
+        }
+
+        /**
+         * Parses a string, without escape sequences other than <code>\"</code> and <code>\\</code>.
+         * @return the string
+         */
+        private String string()
+        {
+            expect('"');
+
+            final StringBuilder builder = new StringBuilder();
+
+            while(true)
+            {
+                Preconditions.checkArgument(position < text.length(), "Unterminated string.");
+
+                char c = text.charAt(position++);
+
+                if(c == '"')
+                    return builder.toString();
+
+                if(c == '\\')
+                {
+                    Preconditions.checkArgument(position < text.length() && (text.charAt(position) == '"' || text.charAt(position) == '\\'), "Unsupported escape sequence.");
+                    c = text.charAt(position++);
+                }
+
+                builder.append(c);
+            }
+        }
+
+        /**
+         * Parses a number, checked when converted.
+         * @return the text of the number
+         */
+        private String number()
+        {
+            final int start = position;
+
+            while(position < text.length() && "+-.0123456789eE".indexOf(text.charAt(position)) >= 0)
+                position++;
+
+            Preconditions.checkArgument(position > start, "Value expected at " + start + ".");
+
+            return text.substring(start, position);
+        }
+
+        /**
+         * Returns the next character which is not a whitespace.
+         * @return the character
+         * @throws IllegalArgumentException if the end of the text is reached
+         */
+        private char peek()
+        {
+            skipWhitespace();
+            Preconditions.checkArgument(position < text.length(), "Unexpected end of the text.");
+
+            return text.charAt(position);
+        }
+
+        /**
+         * Skips the next character if it is the expected one.
+         * @param c the expected character
+         * @return <code>true</code> if it was skipped
+         */
+        private boolean consume(char c)
+        {
+            skipWhitespace();
+
+            if(position < text.length() && text.charAt(position) == c)
+            {
+                position++;
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Skips the next character, which has to be the expected one.
+         * @param c the expected character
+         * @throws IllegalArgumentException if the next character is another one
+         */
+        private void expect(char c)
+        {
+            Preconditions.checkArgument(consume(c), "'" + c + "' expected at " + position + ".");
+        }
+
+        /**
+         * Skips the whitespaces.
+         */
+        private void skipWhitespace()
+        {
+            while(position < text.length() && Character.isWhitespace(text.charAt(position)))
+                position++;
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package ch.epfl.alpano.batch;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.Preconditions;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.LazyHgtDiscreteElevationModel;
+import ch.epfl.alpano.dem.PyramidDiscreteElevationModel;
+import ch.epfl.alpano.gui.PanoramaUserParameters;
+import ch.epfl.alpano.render.PanoramaRasterizer;
+import ch.epfl.alpano.render.SummitLabel;
+import ch.epfl.alpano.render.SummitLabeler;
+import ch.epfl.alpano.summit.GazetteerParser;
+import ch.epfl.alpano.summit.Summit;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Renders the panoramas of a batch, with their labels, to PNG files, without any graphical toolkit.
+ * The panoramas go through three stages connected by queues of {@value #QUEUE_CAPACITY} panoramas, so that a panorama
+ * is painted and encoded while the next ones are computed, and that few panoramas are in memory at once:
+ * <ol>
+ *     <li>computation of the panorama and of its labels, by the calling thread (both are parallel),</li>
+ *     <li>painting of the image and drawing of the labels, by a thread (the painting is parallel),</li>
+ *     <li>PNG encoding, by {@value #ENCODING_THREADS} threads.</li>
+ * </ol>
+ * The elevation model and the summits are shared by all the panoramas.
+ */
+public final class BatchRenderer implements AutoCloseable
+{
+    /**
+     * The capacity of the queues between the stages.
+     */
+    public static final int QUEUE_CAPACITY = 2;
+
+    /**
+     * The number of threads encoding the images.
+     */
+    public static final int ENCODING_THREADS = 2;
+
+    private static final String DIRECTORY_HGT = ".";
+    private static final String FILE_SUMMITS = "alps.txt";
+    private static final int MAX_OPEN_HGT_FILES = 32;
+    private static final String OPTION_ADAPTIVE = "--adaptive";
+
+    /**
+     * Marks the end of the panoramas in a queue.
+     */
+    private static final Item END = new Item(null);
+
+    private final PanoramaComputer computer;
+    private final SummitLabeler labeler;
+    private final File directory;
+    private final boolean adaptive;
+
+    /**
+     * Creates a renderer writing to a directory, created if needed, supersampling all the pixels.
+     * @param cDEM the continuous elevation model
+     * @param summits the summits to label
+     * @param directory the directory of the images
+     * @throws IllegalArgumentException if the directory cannot be created
+     */
+    public BatchRenderer(ContinuousElevationModel cDEM, List<Summit> summits, File directory)
+    {
+        this(cDEM, summits, directory, false);
+    }
+
+    /**
+     * Creates a renderer writing to a directory, created if needed.
+     * @param cDEM the continuous elevation model
+     * @param summits the summits to label
+     * @param directory the directory of the images
+     * @param adaptive <code>true</code> to supersample only the pixels on the edges of the terrain (see
+     * {@link PanoramaComputer#computeAdaptivePanorama(PanoramaParameters, Panorama.Storage, Set, int)}), <code>false</code>
+     * to supersample all of them
+     * @throws IllegalArgumentException if the directory cannot be created
+     */
+    public BatchRenderer(ContinuousElevationModel cDEM, List<Summit> summits, File directory, boolean adaptive)
+    {
+        directory.mkdirs();
+        Preconditions.checkArgument(directory.isDirectory(), "The specified directory does not exist.");
+
+        this.computer = new PanoramaComputer(cDEM);
+        this.labeler = new SummitLabeler(cDEM, summits, computer.pool());
+        this.directory = directory;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Renders panoramas, each one to the file named after its job in the directory of the renderer.
+     * The failure of a panorama is reported and does not stop the others.
+     * @param jobs the panoramas
+     * @return the report of the rendering
+     * @throws InterruptedException if the thread is interrupted while waiting for a stage
+     */
+    public Report render(List<BatchJob> jobs) throws InterruptedException
+    {
+        final Report report = new Report(jobs.size());
+        final BlockingQueue<Item> painting = new ArrayBlockingQueue<>(QUEUE_CAPACITY), encoding = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(1 + ENCODING_THREADS, runnable ->
+        {
+            final Thread thread = new Thread(runnable, "batch-rendering");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final List<Future<Void>> stages = new ArrayList<>();
+        stages.add(executor.submit(() -> paint(painting, encoding, report)));
+        for(int i = 0; i < ENCODING_THREADS; i++)
+            stages.add(executor.submit(() -> encode(encoding, report)));
+
+        final long start = System.nanoTime();
+
+        try
+        {
+            for(BatchJob job : jobs)
+            {
+                if(report.stopped())
+                {
+                    report.skip(job);
+                    continue;
+                }
+
+                final Item item = new Item(job);
+                final long stageStart = System.nanoTime();
+
+                try
+                {
+                    final PanoramaUserParameters parameters = item.job.parameters();
+
+                    item.panorama = adaptive
+                            ? computer.computeAdaptivePanorama(parameters.panoramaParameters(), Panorama.Storage.HEAP, PanoramaRasterizer.channels(parameters.painter()), parameters.supersamplingExponent())
+                            : computer.computePanorama(parameters.panoramaParameters(), Panorama.Storage.HEAP, PanoramaRasterizer.channels(parameters.painter()));
+                    item.labels = labeler.labels(parameters.panoramaDisplayParameters(), item.panorama);
+
+                    report.compute.add(System.nanoTime() - stageStart);
+                    painting.put(item);
+                }
+                catch(RuntimeException e)
+                {
+                    report.fail(item.job, e);
+                }
+                catch(Error e)
+                {
+                    report.stop(item.job, e);
+                }
+            }
+        }
+        finally
+        {
+            painting.put(END);
+
+            try
+            {
+                for(Future<Void> stage : stages)
+                    stage.get();
+            }
+            catch(ExecutionException e) // The stages catch the failures of the panoramas
+            {
+                throw new IllegalStateException(e.getCause());
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        report.elapsed = System.nanoTime() - start;
+
+        return report;
+    }
+
+    /**
+     * Paints the computed panoramas until the end of the queue, then marks the end of the queue of each encoding thread.
+     * Once the batch is stopped, the remaining panoramas are failed without being painted.
+     * @param painting the queue of the computed panoramas
+     * @param encoding the queue of the painted panoramas
+     * @param report the report
+     * @return nothing
+     * @throws InterruptedException if the thread is interrupted while waiting for a queue
+     */
+    private static Void paint(BlockingQueue<Item> painting, BlockingQueue<Item> encoding, Report report) throws InterruptedException
+    {
+        Item item;
+
+        while((item = painting.take()) != END)
+        {
+            if(report.stopped())
+            {
+                report.skip(item.job);
+                continue;
+            }
+
+            final long start = System.nanoTime();
+
+            try
+            {
+                final PanoramaUserParameters parameters = item.job.parameters();
+                final BufferedImage image = PanoramaRasterizer.renderImage(item.panorama, PanoramaRasterizer.painter(item.panorama, parameters.painter()), parameters.supersamplingExponent());
+
+                item.image = PanoramaRasterizer.compose(image, item.labels);
+                item.panorama = null;
+
+                report.paint.add(System.nanoTime() - start);
+                encoding.put(item);
+            }
+            catch(RuntimeException e)
+            {
+                report.fail(item.job, e);
+            }
+            catch(Error e) // The stage keeps taking the panoramas, to fail them without blocking the previous one
+            {
+                report.stop(item.job, e);
+            }
+        }
+
+        for(int i = 0; i < ENCODING_THREADS; i++)
+            encoding.put(END);
+
+        return null;
+    }
+
+    /**
+     * Encodes the painted panoramas until the end of the queue.
+     * Once the batch is stopped, the remaining panoramas are failed without being encoded.
+     * @param encoding the queue of the painted panoramas
+     * @param report the report
+     * @return nothing
+     * @throws InterruptedException if the thread is interrupted while waiting for the queue
+     */
+    private Void encode(BlockingQueue<Item> encoding, Report report) throws InterruptedException
+    {
+        Item item;
+
+        while((item = encoding.take()) != END)
+        {
+            if(report.stopped())
+            {
+                report.skip(item.job);
+                continue;
+            }
+
+            final long start = System.nanoTime();
+
+            try
+            {
+                if(!ImageIO.write(item.image, "png", new File(directory, item.job.name() + ".png")))
+                    throw new IOException("No PNG encoder.");
+
+                report.encode.add(System.nanoTime() - start);
+                report.succeed();
+            }
+            catch(IOException | RuntimeException e)
+            {
+                report.fail(item.job, e);
+            }
+            catch(Error e)
+            {
+                report.stop(item.job, e);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close()
+    {
+        computer.close();
+    }
+
+    /**
+     * Renders the panoramas of a CSV or JSON file (see {@link BatchJobParser}) and prints the report.
+     * The arguments are the file of the panoramas, the directory of the images, and optionally the directory of the HGT
+     * files and the file of the summits, by default the ones of the application. They can be preceded by the option
+     * <code>--adaptive</code> to supersample only the pixels on the edges of the terrain.
+     * @param args the arguments
+     * @throws Exception if the elevation model cannot be closed
+     */
+    public static void main(String[] args) throws Exception
+    {
+        final boolean adaptive = args.length > 0 && args[0].equals(OPTION_ADAPTIVE);
+
+        if(adaptive)
+            args = Arrays.copyOfRange(args, 1, args.length);
+
+        if(args.length < 2 || args.length > 4)
+        {
+            System.err.println("Usage: BatchRenderer [" + OPTION_ADAPTIVE + "] <panoramas.csv|panoramas.json> <output directory> [HGT directory] [summits file]");
+            System.exit(2);
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        final List<BatchJob> jobs;
+        final List<Summit> summits;
+
+        try
+        {
+            jobs = BatchJobParser.readJobsFrom(new File(args[0]));
+            summits = GazetteerParser.readSummitsFrom(new File(args.length > 3 ? args[3] : FILE_SUMMITS));
+        }
+        catch(IOException e)
+        {
+            System.err.println("Cannot read the input: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        final Report report;
+
+        try(LazyHgtDiscreteElevationModel dem = new LazyHgtDiscreteElevationModel(new File(args.length > 2 ? args[2] : DIRECTORY_HGT), MAX_OPEN_HGT_FILES, PyramidDiscreteElevationModel::ofHgtFile);
+            BatchRenderer renderer = new BatchRenderer(new ContinuousElevationModel(dem), summits, new File(args[1]), adaptive))
+        {
+            report = renderer.render(jobs);
+        }
+
+        System.out.println(report);
+
+        System.exit(report.failures().isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * A panorama going through the stages.
+     */
+    private static final class Item
+    {
+        private final BatchJob job;
+
+        private Panorama panorama;
+        private List<SummitLabel> labels;
+        private BufferedImage image;
+
+        /**
+         * Creates a new instance.
+         * @param job the job
+         */
+        private Item(BatchJob job)
+        {
+            this.job = job;
+        }
+    }
+
+    /**
+     * The durations of the panoramas in a stage.
+     */
+    public static final class StageStatistics
+    {
+        private long count, total, max;
+
+        /**
+         * Adds the duration of a panorama.
+         * @param nanos the duration, in nanoseconds
+         */
+        private synchronized void add(long nanos)
+        {
+            count++;
+            total += nanos;
+            max = Math.max(max, nanos);
+        }
+
+        /**
+         * Returns the number of panoramas that went through the stage.
+         * @return the number of panoramas
+         */
+        public synchronized long count()
+        {
+            return count;
+        }
+
+        /**
+         * Returns the mean duration of a panorama in the stage.
+         * @return the mean duration, in milliseconds, or 0 if no panorama went through the stage
+         */
+        public synchronized double meanMillis()
+        {
+            return count == 0 ? 0 : total / 1e6 / count;
+        }
+
+        /**
+         * Returns the longest duration of a panorama in the stage.
+         * @return the longest duration, in milliseconds
+         */
+        public synchronized double maxMillis()
+        {
+            return max / 1e6;
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            return String.format(Locale.ROOT, "%d panoramas, mean %.1f ms, max %.1f ms", count, meanMillis(), maxMillis());
+        }
+    }
+
+    /**
+     * The report of the rendering of a batch: the failures, the throughput and the durations of each stage.
+     */
+    public static final class Report
+    {
+        private final int jobs;
+        private final StageStatistics compute = new StageStatistics(), paint = new StageStatistics(), encode = new StageStatistics();
+        private final Map<String, String> failures = new ConcurrentSkipListMap<>();
+        private int rendered;
+        private long elapsed;
+        private volatile Error stop;
+
+        /**
+         * Creates an empty report.
+         * @param jobs the number of panoramas of the batch
+         */
+        private Report(int jobs)
+        {
+            this.jobs = jobs;
+        }
+
+        /**
+         * Records a rendered panorama.
+         */
+        private synchronized void succeed()
+        {
+            rendered++;
+        }
+
+        /**
+         * Records a failed panorama.
+         * @param job the panorama
+         * @param e the cause of the failure
+         */
+        private void fail(BatchJob job, Throwable e)
+        {
+            failures.put(job.name(), String.valueOf(e));
+        }
+
+        /**
+         * Records a panorama whose rendering threw an error, and stops the batch: the state of the virtual machine is
+         * unknown after an error (such as an {@link OutOfMemoryError}), so the remaining panoramas are not rendered.
+         * @param job the panorama
+         * @param e the error
+         */
+        private void stop(BatchJob job, Error e)
+        {
+            fail(job, e);
+            stop = e;
+        }
+
+        /**
+         * Returns whether the batch is stopped by an error.
+         * @return true if and only if the batch is stopped
+         */
+        private boolean stopped()
+        {
+            return stop != null;
+        }
+
+        /**
+         * Records a panorama not rendered because the batch is stopped.
+         * @param job the panorama
+         */
+        private void skip(BatchJob job)
+        {
+            failures.put(job.name(), "Not rendered, the batch was stopped by " + stop);
+        }
+
+        /**
+         * Returns the number of panoramas of the batch.
+         * @return the number of panoramas
+         */
+        public int jobs()
+        {
+            return jobs;
+        }
+
+        /**
+         * Returns the number of panoramas written.
+         * @return the number of panoramas
+         */
+        public synchronized int rendered()
+        {
+            return rendered;
+        }
+
+        /**
+         * Returns the failed panoramas.
+         * @return the causes of the failures, by name of panorama
+         */
+        public Map<String, String> failures()
+        {
+            return Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Returns the number of panoramas written per minute.
+         * @return the throughput
+         */
+        public double panoramasPerMinute()
+        {
+            return elapsed == 0 ? 0 : rendered() * 60e9 / elapsed;
+        }
+
+        /**
+         * Returns the statistics of the computation of the panoramas and of their labels.
+         * @return the statistics
+         */
+        public StageStatistics compute()
+        {
+            return compute;
+        }
+
+        /**
+         * Returns the statistics of the painting of the images.
+         * @return the statistics
+         */
+        public StageStatistics paint()
+        {
+            return paint;
+        }
+
+        /**
+         * Returns the statistics of the encoding of the images.
+         * @return the statistics
+         */
+        public StageStatistics encode()
+        {
+            return encode;
+        }
+
+        @Override
+        public String toString()
+        {
+            final StringBuilder builder = new StringBuilder();
+
+            builder.append(String.format(Locale.ROOT, "%d/%d panoramas rendered in %.1f s (%.1f panoramas/min)%n", rendered(), jobs, elapsed / 1e9, panoramasPerMinute()));
+            builder.append("  compute: ").append(compute).append(System.lineSeparator());
+            builder.append("  paint:   ").append(paint).append(System.lineSeparator());
+            builder.append("  encode:  ").append(encode);
+
+            for(Map.Entry<String, String> failure : failures.entrySet())
+                builder.append(System.lineSeparator()).append("  failed ").append(failure.getKey()).append(": ").append(failure.getValue());
+
+            return builder.toString();
+        }
+    }
+}
@@ -44,6 +44,12 @@ final class CompositeDiscreteElevationModel implements DiscreteElevationModel
         throw new IllegalArgumentException("(" + x + "," + y + ")");
     }
 
+    @Override
+    public double maxElevationSample(int xMin, int yMin, int xMax, int yMax)
+    {
+        return Math.max(dem1.maxElevationSample(xMin, yMin, xMax, yMax), dem2.maxElevationSample(xMin, yMin, xMax, yMax));
+    }
+
     @Override
     public void close() throws Exception
     {
@@ -2,6 +2,7 @@ package ch.epfl.alpano.dem;
 
 import ch.epfl.alpano.Distance;
 import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval2D;
 import ch.epfl.alpano.Math2;
 
 import java.util.Objects;
@@ -34,11 +35,78 @@ public final class ContinuousElevationModel
      */
     public double elevationAt(GeoPoint p)
     {
-        final double longitudeIndex = DiscreteElevationModel.sampleIndex(p.longitude()), latitudeIndex = DiscreteElevationModel.sampleIndex(p.latitude());
+        return elevationAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Returns the value of the elevation at the given coordinates, without requiring a {@link GeoPoint}.
+     * @param longitude the longitude (radians)
+     * @param latitude the latitude (radians)
+     * @return the value of the elevation, or 0 if the point is out of the bounds
+     */
+    public double elevationAt(double longitude, double latitude)
+    {
+        final double longitudeIndex = DiscreteElevationModel.sampleIndex(longitude), latitudeIndex = DiscreteElevationModel.sampleIndex(latitude);
         final int longitudeIndexMin = (int) Math.floor(longitudeIndex), longitudeIndexMax = longitudeIndexMin + 1;
         final int latitudeIndexMin = (int) Math.floor(latitudeIndex), latitudeIndexMax = latitudeIndexMin + 1;
 
-        return Math2.bilerp(elevationAt(longitudeIndexMin, latitudeIndexMin), elevationAt(longitudeIndexMax, latitudeIndexMin), elevationAt(longitudeIndexMin, latitudeIndexMax), elevationAt(longitudeIndexMax, latitudeIndexMax), longitudeIndex - longitudeIndexMin, latitudeIndex - latitudeIndexMin);
+        return Math2.bilerp(elevationSample(longitudeIndexMin, latitudeIndexMin), elevationSample(longitudeIndexMax, latitudeIndexMin), elevationSample(longitudeIndexMin, latitudeIndexMax), elevationSample(longitudeIndexMax, latitudeIndexMax), longitudeIndex - longitudeIndexMin, latitudeIndex - latitudeIndexMin);
+    }
+
+    /**
+     * Returns an upper bound of the elevation over a rectangle of coordinates, as given by the discrete model.
+     * The bound covers all the samples used to interpolate the points of the rectangle, and is positive infinity if the
+     * discrete model does not know any.
+     * @param longitude1 the longitude of a corner (radians)
+     * @param latitude1 the latitude of a corner (radians)
+     * @param longitude2 the longitude of the opposite corner (radians)
+     * @param latitude2 the latitude of the opposite corner (radians)
+     * @return the upper bound
+     */
+    public double maxElevation(double longitude1, double latitude1, double longitude2, double latitude2)
+    {
+        final int xMin = (int) Math.floor(DiscreteElevationModel.sampleIndex(Math.min(longitude1, longitude2)));
+        final int yMin = (int) Math.floor(DiscreteElevationModel.sampleIndex(Math.min(latitude1, latitude2)));
+        final int xMax = (int) Math.floor(DiscreteElevationModel.sampleIndex(Math.max(longitude1, longitude2))) + 1;
+        final int yMax = (int) Math.floor(DiscreteElevationModel.sampleIndex(Math.max(latitude1, latitude2))) + 1;
+
+        final double max = dem.maxElevationSample(xMin, yMin, xMax, yMax);
+
+        final Interval2D extent = dem.extent();
+
+        // The samples out of the extent are 0
+        if(xMin < extent.iX().includedFrom() || yMin < extent.iY().includedFrom() || xMax > extent.iX().includedTo() || yMax > extent.iY().includedTo())
+            return Math.max(max, 0);
+
+        return max;
+    }
+
+    /**
+     * Returns a bound of the slope of the elevation along any path, reading all the samples of the discrete model.
+     * The bound holds everywhere, including next to the void samples and across the border of the extent, where the
+     * elevation falls to 0.
+     * @return the bound of the slope (meters per meter)
+     */
+    public double maxSlope()
+    {
+        final Interval2D extent = dem.extent();
+
+        // The differences with the samples out of the extent, which are 0, are included
+        double maxDifference = 0;
+        for(int y = extent.iY().includedFrom() - 1; y <= extent.iY().includedTo(); y++)
+        {
+            for(int x = extent.iX().includedFrom() - 1; x <= extent.iX().includedTo(); x++)
+            {
+                final double z = elevationSample(x, y);
+                maxDifference = Math.max(maxDifference, Math.max(Math.abs(elevationSample(x + 1, y) - z), Math.abs(elevationSample(x, y + 1) - z)));
+            }
+        }
+
+        // The interpolated slope is bounded by the differences in both directions, the samples being closer along the
+        // parallels away from the equator
+        final double latitude = Math.max(Math.abs(extent.iY().includedFrom() - 1), Math.abs(extent.iY().includedTo() + 1)) / DiscreteElevationModel.SAMPLES_PER_RADIAN;
+
+        return maxDifference * Math.sqrt(1 / Math2.sq(D * Math.cos(latitude)) + 1 / Math2.sq(D));
     }
 
     /**
@@ -47,7 +115,7 @@ public final class ContinuousElevationModel
      * @param latitudeIndex the latitude index
      * @return the value of the elevation, or 0 if the point is out of the bounds
      */
-    private double elevationAt(int longitudeIndex, int latitudeIndex)
+    private double elevationSample(int longitudeIndex, int latitudeIndex)
     {
         if(dem.extent().contains(longitudeIndex, latitudeIndex))
             return dem.elevationSample(longitudeIndex, latitudeIndex);
@@ -61,11 +129,22 @@ public final class ContinuousElevationModel
      */
     public double slopeAt(GeoPoint p)
     {
-        final double longitudeIndex = DiscreteElevationModel.sampleIndex(p.longitude()), latitudeIndex = DiscreteElevationModel.sampleIndex(p.latitude());
+        return slopeAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Returns the value of the slope at the given coordinates, without requiring a {@link GeoPoint}.
+     * @param longitude the longitude (radians)
+     * @param latitude the latitude (radians)
+     * @return the value of the slope, or 0 if the point is out of the bounds
+     */
+    public double slopeAt(double longitude, double latitude)
+    {
+        final double longitudeIndex = DiscreteElevationModel.sampleIndex(longitude), latitudeIndex = DiscreteElevationModel.sampleIndex(latitude);
         final int longitudeIndexMin = (int) Math.floor(longitudeIndex), longitudeIndexMax = longitudeIndexMin + 1;
         final int latitudeIndexMin = (int) Math.floor(latitudeIndex), latitudeIndexMax = latitudeIndexMin + 1;
 
-        return Math2.bilerp(slopeAt(longitudeIndexMin, latitudeIndexMin), slopeAt(longitudeIndexMax, latitudeIndexMin), slopeAt(longitudeIndexMin, latitudeIndexMax), slopeAt(longitudeIndexMax, latitudeIndexMax), longitudeIndex - longitudeIndexMin, latitudeIndex - latitudeIndexMin);
+        return Math2.bilerp(slopeSample(longitudeIndexMin, latitudeIndexMin), slopeSample(longitudeIndexMax, latitudeIndexMin), slopeSample(longitudeIndexMin, latitudeIndexMax), slopeSample(longitudeIndexMax, latitudeIndexMax), longitudeIndex - longitudeIndexMin, latitudeIndex - latitudeIndexMin);
     }
 
     /**
@@ -74,11 +153,11 @@ public final class ContinuousElevationModel
      * @param latitudeIndex the latitude index
      * @return the value of the slope, or 0 if the point is out of the bounds
      */
-    private double slopeAt(int longitudeIndex, int latitudeIndex)
+    private double slopeSample(int longitudeIndex, int latitudeIndex)
     {
-        final double z = elevationAt(longitudeIndex, latitudeIndex);
-        final double za = elevationAt(longitudeIndex + 1, latitudeIndex) - z;
-        final double zb = elevationAt(longitudeIndex, latitudeIndex + 1) - z;
+        final double z = elevationSample(longitudeIndex, latitudeIndex);
+        final double za = elevationSample(longitudeIndex + 1, latitudeIndex) - z;
+        final double zb = elevationSample(longitudeIndex, latitudeIndex + 1) - z;
 
         return Math.acos(D / (Math.sqrt(Math2.sq(za) + Math2.sq(zb) + Math2.sq(D))));
     }
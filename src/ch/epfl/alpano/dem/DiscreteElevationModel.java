@@ -44,6 +44,21 @@ public interface DiscreteElevationModel extends AutoCloseable
      */
     double elevationSample(int x, int y);
 
+    /**
+     * Returns an upper bound of the samples of a rectangle, clipped to the extent of the model.
+     * The default implementation knows no bound and returns positive infinity, models able to compute one quickly
+     * (see {@link PyramidDiscreteElevationModel}) should override it.
+     * @param xMin the x coordinate of the left edge (included)
+     * @param yMin the y coordinate of the bottom edge (included)
+     * @param xMax the x coordinate of the right edge (included)
+     * @param yMax the y coordinate of the top edge (included)
+     * @return the upper bound, or negative infinity if the rectangle does not intersect the extent
+     */
+    default double maxElevationSample(int xMin, int yMin, int xMax, int yMax)
+    {
+        return Double.POSITIVE_INFINITY;
+    }
+
     /**
      * Returns the union of the two models.
      * Throws {@link IllegalArgumentException} if the models are not unionable.
@@ -16,7 +16,7 @@ public final class ElevationProfile
 
     private static final int INTERVAL = 4096;
 
-    private final GeoPoint[] points;
+    private final double[] longitudes, latitudes;
 
     /**
      * Creates an elevation profile following a circle arc
@@ -36,7 +36,8 @@ public final class ElevationProfile
 
 
         final int size = (int) Math.ceil(length / INTERVAL + 1);
-        this.points = new GeoPoint[size];
+        this.longitudes = new double[size];
+        this.latitudes = new double[size];
 
         for(int i = 0; i < size; i++)
         {
@@ -44,7 +45,8 @@ public final class ElevationProfile
             final double latitude = asin(sin(origin.latitude()) * cos(angle) + cos(origin.latitude()) * sin(angle) * cos(Azimuth.toMath(azimuth)));
             final double longitude = ((origin.longitude() - asin(sin(Azimuth.toMath(azimuth)) * sin(angle) / cos(latitude)) + PI) % Math2.PI2) - PI;
 
-            points[i] = new GeoPoint(longitude, latitude);
+            longitudes[i] = longitude;
+            latitudes[i] = latitude;
         }
     }
 
@@ -66,7 +68,9 @@ public final class ElevationProfile
      */
     public double elevationAt(double x)
     {
-        return elevationModel.elevationAt(positionAt(x));
+        Preconditions.checkArgument(isInBounds(x), "x is out of the bounds.");
+
+        return elevationModel.elevationAt(interpolate(longitudes, x), interpolate(latitudes, x));
     }
 
     /**
@@ -79,11 +83,75 @@ public final class ElevationProfile
     {
         Preconditions.checkArgument(isInBounds(x), "x is out of the bounds.");
 
-        final GeoPoint low = points[(int) Math.floor(x / INTERVAL)];
-        final GeoPoint up = points[(int) Math.ceil(x / INTERVAL)];
-        final double g = (x % INTERVAL) / INTERVAL;
+        return new GeoPoint(interpolate(longitudes, x), interpolate(latitudes, x));
+    }
+
+    /**
+     * Returns the longitude of a point located at the specified distance from the origin.
+     * Unlike {@link #positionAt(double)}, no object is allocated.
+     * @param x the distance from the origin
+     * @return the longitude (radians)
+     * @throws IllegalArgumentException if the position is out of the bounds
+     */
+    public double longitudeAt(double x)
+    {
+        Preconditions.checkArgument(isInBounds(x), "x is out of the bounds.");
+
+        return interpolate(longitudes, x);
+    }
+
+    /**
+     * Returns the latitude of a point located at the specified distance from the origin.
+     * Unlike {@link #positionAt(double)}, no object is allocated.
+     * @param x the distance from the origin
+     * @return the latitude (radians)
+     * @throws IllegalArgumentException if the position is out of the bounds
+     */
+    public double latitudeAt(double x)
+    {
+        Preconditions.checkArgument(isInBounds(x), "x is out of the bounds.");
+
+        return interpolate(latitudes, x);
+    }
+
+    /**
+     * Returns an upper bound of the elevation of the terrain between two points of the profile, as given by
+     * {@link ContinuousElevationModel#maxElevation(double, double, double, double)} over the bounding rectangle of this
+     * part of the profile.
+     * @param x1 the distance of the first point from the origin
+     * @param x2 the distance of the second point from the origin, greater or equal to the first one
+     * @return the upper bound
+     * @throws IllegalArgumentException if a position is out of the bounds or if the positions are not ordered
+     */
+    public double maxElevationBetween(double x1, double x2)
+    {
+        Preconditions.checkArgument(isInBounds(x1) && isInBounds(x2), "x is out of the bounds.");
+        Preconditions.checkArgument(x1 <= x2, "The positions must be ordered.");
+
+        double minLongitude = Math.min(interpolate(longitudes, x1), interpolate(longitudes, x2)), maxLongitude = Math.max(interpolate(longitudes, x1), interpolate(longitudes, x2));
+        double minLatitude = Math.min(interpolate(latitudes, x1), interpolate(latitudes, x2)), maxLatitude = Math.max(interpolate(latitudes, x1), interpolate(latitudes, x2));
+
+        // The profile is linear between the points computed every INTERVAL meters, its extremes are at these points
+        for(int i = (int) Math.floor(x1 / INTERVAL) + 1; i < x2 / INTERVAL; i++)
+        {
+            minLongitude = Math.min(minLongitude, longitudes[i]);
+            maxLongitude = Math.max(maxLongitude, longitudes[i]);
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+        }
 
-        return new GeoPoint(Math2.lerp(low.longitude(), up.longitude(), g), Math2.lerp(low.latitude(), up.latitude(), g));
+        return elevationModel.maxElevation(minLongitude, minLatitude, maxLongitude, maxLatitude);
+    }
+
+    /**
+     * Linearly interpolates the values computed every {@value #INTERVAL} meters.
+     * @param values the values
+     * @param x the distance from the origin, in the bounds
+     * @return the interpolated value
+     */
+    private static double interpolate(double[] values, double x)
+    {
+        return Math2.lerp(values[(int) Math.floor(x / INTERVAL)], values[(int) Math.ceil(x / INTERVAL)], (x % INTERVAL) / INTERVAL);
     }
 
     /**
@@ -94,6 +162,8 @@ public final class ElevationProfile
      */
     public double slopeAt(double x)
     {
-        return elevationModel.slopeAt(positionAt(x));
+        Preconditions.checkArgument(isInBounds(x), "x is out of the bounds.");
+
+        return elevationModel.slopeAt(interpolate(longitudes, x), interpolate(latitudes, x));
     }
 }
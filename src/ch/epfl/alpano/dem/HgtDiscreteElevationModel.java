@@ -17,9 +17,12 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel
 {
     private static final int SAMPLES_COUNT = 12967201;
     private static final int HGT_FILE_LENGTH = SAMPLES_COUNT * 2;
+    private static final int SAMPLES_PER_ROW = SAMPLES_PER_DEGREE + 1;
 
     private final int latitudeIndex, longitudeIndex;
+    private final Interval2D extent;
     private final ShortBuffer buffer;
+    private final SampleTileCache cache;
 
     /**
      * Creates a new instance.
@@ -28,10 +31,47 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel
      */
     public HgtDiscreteElevationModel(File file)
     {
+        this(file, 0);
+    }
+
+    /**
+     * Creates a new instance whose samples are read through a cache of decoded tiles.
+     * A tile of {@value SampleTileCache#TILE_SIZE}×{@value SampleTileCache#TILE_SIZE} samples uses 128 KiB.
+     * @param file the source file
+     * @param cachedTiles the maximal number of tiles kept in the cache, or 0 to read the samples directly from the file
+     * @throws IllegalArgumentException if the file name is not correct, if the file does not exist or if the number of tiles is negative
+     */
+    public HgtDiscreteElevationModel(File file, int cachedTiles)
+    {
+        Preconditions.checkArgument(cachedTiles >= 0, "The number of cached tiles must be positive.");
         Preconditions.checkArgument(file.exists(), "The specified file does not exist.");
 
-        final String name = file.getName();
+        this.extent = extentOf(file.getName());
+        this.longitudeIndex = extent.iX().includedFrom();
+        this.latitudeIndex = extent.iY().includedFrom();
+
+        Preconditions.checkArgument(file.length() == HGT_FILE_LENGTH, "The file length must be exactly 25 934 402 bytes."); // The file length must be exactly 25 934 402 bytes
 
+        try(FileInputStream stream = new FileInputStream(file))
+        {
+            this.buffer = stream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HGT_FILE_LENGTH).asShortBuffer();
+        }
+        catch(IOException e)
+        {
+            throw new IllegalArgumentException("Exception while reading the file.");
+        }
+
+        this.cache = cachedTiles > 0 ? new SampleTileCache(this::loadTile, cachedTiles) : null;
+    }
+
+    /**
+     * Returns the extent of the samples contained in a HGT file, given its name.
+     * @param name the name of the file
+     * @return the extent
+     * @throws IllegalArgumentException if the file name is not correct
+     */
+    static Interval2D extentOf(String name)
+    {
         Preconditions.checkArgument(name.length() == 11, "The file name must match the required length of 11."); // The length must be equal to 11
         Preconditions.checkArgument(name.endsWith(".hgt"), "The file extension must match the required extension .hgt."); // The extension must be exactly ".hgt"
 
@@ -46,18 +86,46 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel
         Preconditions.checkArgument(latitude >= 0 && latitude < 90, "The latitude must be in [0,90[.");
         Preconditions.checkArgument(longitude >= 0 && longitude < 180, "The longitude must be in [0,180[.");
 
-        this.latitudeIndex = (signLatitude ? 1 : -1) * latitude * DiscreteElevationModel.SAMPLES_PER_DEGREE;
-        this.longitudeIndex = (signLongitude ? 1 : -1) * longitude * DiscreteElevationModel.SAMPLES_PER_DEGREE;
+        final int latitudeIndex = (signLatitude ? 1 : -1) * latitude * DiscreteElevationModel.SAMPLES_PER_DEGREE;
+        final int longitudeIndex = (signLongitude ? 1 : -1) * longitude * DiscreteElevationModel.SAMPLES_PER_DEGREE;
 
-        Preconditions.checkArgument(file.length() == HGT_FILE_LENGTH, "The file length must be exactly 25 934 402 bytes."); // The file length must be exactly 25 934 402 bytes
+        return new Interval2D(new Interval1D(longitudeIndex, longitudeIndex + SAMPLES_PER_DEGREE), new Interval1D(latitudeIndex, latitudeIndex + SAMPLES_PER_DEGREE));
+    }
 
-        try(FileInputStream stream = new FileInputStream(file))
+    /**
+     * Checks if a file can be read as a HGT file, without reading it.
+     * @param file the file
+     * @return <code>true</code> if the file exists and if its name and length are correct, <code>false</code> else
+     */
+    static boolean isValidFile(File file)
+    {
+        try
         {
-            this.buffer = stream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HGT_FILE_LENGTH).asShortBuffer();
+            extentOf(file.getName());
         }
-        catch(IOException e)
+        catch(IllegalArgumentException e)
         {
-            throw new IllegalArgumentException("Exception while reading the file.");
+            return false;
+        }
+
+        return file.isFile() && file.length() == HGT_FILE_LENGTH;
+    }
+
+    /**
+     * Copies the samples of a tile from the file.
+     * @param column the column of the top left sample of the tile
+     * @param row the row of the top left sample of the tile
+     * @param tile the array to fill, row by row
+     */
+    private void loadTile(int column, int row, short[] tile)
+    {
+        final ShortBuffer source = buffer.duplicate();
+        final int length = Math.min(SampleTileCache.TILE_SIZE, SAMPLES_PER_ROW - column);
+
+        for(int r = 0; r < SampleTileCache.TILE_SIZE && row + r < SAMPLES_PER_ROW; r++)
+        {
+            source.position((row + r) * SAMPLES_PER_ROW + column);
+            source.get(tile, r * SampleTileCache.TILE_SIZE, length);
         }
     }
 
@@ -85,17 +153,38 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel
     @Override
     public Interval2D extent()
     {
-        return new Interval2D(new Interval1D(longitudeIndex, longitudeIndex + SAMPLES_PER_DEGREE), new Interval1D(latitudeIndex, latitudeIndex + SAMPLES_PER_DEGREE));
+        return extent;
     }
 
     @Override
     public double elevationSample(int x, int y)
     {
-        Preconditions.checkArgument(extent().contains(x, y), "The sample is out of the bound.");
+        Preconditions.checkArgument(extent.contains(x, y), "The sample is out of the bound.");
 
-        final int i = (x - longitudeIndex) + (SAMPLES_PER_DEGREE - y + latitudeIndex) * (SAMPLES_PER_DEGREE + 1);
+        final int column = x - longitudeIndex, row = SAMPLES_PER_DEGREE - y + latitudeIndex;
 
-        return buffer.get(i);
+        if(cache != null)
+            return cache.sample(column, row);
+
+        return buffer.get(column + row * SAMPLES_PER_ROW);
+    }
+
+    /**
+     * Returns the number of tiles found in the tiles cache, looked up when a thread reads another tile than its last one.
+     * @return the number of hits, always 0 if the model has no cache
+     */
+    public long cacheHits()
+    {
+        return cache != null ? cache.hits() : 0;
+    }
+
+    /**
+     * Returns the number of tiles loaded in the tiles cache.
+     * @return the number of misses, always 0 if the model has no cache
+     */
+    public long cacheMisses()
+    {
+        return cache != null ? cache.misses() : 0;
     }
 
     @Override
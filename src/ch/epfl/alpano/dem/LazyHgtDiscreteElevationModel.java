@@ -0,0 +1,212 @@
+package ch.epfl.alpano.dem;
+
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.Preconditions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Represents the elevation model of all the HGT files of a directory.
+ * The files are discovered by their name and only mapped the first time one of their samples is requested. Once the
+ * budget of open files is reached, the least recently used file is closed and dropped, so that the memory used by the
+ * model follows the area being looked at rather than the size of the directory.
+ * The samples of the missing files are 0.
+ */
+public final class LazyHgtDiscreteElevationModel implements DiscreteElevationModel
+{
+    private final int maxOpenTiles;
+    private final Function<File, ? extends DiscreteElevationModel> loader;
+    private final MosaicDiscreteElevationModel mosaic;
+    private final List<LazyTile> openTiles = new ArrayList<>();
+
+    /**
+     * Incremented on each access to a tile, used to date the last access to each tile.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Creates a model from the HGT files of a directory.
+     * @param directory the directory containing the files
+     * @param maxOpenTiles the maximal number of files mapped at the same time
+     * @throws IllegalArgumentException if the directory does not contain any HGT file or if the budget is not strictly positive
+     */
+    public LazyHgtDiscreteElevationModel(File directory, int maxOpenTiles)
+    {
+        this(directory, maxOpenTiles, HgtDiscreteElevationModel::new);
+    }
+
+    /**
+     * Creates a model from the HGT files of a directory, opened by the given function.
+     * @param directory the directory containing the files
+     * @param maxOpenTiles the maximal number of files mapped at the same time
+     * @param loader the function opening a HGT file, for instance {@link PyramidDiscreteElevationModel#ofHgtFile(File)}
+     * @throws IllegalArgumentException if the directory does not contain any HGT file or if the budget is not strictly positive
+     */
+    public LazyHgtDiscreteElevationModel(File directory, int maxOpenTiles, Function<File, ? extends DiscreteElevationModel> loader)
+    {
+        Preconditions.checkArgument(maxOpenTiles > 0, "The number of open tiles must be strictly positive.");
+        Preconditions.checkArgument(directory.isDirectory(), "The specified directory does not exist.");
+
+        this.maxOpenTiles = maxOpenTiles;
+        this.loader = Objects.requireNonNull(loader);
+
+        final List<LazyTile> tiles = new ArrayList<>();
+
+        final File[] files = directory.listFiles();
+        if(files != null)
+            for(File file : files)
+                if(HgtDiscreteElevationModel.isValidFile(file))
+                    tiles.add(new LazyTile(file));
+
+        Preconditions.checkArgument(!tiles.isEmpty(), "The directory does not contain any HGT file.");
+
+        this.mosaic = new MosaicDiscreteElevationModel(tiles);
+    }
+
+    @Override
+    public Interval2D extent()
+    {
+        return mosaic.extent();
+    }
+
+    @Override
+    public double elevationSample(int x, int y)
+    {
+        return mosaic.elevationSample(x, y);
+    }
+
+    @Override
+    public double maxElevationSample(int xMin, int yMin, int xMax, int yMax)
+    {
+        return mosaic.maxElevationSample(xMin, yMin, xMax, yMax);
+    }
+
+    /**
+     * Returns the number of files currently mapped.
+     * @return the number of open tiles
+     */
+    public synchronized int openTiles()
+    {
+        return openTiles.size();
+    }
+
+    /**
+     * Opens a tile, dropping the least recently used one if the budget is exceeded.
+     * @param tile the tile to open
+     * @return the model of the tile
+     */
+    private synchronized DiscreteElevationModel open(LazyTile tile)
+    {
+        if(tile.model != null) // Opened concurrently by another thread
+            return tile.model;
+
+        if(openTiles.size() >= maxOpenTiles)
+        {
+            LazyTile leastRecentlyUsed = openTiles.get(0);
+            for(LazyTile t : openTiles)
+                if(t.lastUse < leastRecentlyUsed.lastUse)
+                    leastRecentlyUsed = t;
+
+            final DiscreteElevationModel dropped = leastRecentlyUsed.model;
+
+            leastRecentlyUsed.model = null;
+            openTiles.remove(leastRecentlyUsed);
+
+            // The threads still reading the dropped model keep reading it, a HGT model only releases its mapping once garbage collected
+            try
+            {
+                dropped.close();
+            }
+            catch(Exception e)
+            {
+                throw new IllegalStateException("The file " + leastRecentlyUsed.file + " cannot be closed.", e);
+            }
+        }
+
+        final DiscreteElevationModel model = loader.apply(tile.file);
+
+        tile.model = model;
+        tile.lastUse = clock.incrementAndGet();
+        openTiles.add(tile);
+
+        return model;
+    }
+
+    @Override
+    public synchronized void close() throws Exception
+    {
+        for(LazyTile tile : openTiles)
+        {
+            tile.model.close();
+            tile.model = null;
+        }
+
+        openTiles.clear();
+    }
+
+    /**
+     * A tile of the mosaic, whose file is only mapped when needed.
+     */
+    private final class LazyTile implements DiscreteElevationModel
+    {
+        private final File file;
+        private final Interval2D extent;
+
+        private volatile DiscreteElevationModel model = null;
+        private volatile long lastUse = 0;
+
+        /**
+         * Creates a new tile.
+         * @param file the HGT file
+         */
+        private LazyTile(File file)
+        {
+            this.file = file;
+            this.extent = HgtDiscreteElevationModel.extentOf(file.getName());
+        }
+
+        @Override
+        public Interval2D extent()
+        {
+            return extent;
+        }
+
+        @Override
+        public double elevationSample(int x, int y)
+        {
+            return model().elevationSample(x, y);
+        }
+
+        @Override
+        public double maxElevationSample(int xMin, int yMin, int xMax, int yMax)
+        {
+            return model().maxElevationSample(xMin, yMin, xMax, yMax);
+        }
+
+        /**
+         * Returns the model of the tile, opening it if needed.
+         * @return the model
+         */
+        private DiscreteElevationModel model()
+        {
+            DiscreteElevationModel m = model;
+
+            if(m == null)
+                m = open(this);
+
+            lastUse = clock.incrementAndGet();
+
+            return m;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ch.epfl.alpano.dem;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.Preconditions;
+
+import java.util.Collection;
+
+/**
+ * Represents a mosaic of one degree elevation models, indexed by their integer degree coordinates.
+ * Unlike a tree of {@link CompositeDiscreteElevationModel}, any sample is found with a single array lookup.
+ * The extent of the mosaic is the bounding rectangle of its tiles, the samples of the missing tiles are 0.
+ */
+public final class MosaicDiscreteElevationModel implements DiscreteElevationModel
+{
+    private final DiscreteElevationModel[] tiles;
+    private final int originX, originY;
+    private final int columns, rows;
+    private final Interval2D extent;
+
+    /**
+     * Creates a mosaic from a collection of tiles.
+     * @param tiles the tiles, each one covering exactly one degree and starting at an integer degree
+     * @throws IllegalArgumentException if the collection is empty, if a tile does not cover exactly one degree or if two tiles overlap
+     */
+    public MosaicDiscreteElevationModel(Collection<? extends DiscreteElevationModel> tiles)
+    {
+        Preconditions.checkArgument(!tiles.isEmpty(), "The mosaic must contain at least one tile.");
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+        for(DiscreteElevationModel tile : tiles)
+        {
+            final Interval2D e = tile.extent();
+
+            Preconditions.checkArgument(e.iX().size() == SAMPLES_PER_DEGREE + 1 && e.iY().size() == SAMPLES_PER_DEGREE + 1, "The tiles must cover exactly one degree.");
+            Preconditions.checkArgument(Math.floorMod(e.iX().includedFrom(), SAMPLES_PER_DEGREE) == 0 && Math.floorMod(e.iY().includedFrom(), SAMPLES_PER_DEGREE) == 0, "The tiles must start at an integer degree.");
+
+            minX = Math.min(minX, e.iX().includedFrom());
+            minY = Math.min(minY, e.iY().includedFrom());
+            maxX = Math.max(maxX, e.iX().includedTo());
+            maxY = Math.max(maxY, e.iY().includedTo());
+        }
+
+        this.originX = minX;
+        this.originY = minY;
+        this.columns = (maxX - minX) / SAMPLES_PER_DEGREE;
+        this.rows = (maxY - minY) / SAMPLES_PER_DEGREE;
+        this.extent = new Interval2D(new Interval1D(minX, maxX), new Interval1D(minY, maxY));
+
+        this.tiles = new DiscreteElevationModel[columns * rows];
+
+        for(DiscreteElevationModel tile : tiles)
+        {
+            final int i = tileIndex((tile.extent().iX().includedFrom() - originX) / SAMPLES_PER_DEGREE, (tile.extent().iY().includedFrom() - originY) / SAMPLES_PER_DEGREE);
+
+            Preconditions.checkArgument(this.tiles[i] == null, "The tiles must not overlap.");
+
+            this.tiles[i] = tile;
+        }
+    }
+
+    /**
+     * Returns the index of a tile in the array.
+     * @param column the column of the tile (longitude degrees from the origin)
+     * @param row the row of the tile (latitude degrees from the origin)
+     * @return the index
+     */
+    private int tileIndex(int column, int row)
+    {
+        return column + row * columns;
+    }
+
+    @Override
+    public Interval2D extent()
+    {
+        return extent;
+    }
+
+    @Override
+    public double elevationSample(int x, int y)
+    {
+        Preconditions.checkArgument(extent.contains(x, y), "The sample is out of the bound.");
+
+        final int dx = x - originX, dy = y - originY;
+
+        final DiscreteElevationModel tile = tiles[tileIndex(Math.min(dx / SAMPLES_PER_DEGREE, columns - 1), Math.min(dy / SAMPLES_PER_DEGREE, rows - 1))];
+
+        if(tile != null)
+            return tile.elevationSample(x, y);
+
+        return voidElevationSample(x, y);
+    }
+
+    /**
+     * Returns the sample at the given coordinates when the tile designated by the array lookup is missing.
+     * The samples on the edges of a tile are shared with its neighbours, which are looked up before assuming a void.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the elevation
+     */
+    private double voidElevationSample(int x, int y)
+    {
+        final int dx = x - originX, dy = y - originY;
+
+        for(int column = Math.max((dx - 1) / SAMPLES_PER_DEGREE, 0); column <= Math.min(dx / SAMPLES_PER_DEGREE, columns - 1); column++)
+        {
+            for(int row = Math.max((dy - 1) / SAMPLES_PER_DEGREE, 0); row <= Math.min(dy / SAMPLES_PER_DEGREE, rows - 1); row++)
+            {
+                final DiscreteElevationModel tile = tiles[tileIndex(column, row)];
+
+                if(tile != null && tile.extent().contains(x, y))
+                    return tile.elevationSample(x, y);
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns an upper bound of the samples of a rectangle, as the maximum of the bounds of the tiles it intersects.
+     * The missing tiles count as a void, at elevation 0.
+     * @param xMin the x coordinate of the left edge (included)
+     * @param yMin the y coordinate of the bottom edge (included)
+     * @param xMax the x coordinate of the right edge (included)
+     * @param yMax the y coordinate of the top edge (included)
+     * @return the upper bound, or negative infinity if the rectangle does not intersect the extent
+     */
+    @Override
+    public double maxElevationSample(int xMin, int yMin, int xMax, int yMax)
+    {
+        xMin = Math.max(xMin, extent.iX().includedFrom());
+        yMin = Math.max(yMin, extent.iY().includedFrom());
+        xMax = Math.min(xMax, extent.iX().includedTo());
+        yMax = Math.min(yMax, extent.iY().includedTo());
+
+        if(xMin > xMax || yMin > yMax)
+            return Double.NEGATIVE_INFINITY;
+
+        double max = Double.NEGATIVE_INFINITY;
+
+        // The samples on the edges are shared, so the tiles before an edge are included too
+        for(int column = Math.max((xMin - originX - 1) / SAMPLES_PER_DEGREE, 0); column <= Math.min((xMax - originX) / SAMPLES_PER_DEGREE, columns - 1); column++)
+        {
+            for(int row = Math.max((yMin - originY - 1) / SAMPLES_PER_DEGREE, 0); row <= Math.min((yMax - originY) / SAMPLES_PER_DEGREE, rows - 1); row++)
+            {
+                final DiscreteElevationModel tile = tiles[tileIndex(column, row)];
+
+                max = Math.max(max, tile != null ? tile.maxElevationSample(xMin, yMin, xMax, yMax) : 0);
+            }
+        }
+
+        return max;
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        for(DiscreteElevationModel tile : tiles)
+            if(tile != null)
+                tile.close();
+    }
+}
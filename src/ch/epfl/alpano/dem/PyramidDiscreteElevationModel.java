@@ -0,0 +1,341 @@
+package ch.epfl.alpano.dem;
+
+import ch.epfl.alpano.Interval2D;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Decorates an elevation model with a pyramid of the maximal elevation of its samples, answering
+ * {@link #maxElevationSample(int, int, int, int)} in constant time.
+ * The first level of the pyramid holds the maximum of each block of {@value #BLOCK_SIZE}×{@value #BLOCK_SIZE} samples
+ * (edges included, so that the blocks overlap by one sample), each following level the maximum of 2×2 blocks of the
+ * previous one.
+ * The pyramid can be persisted in a file, so that it is only computed the first time a model is opened.
+ */
+public final class PyramidDiscreteElevationModel implements DiscreteElevationModel
+{
+    /**
+     * Number of samples per side of the blocks of the first level.
+     */
+    public static final int BLOCK_SIZE = 16;
+
+    /**
+     * Extension of the pyramid files stored next to the HGT files.
+     */
+    public static final String FILE_EXTENSION = ".max";
+
+    private static final int MAGIC = 0x414C504D; // "ALPM"
+    private static final int VERSION = 1;
+
+    private final DiscreteElevationModel dem;
+    private final Interval2D extent;
+    private final int originX, originY;
+    private final float[][] levels;
+    private final int[] widths, heights;
+
+    /**
+     * Creates the pyramid of a model, in memory.
+     * @param dem the model
+     */
+    public PyramidDiscreteElevationModel(DiscreteElevationModel dem)
+    {
+        this.dem = Objects.requireNonNull(dem);
+        this.extent = dem.extent();
+        this.originX = extent.iX().includedFrom();
+        this.originY = extent.iY().includedFrom();
+
+        int levelsCount = 1;
+        for(int w = blocks(extent.iX().size()), h = blocks(extent.iY().size()); w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2)
+            levelsCount++;
+
+        this.levels = new float[levelsCount][];
+        this.widths = new int[levelsCount];
+        this.heights = new int[levelsCount];
+
+        computeFirstLevel();
+
+        for(int level = 1; level < levelsCount; level++)
+            computeLevel(level);
+    }
+
+    /**
+     * Creates the pyramid of a model, read from a file if it exists and matches the model, else computed and written to the file.
+     * A pyramid that cannot be written is only kept in memory.
+     * @param dem the model
+     * @param file the file of the pyramid
+     */
+    public PyramidDiscreteElevationModel(DiscreteElevationModel dem, File file)
+    {
+        this.dem = Objects.requireNonNull(dem);
+        this.extent = dem.extent();
+        this.originX = extent.iX().includedFrom();
+        this.originY = extent.iY().includedFrom();
+
+        final PyramidDiscreteElevationModel pyramid = read(file);
+
+        final PyramidDiscreteElevationModel source = pyramid != null ? pyramid : new PyramidDiscreteElevationModel(dem);
+
+        this.levels = source.levels;
+        this.widths = source.widths;
+        this.heights = source.heights;
+
+        if(pyramid == null)
+            write(file);
+    }
+
+    /**
+     * Creates a model with the given pyramid.
+     * @param dem the model
+     * @param levels the levels of the pyramid
+     * @param widths the number of blocks per row of each level
+     * @param heights the number of blocks per column of each level
+     */
+    private PyramidDiscreteElevationModel(DiscreteElevationModel dem, float[][] levels, int[] widths, int[] heights)
+    {
+        this.dem = dem;
+        this.extent = dem.extent();
+        this.originX = extent.iX().includedFrom();
+        this.originY = extent.iY().includedFrom();
+        this.levels = levels;
+        this.widths = widths;
+        this.heights = heights;
+    }
+
+    /**
+     * Opens a HGT file with its pyramid, stored next to it with the extension {@value #FILE_EXTENSION}.
+     * The pyramid is computed again if the HGT file was modified after it.
+     * @param file the HGT file
+     * @return the model
+     * @throws IllegalArgumentException if the HGT file is not valid
+     */
+    public static PyramidDiscreteElevationModel ofHgtFile(File file)
+    {
+        final File pyramid = new File(file.getPath() + FILE_EXTENSION);
+
+        if(pyramid.lastModified() < file.lastModified())
+            pyramid.delete();
+
+        return new PyramidDiscreteElevationModel(new HgtDiscreteElevationModel(file), pyramid);
+    }
+
+    /**
+     * Returns the number of blocks needed to cover a range of samples.
+     * @param samples the number of samples
+     * @return the number of blocks
+     */
+    private static int blocks(int samples)
+    {
+        return Math.max((samples - 1 + BLOCK_SIZE - 1) / BLOCK_SIZE, 1);
+    }
+
+    /**
+     * Computes the maximum of each block of samples.
+     */
+    private void computeFirstLevel()
+    {
+        final int width = blocks(extent.iX().size()), height = blocks(extent.iY().size());
+        final float[] level = new float[width * height];
+
+        Arrays.fill(level, Float.NEGATIVE_INFINITY);
+
+        for(int y = extent.iY().includedFrom(); y <= extent.iY().includedTo(); y++)
+        {
+            final int dy = y - originY;
+
+            for(int x = extent.iX().includedFrom(); x <= extent.iX().includedTo(); x++)
+            {
+                final int dx = x - originX;
+                final float sample = roundUp(dem.elevationSample(x, y));
+
+                // A sample on the edge of a block also belongs to the previous one
+                for(int by = Math.max((dy - 1) / BLOCK_SIZE, 0); by <= Math.min(dy / BLOCK_SIZE, height - 1); by++)
+                    for(int bx = Math.max((dx - 1) / BLOCK_SIZE, 0); bx <= Math.min(dx / BLOCK_SIZE, width - 1); bx++)
+                        level[bx + by * width] = Math.max(level[bx + by * width], sample);
+            }
+        }
+
+        levels[0] = level;
+        widths[0] = width;
+        heights[0] = height;
+    }
+
+    /**
+     * Computes a level from the previous one.
+     * @param l the index of the level
+     */
+    private void computeLevel(int l)
+    {
+        final int previousWidth = widths[l - 1], previousHeight = heights[l - 1];
+        final int width = (previousWidth + 1) / 2, height = (previousHeight + 1) / 2;
+        final float[] previous = levels[l - 1], level = new float[width * height];
+
+        for(int by = 0; by < height; by++)
+        {
+            for(int bx = 0; bx < width; bx++)
+            {
+                float max = Float.NEGATIVE_INFINITY;
+
+                for(int y = 2 * by; y <= Math.min(2 * by + 1, previousHeight - 1); y++)
+                    for(int x = 2 * bx; x <= Math.min(2 * bx + 1, previousWidth - 1); x++)
+                        max = Math.max(max, previous[x + y * previousWidth]);
+
+                level[bx + by * width] = max;
+            }
+        }
+
+        levels[l] = level;
+        widths[l] = width;
+        heights[l] = height;
+    }
+
+    /**
+     * Converts an elevation to the smallest float greater or equal to it, so that the pyramid remains an upper bound.
+     * @param value the elevation
+     * @return the float
+     */
+    private static float roundUp(double value)
+    {
+        final float f = (float) value;
+
+        return f < value ? Math.nextUp(f) : f;
+    }
+
+    @Override
+    public Interval2D extent()
+    {
+        return extent;
+    }
+
+    @Override
+    public double elevationSample(int x, int y)
+    {
+        return dem.elevationSample(x, y);
+    }
+
+    /**
+     * Returns an upper bound of the samples of a rectangle, read from the smallest level whose blocks cover it with at
+     * most 2×2 blocks.
+     * The bound is the maximum of an area that is at most four times as large as the rectangle, plus one block.
+     * @param xMin the x coordinate of the left edge (included)
+     * @param yMin the y coordinate of the bottom edge (included)
+     * @param xMax the x coordinate of the right edge (included)
+     * @param yMax the y coordinate of the top edge (included)
+     * @return the upper bound, or negative infinity if the rectangle does not intersect the extent
+     */
+    @Override
+    public double maxElevationSample(int xMin, int yMin, int xMax, int yMax)
+    {
+        xMin = Math.max(xMin, extent.iX().includedFrom());
+        yMin = Math.max(yMin, extent.iY().includedFrom());
+        xMax = Math.min(xMax, extent.iX().includedTo());
+        yMax = Math.min(yMax, extent.iY().includedTo());
+
+        if(xMin > xMax || yMin > yMax)
+            return Double.NEGATIVE_INFINITY;
+
+        int bxMin = Math.min((xMin - originX) / BLOCK_SIZE, widths[0] - 1), bxMax = Math.min((xMax - originX) / BLOCK_SIZE, widths[0] - 1);
+        int byMin = Math.min((yMin - originY) / BLOCK_SIZE, heights[0] - 1), byMax = Math.min((yMax - originY) / BLOCK_SIZE, heights[0] - 1);
+
+        int level = 0;
+
+        while(level < levels.length - 1 && (bxMax - bxMin > 1 || byMax - byMin > 1))
+        {
+            bxMin >>= 1;
+            bxMax >>= 1;
+            byMin >>= 1;
+            byMax >>= 1;
+            level++;
+        }
+
+        final float[] blocks = levels[level];
+        final int width = widths[level];
+
+        float max = Float.NEGATIVE_INFINITY;
+
+        for(int by = byMin; by <= byMax; by++)
+            for(int bx = bxMin; bx <= bxMax; bx++)
+                max = Math.max(max, blocks[bx + by * width]);
+
+        return max;
+    }
+
+    /**
+     * Reads the pyramid of the model from a file.
+     * @param file the file
+     * @return the model with the pyramid read, or <code>null</code> if the file does not exist or does not match the model
+     */
+    private PyramidDiscreteElevationModel read(File file)
+    {
+        if(!file.isFile())
+            return null;
+
+        try(DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if(stream.readInt() != MAGIC || stream.readInt() != VERSION || stream.readInt() != BLOCK_SIZE)
+                return null;
+
+            if(stream.readInt() != extent.iX().includedFrom() || stream.readInt() != extent.iX().includedTo() || stream.readInt() != extent.iY().includedFrom() || stream.readInt() != extent.iY().includedTo())
+                return null;
+
+            final int count = stream.readInt();
+            final float[][] levels = new float[count][];
+            final int[] widths = new int[count], heights = new int[count];
+
+            for(int l = 0; l < count; l++)
+            {
+                widths[l] = stream.readInt();
+                heights[l] = stream.readInt();
+                levels[l] = new float[widths[l] * heights[l]];
+
+                for(int i = 0; i < levels[l].length; i++)
+                    levels[l][i] = stream.readFloat();
+            }
+
+            return new PyramidDiscreteElevationModel(dem, levels, widths, heights);
+        }
+        catch(IOException | RuntimeException e) // Truncated or corrupted file
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the pyramid to a file, ignoring the errors since the pyramid can always be computed again.
+     * @param file the file
+     */
+    private void write(File file)
+    {
+        try(DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+        {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+            stream.writeInt(BLOCK_SIZE);
+            stream.writeInt(extent.iX().includedFrom());
+            stream.writeInt(extent.iX().includedTo());
+            stream.writeInt(extent.iY().includedFrom());
+            stream.writeInt(extent.iY().includedTo());
+            stream.writeInt(levels.length);
+
+            for(int l = 0; l < levels.length; l++)
+            {
+                stream.writeInt(widths[l]);
+                stream.writeInt(heights[l]);
+
+                for(float max : levels[l])
+                    stream.writeFloat(max);
+            }
+        }
+        catch(IOException e)
+        {
+            file.delete(); // Read-only directory or full disk, the pyramid is only kept in memory
+        }
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        dem.close();
+    }
+}
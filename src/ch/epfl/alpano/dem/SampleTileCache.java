@@ -0,0 +1,150 @@
+package ch.epfl.alpano.dem;
+
+import ch.epfl.alpano.Preconditions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of square tiles of samples, stored row by row in primitive arrays.
+ * When the cache is full, the least recently used tile is evicted.
+ * Each thread additionally remembers the last tile it used, so that consecutive samples of the same tile are read without locking.
+ * The hits and misses count the lookups of the shared cache, made only when a thread changes of tile, so that the
+ * samples read from the last tile do not pay for the statistics.
+ */
+final class SampleTileCache
+{
+    /**
+     * Base 2 logarithm of the tiles size.
+     */
+    static final int TILE_BITS = 8;
+
+    /**
+     * Number of samples per tile side.
+     */
+    static final int TILE_SIZE = 1 << TILE_BITS;
+
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    private final TileLoader loader;
+    private final Map<Integer, short[]> tiles;
+    private final ThreadLocal<Tile> lastTile = ThreadLocal.withInitial(Tile::new);
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     * @param loader the tiles loader
+     * @param capacity the maximal number of tiles held by the cache
+     * @throws IllegalArgumentException if the capacity is not strictly positive
+     */
+    SampleTileCache(TileLoader loader, int capacity)
+    {
+        Preconditions.checkArgument(capacity > 0, "The capacity must be strictly positive.");
+
+        this.loader = Objects.requireNonNull(loader);
+        this.tiles = new LinkedHashMap<Integer, short[]>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, short[]> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the sample at the given position.
+     * @param column the column of the sample (positive)
+     * @param row the row of the sample (positive)
+     * @return the sample
+     */
+    short sample(int column, int row)
+    {
+        final int key = (row >> TILE_BITS) << 16 | (column >> TILE_BITS);
+        final Tile last = lastTile.get();
+
+        if(last.key != key)
+        {
+            last.samples = tile(key);
+            last.key = key;
+        }
+
+        return last.samples[(row & TILE_MASK) << TILE_BITS | (column & TILE_MASK)];
+    }
+
+    /**
+     * Returns the tile associated with a key, loading it if needed.
+     * @param key the key of the tile
+     * @return the samples of the tile
+     */
+    private short[] tile(int key)
+    {
+        synchronized(tiles)
+        {
+            final short[] samples = tiles.get(key);
+
+            if(samples != null)
+            {
+                hits.increment();
+                return samples;
+            }
+        }
+
+        misses.increment();
+
+        // The tile is loaded outside of the lock, two threads might load it concurrently but will obtain the same samples
+        final short[] samples = new short[TILE_SIZE * TILE_SIZE];
+        loader.load((key & 0xFFFF) << TILE_BITS, (key >>> 16) << TILE_BITS, samples);
+
+        synchronized(tiles)
+        {
+            tiles.put(key, samples);
+        }
+
+        return samples;
+    }
+
+    /**
+     * Returns the number of tiles found in the cache when a thread changed of tile.
+     * @return the number of hits
+     */
+    long hits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of tiles that had to be loaded when a thread changed of tile.
+     * @return the number of misses
+     */
+    long misses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Loads the samples of a tile.
+     */
+    @FunctionalInterface
+    interface TileLoader
+    {
+        /**
+         * Fills a tile with the samples it contains.
+         * @param column the column of the top left sample of the tile
+         * @param row the row of the top left sample of the tile
+         * @param tile the array to fill, row by row
+         */
+        void load(int column, int row, short[] tile);
+    }
+
+    /**
+     * The last tile used by a thread.
+     */
+    private static final class Tile
+    {
+        private int key = -1;
+        private short[] samples;
+    }
+}
@@ -2,26 +2,27 @@ package ch.epfl.alpano.gui;
 
 import ch.epfl.alpano.Azimuth;
 import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaCache;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
-import ch.epfl.alpano.dem.DiscreteElevationModel;
-import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import ch.epfl.alpano.dem.LazyHgtDiscreteElevationModel;
+import ch.epfl.alpano.dem.PyramidDiscreteElevationModel;
+import ch.epfl.alpano.render.PanoramaRasterizer;
+import ch.epfl.alpano.render.SummitLabel;
 import ch.epfl.alpano.summit.GazetteerParser;
 import ch.epfl.alpano.summit.Summit;
 import javafx.application.Application;
 import javafx.beans.binding.Bindings;
+import javafx.beans.value.ObservableBooleanValue;
 import javafx.beans.property.ObjectProperty;
 import javafx.collections.FXCollections;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
-import javafx.scene.SnapshotParameters;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.WritableImage;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
@@ -32,13 +33,14 @@ import javafx.stage.Stage;
 import javafx.util.StringConverter;
 
 import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -53,8 +55,11 @@ public final class Alpano extends Application
     private static final String TEXT_PARAMETERS_MODIFIED = "Les paramètres du panorama ont changé.\nCliquez ici pour mettre le dessin à jour.";
     private static final String TEXT_PANORAMA_COMPUTING = "Calcul du panorama en cours...\nVeuillez patienter.";
 
-    private static final int MIN_LATITUDE = 45, MAX_LATITUDE = 47;
-    private static final int MIN_LONGITUDE = 6, MAX_LONGITUDE = 10;
+    private static final String DIRECTORY_HGT = ".";
+    private static final int MAX_OPEN_HGT_FILES = 32;
+
+    private static final String DIRECTORY_CACHE = "cache";
+    private static final long MAX_CACHE_BYTES = 1L << 30;
 
     private static final PanoramaUserParameters INITIAL_PANORAMA = PredefinedPanoramas.ALPES_JURA;
 
@@ -76,7 +81,8 @@ public final class Alpano extends Application
         // GUI
 
         final PanoramaParametersBean parametersBean = new PanoramaParametersBean(INITIAL_PANORAMA);
-        final PanoramaComputerBean computerBean = new PanoramaComputerBean(cdem, summits);
+        final PanoramaCache cache = new PanoramaCache(new File(DIRECTORY_CACHE), PanoramaCache.hgtIdentity(new File(DIRECTORY_HGT)), MAX_CACHE_BYTES);
+        final PanoramaComputerBean computerBean = new PanoramaComputerBean(cdem, summits, cache);
 
 
         final BorderPane root = new BorderPane();
@@ -168,13 +174,24 @@ public final class Alpano extends Application
 
         addParameterToGrid(paramsGrid, "Style :", choicePainter, 3, 1);
 
-        final Button saveImage = createSaveButton(stage, panoGroup);
+        final Button saveImage = createSaveButton(stage, computerBean, labelsPane.visibleProperty());
         addParameterToGrid(paramsGrid, "Sauvegarder :", saveImage, 3, 2);
 
 
         progressBar.setMaxWidth(Double.MAX_VALUE);
         progressBar.progressProperty().bind(computerBean.progressProperty());
 
+        computerBean.failureProperty().addListener((o, oldValue, newValue) ->
+        {
+            if(newValue == null)
+                return;
+
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Erreur");
+            alert.setContentText("Impossible de calculer le panorama : " + newValue.getMessage());
+            alert.show();
+        });
+
 
         final Scene scene = new Scene(root);
 
@@ -204,7 +221,14 @@ public final class Alpano extends Application
         return listView;
     }
 
-    private Button createSaveButton(Stage stage, Node frame)
+    /**
+     * Creates the button saving the displayed panorama, rendered again without JavaFX at its display size.
+     * @param stage the stage of the file chooser
+     * @param computerBean the computer bean
+     * @param showLabels whether the labels are displayed, and therefore saved
+     * @return a new instance of this component
+     */
+    private Button createSaveButton(Stage stage, PanoramaComputerBean computerBean, ObservableBooleanValue showLabels)
     {
         final Button saveImage = new Button("...");
         saveImage.setOnMouseClicked(event ->
@@ -214,12 +238,17 @@ public final class Alpano extends Application
             fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Image PNG (*.png)", "*.png"));
             final File file = fileChooser.showSaveDialog(stage);
 
-            if(file != null)
+            // The parameters may already describe the next panorama, still being computed
+            final Panorama panorama = computerBean.getPanorama();
+            final PanoramaUserParameters parameters = computerBean.getPanoramaParameters();
+
+            if(file != null && panorama != null)
             {
                 try
                 {
-                    final WritableImage image = frame.snapshot(new SnapshotParameters(), null);
-                    ImageIO.write(SwingFXUtils.fromFXImage(image, null), "png", file);
+                    final BufferedImage image = PanoramaRasterizer.renderImage(panorama, PanoramaRasterizer.painter(panorama, parameters.painter()), parameters.supersamplingExponent());
+                    final List<SummitLabel> labels = showLabels.get() ? computerBean.getLabelGeometry() : Collections.emptyList();
+                    ImageIO.write(PanoramaRasterizer.compose(image, labels), "png", file);
                 }
                 catch(IOException e)
                 {
@@ -323,14 +352,14 @@ public final class Alpano extends Application
 
         panoView.setOnMouseMoved(e ->
         {
-            final int supersampling = computerBean.getParameters().supersamplingExponent();
+            final int supersampling = computerBean.getPanoramaParameters().supersamplingExponent();
 
             final int x = ((int) Math.round(e.getX()) << supersampling), y = ((int) Math.round(e.getY()) << supersampling);
             final Panorama panorama = computerBean.getPanorama();
             final double longitude = Math.toDegrees(panorama.longitudeAt(x, y)), latitude = Math.toDegrees(panorama.latitudeAt(x, y));
             final double distance = panorama.distanceAt(x, y) / 1000.0;
             final int elevation = Math.round(panorama.elevationAt(x, y));
-            final double azimuth = Math.toDegrees(Azimuth.toMath(computerBean.getParameters().panoramaParameters().azimuthForX(x))), verticalAngle = Math.toDegrees(computerBean.getParameters().panoramaParameters().altitudeForY(y));
+            final double azimuth = Math.toDegrees(Azimuth.toMath(panorama.parameters().azimuthForX(x))), verticalAngle = Math.toDegrees(panorama.parameters().altitudeForY(y));
 
             final String octantAzimuth = Azimuth.toOctantString(Math.toRadians(azimuth), "N", "E", "S", "O");
 
@@ -345,7 +374,7 @@ public final class Alpano extends Application
 
         panoView.setOnMouseClicked(e ->
         {
-            final int supersampling = computerBean.getParameters().supersamplingExponent();
+            final int supersampling = computerBean.getPanoramaParameters().supersamplingExponent();
 
             final int x = ((int) Math.round(e.getX()) << supersampling), y = ((int) Math.round(e.getY()) << supersampling);
             final double longitude = Math.toDegrees(computerBean.getPanorama().longitudeAt(x, y)), latitude = Math.toDegrees(computerBean.getPanorama().latitudeAt(x, y));
@@ -407,38 +436,11 @@ public final class Alpano extends Application
 
     /**
      * Loads the elevations models files into a continuous elevation model object.
+     * The files are only mapped when the panoramas need them, along with the pyramids of their maximal elevations.
      * @return a continuous elevation model
      */
     private ContinuousElevationModel loadCDEM()
     {
-        DiscreteElevationModel composition1 = null;
-
-        for(int i = MIN_LATITUDE; i < MAX_LATITUDE; i++)
-        {
-            List<DiscreteElevationModel> list = new ArrayList<>();
-            DiscreteElevationModel last = null;
-
-            for(int j = MIN_LONGITUDE; j < MAX_LONGITUDE; j++)
-            {
-                final DiscreteElevationModel dem = new HgtDiscreteElevationModel(new File("N" + i + "E00" + j + ".hgt"));
-
-                if(last == null)
-                    last = dem;
-                else
-                {
-                    list.add(last.union(dem));
-                    last = null;
-                }
-            }
-
-            DiscreteElevationModel composition2 = list.get(0).union(list.get(1));
-
-            if(composition1 == null)
-                composition1 = composition2;
-            else
-                composition1 = composition1.union(composition2);
-        }
-
-        return new ContinuousElevationModel(composition1);
+        return new ContinuousElevationModel(new LazyHgtDiscreteElevationModel(new File(DIRECTORY_HGT), MAX_OPEN_HGT_FILES, PyramidDiscreteElevationModel::ofHgtFile));
     }
 }
@@ -1,12 +1,15 @@
 package ch.epfl.alpano.gui;
 
+import ch.epfl.alpano.render.Argb;
+import ch.epfl.alpano.render.ArgbPainter;
+import ch.epfl.alpano.render.ChannelPainter;
 import javafx.scene.paint.Color;
 
 /**
- * Represents an image painter that supports HSB & gray modes.
+ * Represents an image painter that supports HSB & gray modes, giving JavaFX colors.
  */
 @FunctionalInterface
-public interface ImagePainter
+public interface ImagePainter extends ArgbPainter
 {
     /**
      * Returns the {@link Color} at the given point.
@@ -16,6 +19,22 @@ public interface ImagePainter
      */
     Color colorAt(int x, int y);
 
+    /**
+     * Returns the color at the given point, packed as an ARGB integer.
+     * By default the color is converted from {@link #colorAt(int, int)}, the painters created by this interface
+     * compute it without allocating any {@link Color}.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the packed color at that point
+     */
+    @Override
+    default int argbAt(int x, int y)
+    {
+        final Color color = colorAt(x, y);
+
+        return Argb.of(color.getRed(), color.getGreen(), color.getBlue(), color.getOpacity());
+    }
+
     /**
      * Creates an image painter from HSB channels.
      * @param hue the hue channel
@@ -26,7 +45,22 @@ public interface ImagePainter
      */
     static ImagePainter hsb(ChannelPainter hue, ChannelPainter saturation, ChannelPainter lightness, ChannelPainter opacity)
     {
-        return (x, y) -> Color.hsb(hue.valueAt(x, y), saturation.valueAt(x, y), lightness.valueAt(x, y), opacity.valueAt(x, y));
+        final ArgbPainter argb = ArgbPainter.hsb(hue, saturation, lightness, opacity);
+
+        return new ImagePainter()
+        {
+            @Override
+            public Color colorAt(int x, int y)
+            {
+                return Color.hsb(hue.valueAt(x, y), saturation.valueAt(x, y), lightness.valueAt(x, y), opacity.valueAt(x, y));
+            }
+
+            @Override
+            public int argbAt(int x, int y)
+            {
+                return argb.argbAt(x, y);
+            }
+        };
     }
 
     /**
@@ -37,6 +71,21 @@ public interface ImagePainter
      */
     static ImagePainter gray(ChannelPainter gray, ChannelPainter opacity)
     {
-        return (x, y) -> Color.gray(gray.valueAt(x, y), opacity.valueAt(x, y));
+        final ArgbPainter argb = ArgbPainter.gray(gray, opacity);
+
+        return new ImagePainter()
+        {
+            @Override
+            public Color colorAt(int x, int y)
+            {
+                return Color.gray(gray.valueAt(x, y), opacity.valueAt(x, y));
+            }
+
+            @Override
+            public int argbAt(int x, int y)
+            {
+                return argb.argbAt(x, y);
+            }
+        };
     }
 }
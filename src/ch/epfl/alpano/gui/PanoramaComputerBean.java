@@ -1,8 +1,13 @@
 package ch.epfl.alpano.gui;
 
 import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaCache;
 import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.render.PanoramaRasterizer;
+import ch.epfl.alpano.render.SummitLabel;
+import ch.epfl.alpano.render.SummitLabeler;
 import ch.epfl.alpano.summit.Summit;
 import javafx.application.Platform;
 import javafx.beans.property.*;
@@ -18,25 +23,78 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.image.Image;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A bean for the panorama computer.
  */
 public class PanoramaComputerBean
 {
+    /**
+     * The columns step of the first preview, refined by halves until the full panorama is computed.
+     */
+    private static final int PREVIEW_STEP = 8;
+
+    /**
+     * The maximal size of the samples of the recent panoramas kept in memory, and the number of recent labels and minimaps.
+     */
+    private static final long RECENT_PANORAMAS_BYTES = 256L << 20;
+    private static final int RECENT_DECORATIONS = 8;
+
     private final PanoramaComputer computer;
-    private final Labelizer labelizer;
+    private final PanoramaCache cache;
+    private final SummitLabeler labeler;
+    private final ContinuousElevationModel cDEM;
+    private final ExecutorService renderingExecutor = Executors.newSingleThreadExecutor(runnable ->
+    {
+        final Thread thread = new Thread(runnable, "panorama-rendering");
+        thread.setDaemon(true);
+        return thread;
+    });
     private final ReadOnlyObjectWrapper<Panorama> panorama = new ReadOnlyObjectWrapper<>();
     private final ObjectProperty<PanoramaUserParameters> parameters = new SimpleObjectProperty<>();
+    private final ReadOnlyObjectWrapper<PanoramaUserParameters> panoramaParameters = new ReadOnlyObjectWrapper<>();
     private final ReadOnlyObjectWrapper<Image> image = new ReadOnlyObjectWrapper<>();
-    private final ReadOnlyObjectWrapper<ObservableList<Node>> labels;
+    private final ObservableList<Node> labelsList = FXCollections.observableArrayList();
+    private final ReadOnlyObjectWrapper<ObservableList<Node>> labels = new ReadOnlyObjectWrapper<>(FXCollections.unmodifiableObservableList(labelsList));
+    private List<SummitLabel> labelGeometry = Collections.emptyList();
     private final ReadOnlyObjectWrapper<Canvas> minimap = new ReadOnlyObjectWrapper<>();
     private final ObjectProperty<Double> progress = new SimpleObjectProperty<>(0.0);
     private final BooleanProperty computing = new SimpleBooleanProperty(false);
+    private final ReadOnlyObjectWrapper<Throwable> failure = new ReadOnlyObjectWrapper<>();
+
+    /**
+     * The computation of the latest parameters, only accessed from the JavaFX application thread.
+     */
+    private CompletableFuture<Panorama> computation;
+    private CompletableFuture<Rendering> rendering;
+
+    /**
+     * The recent results, from the least to the most recently used, only accessed from the JavaFX application thread.
+     * The panoramas are indexed by their parameters and the labels and minimaps by the display parameters, which do
+     * not depend on the painter nor on the supersampling.
+     */
+    private final LinkedHashMap<PanoramaParameters, Panorama> recentPanoramas = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<PanoramaParameters, Decorations> recentDecorations = new LinkedHashMap<PanoramaParameters, Decorations>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PanoramaParameters, Decorations> eldest)
+        {
+            return size() > RECENT_DECORATIONS;
+        }
+    };
 
     /**
      * Creates a new bean from a continuous elevation model and a list of summits.
@@ -45,61 +103,252 @@ public class PanoramaComputerBean
      */
     public PanoramaComputerBean(ContinuousElevationModel cDEM, List<Summit> summits)
     {
+        this(cDEM, summits, null);
+    }
+
+    /**
+     * Creates a new bean from a continuous elevation model and a list of summits, reading the panoramas from a cache
+     * when possible and storing the computed ones in it.
+     * @param cDEM the continuous elevation model
+     * @param summits the list of summits
+     * @param cache the cache of the panoramas computed from this elevation model, or <code>null</code> to always compute them
+     */
+    public PanoramaComputerBean(ContinuousElevationModel cDEM, List<Summit> summits, PanoramaCache cache)
+    {
+        this.cDEM = Objects.requireNonNull(cDEM);
+        this.cache = cache;
         this.computer = new PanoramaComputer(cDEM);
-        this.labelizer = new Labelizer(cDEM, summits);
+        this.labeler = new SummitLabeler(cDEM, summits, computer.pool());
 
-        final ObservableList<Node> list = FXCollections.observableArrayList();
-        this.labels = new ReadOnlyObjectWrapper<>(FXCollections.unmodifiableObservableList(list));
+        this.parameters.addListener((observable, oldValue, newValue) -> compute(newValue));
+    }
 
-        this.parameters.addListener((observable, oldValue, newValue) ->
+    /**
+     * Starts the computation of the panorama, cancelling the one that may still be running.
+     * @param newParameters the new parameters
+     */
+    private void compute(PanoramaUserParameters newParameters)
+    {
+        if(computation != null)
         {
-            computing.set(true);
+            computation.cancel(false);
+            rendering.cancel(false);
+        }
+
+        computing.set(true);
+        failure.set(null);
+
+        progress.bind(computer.progressProperty());
+
+        // The previews have to check whether the computation was superseded, hence the separate future
+        final CompletableFuture<Panorama> current = new CompletableFuture<>();
+
+        final Set<Panorama.Channel> channels = channels(newParameters.painter());
+
+        // A pan is aligned on the columns of the displayed panorama, unless the panorama is known, so that only the new
+        // columns are computed; the view is then off by less than half a column
+        final PanoramaParameters requested = newParameters.panoramaParameters();
+        final PanoramaParameters parameters = panorama.get() == null || recentPanoramas.containsKey(requested) ? requested : PanoramaComputer.alignedParameters(requested, panorama.get().parameters());
+        final PanoramaParameters display = withCenterAzimuth(newParameters.panoramaDisplayParameters(), parameters.centerAzimuth());
 
-            final ExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        // A change of painter only needs to paint the same panorama again
+        final Panorama previous = panorama.get();
+        final Panorama recent = recentPanoramas.get(parameters);
+        final boolean known = recent != null && recent.channels().containsAll(channels);
+        final Decorations decorations = recentDecorations.get(display);
 
-            executor.execute(() ->
+        // The disk cache is read by the rendering thread, which also writes it, and the computation starts on a miss
+        final AtomicBoolean computed = new AtomicBoolean();
+        final CompletableFuture<Panorama> task;
+
+        if(known)
+            task = CompletableFuture.completedFuture(recent);
+        else if(cache == null)
+            task = computePanorama(parameters, channels, previous, newParameters, current);
+        else
+            task = CompletableFuture.supplyAsync(() -> current.isDone() ? null : cache.get(parameters, channels), renderingExecutor).thenCompose(cached ->
             {
-                progress.bind(computer.progressProperty());
+                if(cached != null || current.isDone()) // Found, or superseded while reading the disk
+                    return CompletableFuture.completedFuture(cached);
 
-                final Panorama p = computer.computePanorama(newValue.panoramaParameters());
+                computed.set(true);
+                return computePanorama(parameters, channels, previous, newParameters, current);
+            });
 
-                progress.unbind();
-                Platform.runLater(() -> progress.set(ProgressBar.INDETERMINATE_PROGRESS));
+        task.whenComplete((p, throwable) ->
+        {
+            if(throwable == null)
+                current.complete(p);
+            else
+                current.completeExceptionally(throwable);
+        });
+        current.whenComplete((p, throwable) -> task.cancel(false));
 
-                final ImagePainter painter;
-                switch(newValue.painter())
+        computation = current;
+        rendering = current.thenApplyAsync(p ->
+        {
+            Platform.runLater(() ->
+            {
+                if(current == computation)
                 {
-                    case 0:
-                        painter = PanoramaRenderer.coloredImagePainter(p);
-                        break;
-                    case 1:
-                        painter = PanoramaRenderer.blackWhiteBorderedImagePainter(p);
-                        break;
-                    default:
-                        painter = PanoramaRenderer.borderedImagePainter(p);
+                    progress.unbind();
+                    progress.set(ProgressBar.INDETERMINATE_PROGRESS);
                 }
+            });
+
+            return render(p, newParameters, display, decorations);
+        }, renderingExecutor);
 
-                final Image i = PanoramaRenderer.renderPanorama(p, painter);
+        if(cache != null && !known) // Stored once displayed, by the same thread
+            rendering.thenAcceptAsync(r ->
+            {
+                if(computed.get())
+                    cache.put(r.panorama);
+            }, renderingExecutor);
 
-                final List<Node> l = labelizer.labels(newValue.panoramaDisplayParameters());
+        rendering.whenComplete((r, throwable) -> Platform.runLater(() ->
+        {
+            if(current != computation) // Superseded by a more recent computation
+                return;
 
-                final Canvas canvas = MiniMapRenderer.render(cDEM, newValue.panoramaParameters());
+            progress.unbind();
 
-                Platform.runLater(() ->
-                {
-                    progress.set(1.0);
+            if(r != null)
+            {
+                progress.set(1.0);
 
-                    panorama.set(p);
-                    image.set(i);
-                    list.setAll(l);
-                    minimap.set(canvas);
-                });
+                remember(display, r);
+
+                panoramaParameters.set(newParameters);
+                panorama.set(r.panorama);
+                image.set(r.image);
+                labelGeometry = r.decorations.geometry;
+                labelsList.setAll(r.decorations.labels);
+                minimap.set(r.decorations.minimap);
+            }
+            else
+            {
+                progress.set(0.0);
+
+                failure.set(throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable);
+            }
 
-                computing.set(false);
+            computing.set(false);
+        }));
+    }
+
+    /**
+     * Starts the computation of a panorama, painting its previews until the computation is superseded.
+     * @param parameters the parameters of the panorama
+     * @param channels the channels to compute
+     * @param previous the panorama whose columns can be copied, or <code>null</code>
+     * @param userParameters the parameters of the painting
+     * @param current the computation of the bean, whose completion cancels the computation of the panorama
+     * @return the computation of the panorama
+     */
+    private CompletableFuture<Panorama> computePanorama(PanoramaParameters parameters, Set<Panorama.Channel> channels, Panorama previous, PanoramaUserParameters userParameters, CompletableFuture<Panorama> current)
+    {
+        final CompletableFuture<Panorama> task = computer.computePanoramaAsync(parameters, Panorama.Storage.HEAP, channels, previous, PREVIEW_STEP, preview -> renderingExecutor.execute(() ->
+        {
+            if(current.isDone())
+                return;
+
+            final Image i = PanoramaRenderer.renderPanorama(preview, PanoramaRasterizer.painter(preview, userParameters.painter()), userParameters.supersamplingExponent());
+
+            Platform.runLater(() ->
+            {
+                if(current == computation && !current.isDone())
+                    image.set(i);
             });
+        }));
 
-            executor.shutdown();
-        });
+        current.whenComplete((p, throwable) -> task.cancel(false));
+
+        return task;
+    }
+
+    /**
+     * Paints the panorama and computes the associated labels and minimap, unless they are already known.
+     * @param p the computed panorama
+     * @param userParameters the parameters used to compute the panorama
+     * @param display the display parameters of the panorama, possibly aligned on a previous one
+     * @param decorations the labels and minimap of the display parameters, or <code>null</code> to compute them
+     * @return the rendering
+     */
+    private Rendering render(Panorama p, PanoramaUserParameters userParameters, PanoramaParameters display, Decorations decorations)
+    {
+        final Image i = PanoramaRenderer.renderPanorama(p, PanoramaRasterizer.painter(p, userParameters.painter()), userParameters.supersamplingExponent());
+
+        if(decorations == null)
+        {
+            // The panorama already knows which summits are hidden, except around the edges of the terrain
+            final List<SummitLabel> l = labeler.labels(display, p);
+
+            final Canvas canvas = MiniMapRenderer.render(cDEM, userParameters.panoramaParameters());
+
+            decorations = new Decorations(l, Labelizer.nodes(l), canvas);
+        }
+
+        return new Rendering(p, i, decorations);
+    }
+
+    /**
+     * Keeps the results of a rendering among the recent ones, forgetting the least recently used panoramas once their
+     * samples exceed {@value #RECENT_PANORAMAS_BYTES} bytes.
+     * @param display the display parameters of the rendering
+     * @param r the rendering
+     */
+    private void remember(PanoramaParameters display, Rendering r)
+    {
+        recentPanoramas.put(r.panorama.parameters(), r.panorama);
+        recentDecorations.put(display, r.decorations);
+
+        long bytes = 0;
+        for(Panorama p : recentPanoramas.values())
+            bytes += bytes(p);
+
+        final Iterator<Panorama> eldest = recentPanoramas.values().iterator();
+
+        while(bytes > RECENT_PANORAMAS_BYTES && recentPanoramas.size() > 1)
+        {
+            bytes -= bytes(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Returns the size of the samples of a panorama.
+     * @param p the panorama
+     * @return the number of bytes
+     */
+    private static long bytes(Panorama p)
+    {
+        return (long) p.parameters().width() * p.parameters().height() * p.channels().size() * Float.BYTES;
+    }
+
+    /**
+     * Returns parameters turned to another center azimuth.
+     * @param parameters the parameters
+     * @param centerAzimuth the new center azimuth
+     * @return the turned parameters
+     */
+    private static PanoramaParameters withCenterAzimuth(PanoramaParameters parameters, double centerAzimuth)
+    {
+        return new PanoramaParameters(parameters.observerPosition(), parameters.observerElevation(), centerAzimuth, parameters.horizontalFieldOfView(), parameters.maxDistance(), parameters.width(), parameters.height());
+    }
+
+    /**
+     * Returns the channels to compute for a painter.
+     * The position, distance and elevation are always needed by the information displayed under the mouse.
+     * @param painter the painter parameter
+     * @return the channels
+     */
+    private static Set<Panorama.Channel> channels(int painter)
+    {
+        final Set<Panorama.Channel> channels = EnumSet.of(Panorama.Channel.DISTANCE, Panorama.Channel.LONGITUDE, Panorama.Channel.LATITUDE, Panorama.Channel.ELEVATION);
+        channels.addAll(PanoramaRasterizer.channels(painter));
+
+        return channels;
     }
 
     /**
@@ -148,6 +397,25 @@ public class PanoramaComputerBean
         return panorama.get();
     }
 
+    /**
+     * Read-only property of the parameters the current panorama was computed and painted with, which lag behind the
+     * {@link #parametersProperty() parameters} while a new panorama is computed.
+     * @return the parameters property of the panorama
+     */
+    public ReadOnlyObjectProperty<PanoramaUserParameters> panoramaParametersProperty()
+    {
+        return panoramaParameters.getReadOnlyProperty();
+    }
+
+    /**
+     * Shortened call to {@link #panoramaParametersProperty() panoramaParametersProperty()}.{@link ObjectProperty#get() get()}.
+     * @return the parameters of the current panorama
+     */
+    public PanoramaUserParameters getPanoramaParameters()
+    {
+        return panoramaParameters.get();
+    }
+
     /**
      * Read-only image property.
      * @return the image property
@@ -184,6 +452,16 @@ public class PanoramaComputerBean
         return labels.get();
     }
 
+    /**
+     * Returns the geometry of the labels currently displayed, which can be drawn without JavaFX.
+     * Must be called from the JavaFX application thread.
+     * @return the labels
+     */
+    public List<SummitLabel> getLabelGeometry()
+    {
+        return labelGeometry;
+    }
+
     public BooleanProperty computingProperty()
     {
         return computing;
@@ -194,8 +472,63 @@ public class PanoramaComputerBean
         return progress;
     }
 
+    /**
+     * Read-only property of the failure of the latest computation, reset when a new computation starts.
+     * @return the failure property, whose value is <code>null</code> unless the computation failed
+     */
+    public ReadOnlyObjectProperty<Throwable> failureProperty()
+    {
+        return failure.getReadOnlyProperty();
+    }
+
     public ReadOnlyProperty<Canvas> minimapProperty()
     {
         return minimap.getReadOnlyProperty();
     }
+
+    /**
+     * The result of a computation, ready to be displayed.
+     */
+    private static final class Rendering
+    {
+        private final Panorama panorama;
+        private final Image image;
+        private final Decorations decorations;
+
+        /**
+         * Creates a new instance.
+         * @param panorama the panorama
+         * @param image the painted image
+         * @param decorations the labels and minimap
+         */
+        private Rendering(Panorama panorama, Image image, Decorations decorations)
+        {
+            this.panorama = panorama;
+            this.image = image;
+            this.decorations = decorations;
+        }
+    }
+
+    /**
+     * The labels and minimap of a panorama, which only depend on its display parameters.
+     */
+    private static final class Decorations
+    {
+        private final List<SummitLabel> geometry;
+        private final List<Node> labels;
+        private final Canvas minimap;
+
+        /**
+         * Creates a new instance.
+         * @param geometry the geometry of the labels
+         * @param labels the nodes of the labels
+         * @param minimap the minimap
+         */
+        private Decorations(List<SummitLabel> geometry, List<Node> labels, Canvas minimap)
+        {
+            this.geometry = geometry;
+            this.labels = labels;
+            this.minimap = minimap;
+        }
+    }
 }
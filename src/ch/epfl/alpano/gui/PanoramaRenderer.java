@@ -1,97 +1,50 @@
 package ch.epfl.alpano.gui;
 
-import ch.epfl.alpano.Math2;
 import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.render.ArgbPainter;
+import ch.epfl.alpano.render.PanoramaRasterizer;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.nio.IntBuffer;
 
 /**
  * Utility class to render an image from a panorama.
+ * The painters are given by {@link PanoramaRasterizer}, this class only adapts its pixels to JavaFX.
  */
 public interface PanoramaRenderer
 {
     /**
      * Renders an image from a panorama using the given parameters.
+     * The pixels are painted by {@link PanoramaRasterizer#render(Panorama, ArgbPainter)} then written to the image at once.
      * @param panorama the panorama
-     * @param painter the image painter
+     * @param painter the image painter, for instance an {@link ImagePainter}
      * @return the rendered image
      */
-    static Image renderPanorama(Panorama panorama, ImagePainter painter)
+    static Image renderPanorama(Panorama panorama, ArgbPainter painter)
     {
-        final WritableImage image = new WritableImage(panorama.parameters().width(), panorama.parameters().height());
-        final PixelWriter writer = image.getPixelWriter();
-
-        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1));
-
-        for(int x = 0; x < image.getWidth(); x++)
-        {
-            final int x1 = x;
-
-            executor.execute(() ->
-            {
-                for(int y = 0; y < image.getHeight(); y++)
-                {
-                    final Color color = painter.colorAt(x1, y);
-                    writer.setColor(x1, y, color);
-                }
-            });
-        }
-
-        executor.shutdown();
-
-        try
-        {
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        }
-        catch(InterruptedException e)
-        {
-            e.printStackTrace();
-        }
-
-        return image;
-    }
-
-    static ImagePainter coloredImagePainter(Panorama panorama)
-    {
-        final ChannelPainter distance = panorama::distanceAt, slope = panorama::slopeAt;
-
-        ChannelPainter h = distance.div(100_000).cycling().mul(360);
-        ChannelPainter s = distance.div(200_000).clamped().inverted();
-        ChannelPainter b = slope.mul(2).div((float) Math.PI).inverted().mul(0.7f).add(0.3f);
-
-        ChannelPainter opacity = distance.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
-
-        return ImagePainter.hsb(h, s, b, opacity);
+        return renderPanorama(panorama, painter, 0);
     }
 
-    static ImagePainter blackWhiteBorderedImagePainter(Panorama panorama)
-    {
-        final ChannelPainter distance = panorama::distanceAt, slope = panorama::slopeAt;
-
-        ChannelPainter h = distance.div(100_000).add(0.5f).clamped();
-        ChannelPainter s = slope.mul(2).div((float) Math.PI).inverted().mul(0.7f).add(0.3f);
-        ChannelPainter b = ChannelPainter.maxDistanceToNeighbors(panorama).sub(500).div(4500).clamped().inverted().add(0.6f).clamped();
-
-        ChannelPainter opacity = distance.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
-
-        ChannelPainter p = (x, y) -> Math.min(Math.min(h.valueAt(x, y), s.valueAt(x, y)), b.valueAt(x, y));
-
-        return ImagePainter.gray(p, opacity);
-    }
-
-    static ImagePainter borderedImagePainter(Panorama panorama)
+    /**
+     * Renders an image from a supersampled panorama at its display resolution, without storing the full resolution image.
+     * The pixels are painted by {@link PanoramaRasterizer#render(Panorama, ArgbPainter, int)} then written to the image at once.
+     * @param panorama the panorama
+     * @param painter the image painter, for instance an {@link ImagePainter}
+     * @param supersamplingExponent the supersampling exponent of the panorama
+     * @return the rendered image
+     * @throws IllegalArgumentException if the exponent is negative or if the size of the panorama is not a multiple of
+     * the number of samples per pixel
+     */
+    static Image renderPanorama(Panorama panorama, ArgbPainter painter, int supersamplingExponent)
     {
-        ChannelPainter gray = ChannelPainter.maxDistanceToNeighbors(panorama).sub(500).div(4500).clamped().inverted();
+        final int[] pixels = PanoramaRasterizer.render(panorama, painter, supersamplingExponent);
+        final int width = panorama.parameters().width() >> supersamplingExponent, height = panorama.parameters().height() >> supersamplingExponent;
 
-        ChannelPainter distance = panorama::distanceAt;
-        ChannelPainter opacity = distance.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
+        final WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), IntBuffer.wrap(pixels), width);
 
-        return ImagePainter.gray(gray, opacity);
+        return image;
     }
 }
@@ -0,0 +1,102 @@
+package ch.epfl.alpano.render;
+
+import ch.epfl.alpano.Preconditions;
+
+/**
+ * Utility interface packing colors as ARGB integers (8 bits per component, alpha in the most significant byte, not
+ * premultiplied), giving the same components as a JavaFX color written to an image.
+ */
+public interface Argb
+{
+    /**
+     * Packs the components of a color, rounded as a JavaFX color is when written to an image.
+     * The components are first rounded to floats, as a JavaFX color stores them.
+     * @param red the red component, in [0,1]
+     * @param green the green component, in [0,1]
+     * @param blue the blue component, in [0,1]
+     * @param opacity the opacity, in [0,1]
+     * @return the packed color
+     */
+    static int of(double red, double green, double blue, double opacity)
+    {
+        return component(opacity) << 24 | component(red) << 16 | component(green) << 8 | component(blue);
+    }
+
+    /**
+     * Packs a color given by its hue, saturation and brightness, as the JavaFX <code>Color.hsb</code> does.
+     * @param hue the hue, in degrees
+     * @param saturation the saturation, in [0,1]
+     * @param brightness the brightness, in [0,1]
+     * @param opacity the opacity, in [0,1]
+     * @return the packed color
+     * @throws IllegalArgumentException if a component other than the hue is out of [0,1]
+     */
+    static int hsb(double hue, double saturation, double brightness, double opacity)
+    {
+        checkComponent(saturation);
+        checkComponent(brightness);
+        checkComponent(opacity);
+
+        if(saturation == 0)
+            return of(brightness, brightness, brightness, opacity);
+
+        final double normalized = ((hue % 360) + 360) % 360 / 360;
+        final double h = (normalized - Math.floor(normalized)) * 6.0;
+        final double f = h - Math.floor(h);
+        final double p = brightness * (1.0 - saturation);
+        final double q = brightness * (1.0 - saturation * f);
+        final double t = brightness * (1.0 - (saturation * (1.0 - f)));
+
+        switch((int) h)
+        {
+            case 0:
+                return of(brightness, t, p, opacity);
+            case 1:
+                return of(q, brightness, p, opacity);
+            case 2:
+                return of(p, brightness, t, opacity);
+            case 3:
+                return of(p, q, brightness, opacity);
+            case 4:
+                return of(t, p, brightness, opacity);
+            default:
+                return of(brightness, p, q, opacity);
+        }
+    }
+
+    /**
+     * Packs a gray color, as the JavaFX <code>Color.gray</code> does.
+     * @param gray the gray level, in [0,1]
+     * @param opacity the opacity, in [0,1]
+     * @return the packed color
+     * @throws IllegalArgumentException if a component is out of [0,1]
+     */
+    static int gray(double gray, double opacity)
+    {
+        checkComponent(gray);
+        checkComponent(opacity);
+
+        return of(gray, gray, gray, opacity);
+    }
+
+    /**
+     * Converts a component to 8 bits.
+     * @param value the component, in [0,1]
+     * @return the 8 bits component
+     */
+    static int component(double value)
+    {
+        return (int) Math.round((double) (float) value * 255);
+    }
+
+    /**
+     * Checks that a component is in [0,1], as a JavaFX color does.
+     * Like it, a NaN component is accepted and packed as 0, which happens on the outlines of the sky.
+     * @param value the component
+     * @throws IllegalArgumentException if the component is out of [0,1]
+     */
+    static void checkComponent(double value)
+    {
+        Preconditions.checkArgument(!(value < 0 || value > 1), "The color component must be in [0,1].");
+    }
+}
@@ -0,0 +1,41 @@
+package ch.epfl.alpano.render;
+
+/**
+ * Represents an image painter giving the colors packed as ARGB integers (see {@link Argb}), without depending on any
+ * graphical toolkit.
+ */
+@FunctionalInterface
+public interface ArgbPainter
+{
+    /**
+     * Returns the packed color at the given point.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the packed color at that point
+     */
+    int argbAt(int x, int y);
+
+    /**
+     * Creates a painter from HSB channels.
+     * @param hue the hue channel
+     * @param saturation the saturation channel
+     * @param lightness the lightness channel
+     * @param opacity the opacity channel
+     * @return the new painter
+     */
+    static ArgbPainter hsb(ChannelPainter hue, ChannelPainter saturation, ChannelPainter lightness, ChannelPainter opacity)
+    {
+        return (x, y) -> Argb.hsb(hue.valueAt(x, y), saturation.valueAt(x, y), lightness.valueAt(x, y), opacity.valueAt(x, y));
+    }
+
+    /**
+     * Creates a painter from gray channels.
+     * @param gray the gray channel
+     * @param opacity the opacity channel
+     * @return the new painter
+     */
+    static ArgbPainter gray(ChannelPainter gray, ChannelPainter opacity)
+    {
+        return (x, y) -> Argb.gray(gray.valueAt(x, y), opacity.valueAt(x, y));
+    }
+}
@@ -1,4 +1,4 @@
-package ch.epfl.alpano.gui;
+package ch.epfl.alpano.render;
 
 import ch.epfl.alpano.Panorama;
 
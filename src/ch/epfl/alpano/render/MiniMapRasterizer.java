@@ -0,0 +1,100 @@
+package ch.epfl.alpano.render;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+
+import java.awt.*;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Utility interface rendering the minimap of a panorama: the elevations around the observer in a disc, north up,
+ * with the field of view drawn over them and the whole map rotated so that the view points up.
+ */
+public interface MiniMapRasterizer
+{
+    int DIAMETER = 200;
+    int MARGIN_X = 20, MARGIN_Y = 20;
+    double MIN_ELEVATION = 200;
+    double MAX_ELEVATION = 4000;
+    double WIDTH = Math.toRadians(1);
+
+    /**
+     * The size of the image of a minimap.
+     */
+    int IMAGE_WIDTH = MARGIN_X * 2 + DIAMETER, IMAGE_HEIGHT = MARGIN_Y * 3 + DIAMETER;
+
+    /**
+     * Paints the elevations around the observer in gray levels, in a disc of {@value #DIAMETER} pixels of diameter
+     * covering {@link #WIDTH} radians.
+     * @param cdem the continuous elevation model
+     * @param parameters the parameters of the panorama
+     * @return the pixels as ARGB integers (see {@link Argb}), row by row from the north, transparent out of the disc
+     */
+    static int[] elevationDisc(ContinuousElevationModel cdem, PanoramaParameters parameters)
+    {
+        final int[] pixels = new int[DIAMETER * DIAMETER];
+
+        final int radius = DIAMETER >> 1;
+        final int distance = radius * radius;
+        final int mid = (DIAMETER >> 1);
+
+        double step = WIDTH / (DIAMETER - 1);
+
+        for(int x = 0; x < DIAMETER; ++x)
+        {
+            final int rX = x - mid;
+            double lon = parameters.observerPosition().longitude() + rX * step;
+            for(int y = 0; y < DIAMETER; ++y)
+            {
+                final int rY = y - mid;
+                if(Math2.sq(rX) + Math2.sq(rY) < distance)
+                {
+                    final double latitude = parameters.observerPosition().latitude() + rY * step;
+                    final GeoPoint point = new GeoPoint(lon, latitude);
+                    final double elevation = (cdem.elevationAt(point) - MIN_ELEVATION) / (MAX_ELEVATION - MIN_ELEVATION);
+                    pixels[(DIAMETER - 1 - y) * DIAMETER + x] = Argb.gray(Math.max(Math.min(elevation, 1.0), 0), 1);
+                }
+            }
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Renders the minimap of a panorama in an image of {@link #IMAGE_WIDTH} by {@link #IMAGE_HEIGHT} pixels.
+     * @param cdem the continuous elevation model
+     * @param parameters the parameters of the panorama
+     * @return the image
+     */
+    static BufferedImage render(ContinuousElevationModel cdem, PanoramaParameters parameters)
+    {
+        final BufferedImage disc = new BufferedImage(DIAMETER, DIAMETER, BufferedImage.TYPE_INT_ARGB);
+        disc.setRGB(0, 0, DIAMETER, DIAMETER, elevationDisc(cdem, parameters), 0, DIAMETER);
+
+        final BufferedImage image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = image.createGraphics();
+
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.rotate(-parameters.centerAzimuth(), MARGIN_X + (DIAMETER >> 1), MARGIN_Y + (DIAMETER >> 1));
+
+        g.setColor(Color.WHITE);
+        g.fill(new Ellipse2D.Double(MARGIN_X, MARGIN_Y, DIAMETER, DIAMETER));
+        g.drawImage(disc, MARGIN_X, MARGIN_Y, null);
+
+        g.setColor(new Color(255, 0, 0, 128));
+        g.fill(new Arc2D.Double(MARGIN_X, MARGIN_Y, DIAMETER, DIAMETER, Math.toDegrees(-parameters.centerAzimuth() + (Math.PI - parameters.horizontalFieldOfView()) / 2.0), Math.toDegrees(parameters.horizontalFieldOfView()), Arc2D.PIE));
+
+        g.setColor(Color.BLACK);
+        g.setStroke(new BasicStroke(4.0f));
+        g.draw(new Ellipse2D.Double(MARGIN_X, MARGIN_Y, DIAMETER, DIAMETER));
+
+        g.dispose();
+
+        return image;
+    }
+}
@@ -0,0 +1,270 @@
+package ch.epfl.alpano.render;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.Preconditions;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Utility interface rendering panoramas and their labels without any graphical toolkit, as ARGB integers (see
+ * {@link Argb}) or as {@link BufferedImage}s, which can be used on a server without display.
+ */
+public interface PanoramaRasterizer
+{
+    /**
+     * Height of the bands of rows painted in parallel.
+     */
+    int BAND_HEIGHT = 16;
+
+    /**
+     * Paints the pixels of a panorama, row by row.
+     * @param panorama the panorama
+     * @param painter the painter
+     * @return the pixels, the pixel <code>(x, y)</code> being at the index <code>y * width + x</code>
+     */
+    static int[] render(Panorama panorama, ArgbPainter painter)
+    {
+        return render(panorama, painter, 0);
+    }
+
+    /**
+     * Paints the pixels of a supersampled panorama at its display resolution, each pixel being the average of the
+     * samples it covers (see {@link #averageAt(ArgbPainter, int, int, int)}).
+     * The full resolution image is never stored.
+     * @param panorama the panorama
+     * @param painter the painter
+     * @param supersamplingExponent the supersampling exponent of the panorama: each pixel covers <code>2^exponent</code>
+     *                              samples along each axis
+     * @return the pixels, the pixel <code>(x, y)</code> being at the index <code>y * width + x</code>
+     * @throws IllegalArgumentException if the exponent is negative or if the size of the panorama is not a multiple of
+     * the number of samples per pixel
+     */
+    static int[] render(Panorama panorama, ArgbPainter painter, int supersamplingExponent)
+    {
+        Preconditions.checkArgument(supersamplingExponent >= 0, "The supersampling exponent must be positive.");
+
+        final int[] pixels = new int[(panorama.parameters().width() >> supersamplingExponent) * (panorama.parameters().height() >> supersamplingExponent)];
+
+        render(panorama, painter, supersamplingExponent, pixels);
+
+        return pixels;
+    }
+
+    /**
+     * Paints the pixels of a supersampled panorama at its display resolution in an existing array, row by row.
+     * The bands of {@value #BAND_HEIGHT} rows are painted in parallel, each by a single thread.
+     * @param panorama the panorama
+     * @param painter the painter
+     * @param supersamplingExponent the supersampling exponent of the panorama
+     * @param pixels the array receiving the pixels, the pixel <code>(x, y)</code> being at the index <code>y * width + x</code>
+     * @throws IllegalArgumentException if the exponent is negative, if the size of the panorama is not a multiple of the
+     * number of samples per pixel or if the array is too small
+     */
+    static void render(Panorama panorama, ArgbPainter painter, int supersamplingExponent, int[] pixels)
+    {
+        Preconditions.checkArgument(supersamplingExponent >= 0, "The supersampling exponent must be positive.");
+
+        final int samples = 1 << supersamplingExponent;
+
+        Preconditions.checkArgument(panorama.parameters().width() % samples == 0 && panorama.parameters().height() % samples == 0, "The size of the panorama must be a multiple of the number of samples per pixel.");
+
+        final int width = panorama.parameters().width() / samples, height = panorama.parameters().height() / samples;
+
+        Preconditions.checkArgument(pixels.length >= width * height, "The array is too small.");
+
+        IntStream.range(0, (height + BAND_HEIGHT - 1) / BAND_HEIGHT).parallel().forEach(band ->
+        {
+            for(int y = band * BAND_HEIGHT; y < Math.min((band + 1) * BAND_HEIGHT, height); y++)
+                for(int x = 0; x < width; x++)
+                    pixels[y * width + x] = samples == 1 ? painter.argbAt(x, y) : averageAt(painter, x * samples, y * samples, samples);
+        });
+    }
+
+    /**
+     * Returns the average of a square of samples (box filter), weighted by their opacity so that the transparent
+     * samples do not darken the others.
+     * @param painter the painter of the samples
+     * @param x the x coordinate of the top left sample
+     * @param y the y coordinate of the top left sample
+     * @param samples the number of samples along each axis
+     * @return the packed average color
+     */
+    static int averageAt(ArgbPainter painter, int x, int y, int samples)
+    {
+        int alpha = 0, red = 0, green = 0, blue = 0;
+
+        for(int j = y; j < y + samples; j++)
+        {
+            for(int i = x; i < x + samples; i++)
+            {
+                final int argb = painter.argbAt(i, j), a = argb >>> 24;
+
+                alpha += a;
+                red += (argb >>> 16 & 0xFF) * a;
+                green += (argb >>> 8 & 0xFF) * a;
+                blue += (argb & 0xFF) * a;
+            }
+        }
+
+        if(alpha == 0)
+            return 0;
+
+        final int count = samples * samples;
+
+        return Math.round((float) alpha / count) << 24 | Math.round((float) red / alpha) << 16 | Math.round((float) green / alpha) << 8 | Math.round((float) blue / alpha);
+    }
+
+    /**
+     * Renders a panorama in an image, painted directly in its samples.
+     * @param panorama the panorama
+     * @param painter the painter
+     * @return the image, of type {@link BufferedImage#TYPE_INT_ARGB}
+     */
+    static BufferedImage renderImage(Panorama panorama, ArgbPainter painter)
+    {
+        return renderImage(panorama, painter, 0);
+    }
+
+    /**
+     * Renders a supersampled panorama in an image at its display resolution, painted directly in its samples.
+     * @param panorama the panorama
+     * @param painter the painter
+     * @param supersamplingExponent the supersampling exponent of the panorama
+     * @return the image, of type {@link BufferedImage#TYPE_INT_ARGB}
+     * @throws IllegalArgumentException if the exponent is negative or if the size of the panorama is not a multiple of
+     * the number of samples per pixel
+     */
+    static BufferedImage renderImage(Panorama panorama, ArgbPainter painter, int supersamplingExponent)
+    {
+        Preconditions.checkArgument(supersamplingExponent >= 0, "The supersampling exponent must be positive.");
+
+        final BufferedImage image = new BufferedImage(panorama.parameters().width() >> supersamplingExponent, panorama.parameters().height() >> supersamplingExponent, BufferedImage.TYPE_INT_ARGB);
+
+        render(panorama, painter, supersamplingExponent, ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+
+        return image;
+    }
+
+    /**
+     * Draws labels over an image, typically a panorama rendered at its display resolution.
+     * @param image the image, modified
+     * @param labels the labels, in the coordinates of the image
+     * @return the image
+     */
+    static BufferedImage compose(BufferedImage image, List<SummitLabel> labels)
+    {
+        final Graphics2D g = image.createGraphics();
+
+        drawLabels(g, labels);
+
+        g.dispose();
+
+        return image;
+    }
+
+    /**
+     * Draws labels in black.
+     * @param g the graphics
+     * @param labels the labels
+     */
+    static void drawLabels(Graphics2D g, List<SummitLabel> labels)
+    {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(Color.BLACK);
+
+        final AffineTransform transform = g.getTransform();
+
+        for(SummitLabel label : labels)
+        {
+            g.drawLine(label.x(), label.lineY(), label.x(), label.y());
+
+            g.translate(label.x(), label.labelY());
+            g.rotate(Math.toRadians(SummitLabeler.ROTATION_ANGLE));
+            g.drawString(label.text(), 0, 0);
+            g.setTransform(transform);
+        }
+    }
+
+    /**
+     * Returns the painter corresponding to a painter parameter: 0 for colors, 1 for black and white with the outlines,
+     * any other value for the outlines only.
+     * @param panorama the panorama to paint
+     * @param painter the painter parameter
+     * @return the painter
+     */
+    static ArgbPainter painter(Panorama panorama, int painter)
+    {
+        switch(painter)
+        {
+            case 0:
+                return coloredPainter(panorama);
+            case 1:
+                return blackWhiteBorderedPainter(panorama);
+            default:
+                return borderedPainter(panorama);
+        }
+    }
+
+    /**
+     * Returns the channels read by the painter corresponding to a painter parameter (see {@link #painter(Panorama, int)}).
+     * @param painter the painter parameter
+     * @return the channels
+     */
+    static Set<Panorama.Channel> channels(int painter)
+    {
+        switch(painter)
+        {
+            case 0:
+            case 1:
+                return EnumSet.of(Panorama.Channel.DISTANCE, Panorama.Channel.SLOPE);
+            default:
+                return EnumSet.of(Panorama.Channel.DISTANCE);
+        }
+    }
+
+    static ArgbPainter coloredPainter(Panorama panorama)
+    {
+        final ChannelPainter distance = panorama::distanceAt, slope = panorama::slopeAt;
+
+        ChannelPainter h = distance.div(100_000).cycling().mul(360);
+        ChannelPainter s = distance.div(200_000).clamped().inverted();
+        ChannelPainter b = slope.mul(2).div((float) Math.PI).inverted().mul(0.7f).add(0.3f);
+
+        ChannelPainter opacity = distance.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
+
+        return ArgbPainter.hsb(h, s, b, opacity);
+    }
+
+    static ArgbPainter blackWhiteBorderedPainter(Panorama panorama)
+    {
+        final ChannelPainter distance = panorama::distanceAt, slope = panorama::slopeAt;
+
+        ChannelPainter h = distance.div(100_000).add(0.5f).clamped();
+        ChannelPainter s = slope.mul(2).div((float) Math.PI).inverted().mul(0.7f).add(0.3f);
+        ChannelPainter b = ChannelPainter.maxDistanceToNeighbors(panorama).sub(500).div(4500).clamped().inverted().add(0.6f).clamped();
+
+        ChannelPainter opacity = distance.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
+
+        ChannelPainter p = (x, y) -> Math.min(Math.min(h.valueAt(x, y), s.valueAt(x, y)), b.valueAt(x, y));
+
+        return ArgbPainter.gray(p, opacity);
+    }
+
+    static ArgbPainter borderedPainter(Panorama panorama)
+    {
+        ChannelPainter gray = ChannelPainter.maxDistanceToNeighbors(panorama).sub(500).div(4500).clamped().inverted();
+
+        ChannelPainter distance = panorama::distanceAt;
+        ChannelPainter opacity = distance.map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
+
+        return ArgbPainter.gray(gray, opacity);
+    }
+}
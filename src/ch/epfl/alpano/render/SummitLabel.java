@@ -0,0 +1,90 @@
+package ch.epfl.alpano.render;
+
+import ch.epfl.alpano.summit.Summit;
+
+import java.util.Objects;
+
+/**
+ * The geometry of the label of a summit, in the coordinates of the image: a text rotated by
+ * {@value SummitLabeler#ROTATION_ANGLE}° around its origin, and a vertical line joining it to the summit.
+ */
+public final class SummitLabel
+{
+    private final Summit summit;
+    private final int x, y, labelY;
+
+    /**
+     * Creates a label.
+     * @param summit the summit
+     * @param x the x coordinate of the summit, and of the label
+     * @param y the y coordinate of the summit
+     * @param labelY the y coordinate of the origin of the text
+     */
+    public SummitLabel(Summit summit, int x, int y, int labelY)
+    {
+        this.summit = Objects.requireNonNull(summit);
+        this.x = x;
+        this.y = y;
+        this.labelY = labelY;
+    }
+
+    /**
+     * Returns the summit.
+     * @return the summit
+     */
+    public Summit summit()
+    {
+        return summit;
+    }
+
+    /**
+     * Returns the x coordinate of the summit, which is also the one of the origin of the text and of the line.
+     * @return the x coordinate
+     */
+    public int x()
+    {
+        return x;
+    }
+
+    /**
+     * Returns the y coordinate of the summit, where the line ends.
+     * @return the y coordinate
+     */
+    public int y()
+    {
+        return y;
+    }
+
+    /**
+     * Returns the y coordinate of the origin of the text.
+     * @return the y coordinate
+     */
+    public int labelY()
+    {
+        return labelY;
+    }
+
+    /**
+     * Returns the y coordinate where the line starts, just under the text.
+     * @return the y coordinate
+     */
+    public int lineY()
+    {
+        return labelY + SummitLabeler.LABEL_LINE_SPACE;
+    }
+
+    /**
+     * Returns the text of the label: the name and the elevation of the summit.
+     * @return the text
+     */
+    public String text()
+    {
+        return summit.name() + " (" + summit.elevation() + " m)";
+    }
+
+    @Override
+    public String toString()
+    {
+        return text() + " at (" + x + ", " + y + ")";
+    }
+}
@@ -0,0 +1,352 @@
+package ch.epfl.alpano.render;
+
+import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.Preconditions;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.summit.Summit;
+import ch.epfl.alpano.summit.SummitIndex;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Computes the labels of the summits visible in a panorama, as plain geometry that any toolkit can draw.
+ */
+public final class SummitLabeler
+{
+    /**
+     * The angle of the texts, in degrees (clockwise, the y axis pointing down).
+     */
+    public static final int ROTATION_ANGLE = -60;
+
+    /**
+     * The space between the origin of the texts and the start of the lines.
+     */
+    public static final int LABEL_LINE_SPACE = 2;
+
+    private static final int MAX_Y = 170;
+    private static final double DISTANCE_THRESHOLD = 200;
+    private static final int HORIZONTAL_LINE_SPACE = 22;
+    private static final int RAY_INTERVAL = 64;
+    private static final int MIN_DISTANCE = 20;
+
+    /**
+     * A range of summits is only split while the pool has at most this number of queued tasks left to steal.
+     */
+    private static final int MAX_SURPLUS_TASKS = 2;
+
+    private final ContinuousElevationModel cDEM;
+    private final SummitIndex summits;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a labeler from a continuous elevation model and a summit list, testing the summits on the common pool.
+     * @param cDEM the continuous elevation model
+     * @param summits the summits list
+     */
+    public SummitLabeler(ContinuousElevationModel cDEM, List<Summit> summits)
+    {
+        this(cDEM, summits, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a labeler from a continuous elevation model and a summit list, testing whether the summits are visible in
+     * parallel on a shared pool, typically the one computing the panoramas (see {@link PanoramaComputer#pool()}).
+     * @param cDEM the continuous elevation model
+     * @param summits the summits list
+     * @param pool the pool testing the summits
+     */
+    public SummitLabeler(ContinuousElevationModel cDEM, List<Summit> summits, ForkJoinPool pool)
+    {
+        this.cDEM = Objects.requireNonNull(cDEM);
+        this.summits = new SummitIndex(summits);
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    /**
+     * Labels the visible summits, keeping the ones having enough room above them and far enough from the other labels.
+     * @param parameters the panorama parameters
+     * @return the labels, all aligned on the same line
+     */
+    public List<SummitLabel> labels(PanoramaParameters parameters)
+    {
+        return layout(visibleSummits(parameters), parameters.width());
+    }
+
+    /**
+     * Labels the visible summits as {@link #labels(PanoramaParameters)} does, reading whether they are hidden in a
+     * computed panorama of the same view (see {@link #visibleSummits(PanoramaParameters, Panorama)}).
+     * @param parameters the panorama parameters, typically the display parameters of a supersampled panorama
+     * @param panorama a panorama of the same view, containing the distances
+     * @return the labels, all aligned on the same line
+     * @throws IllegalArgumentException if the panorama does not have the same view or does not contain the distances
+     */
+    public List<SummitLabel> labels(PanoramaParameters parameters, Panorama panorama)
+    {
+        return layout(visibleSummits(parameters, Objects.requireNonNull(panorama)), parameters.width());
+    }
+
+    /**
+     * Chooses the labels to display among the visible summits and aligns them.
+     * @param visible the visible summits, as returned by {@link #visibleSummits(PanoramaParameters)}
+     * @param width the width of the image
+     * @return the labels, all aligned on the same line
+     */
+    public static List<SummitLabel> layout(List<SummitLabel> visible, int width)
+    {
+        final Set<Integer> horizontalCoordinates = new HashSet<>();
+
+        final List<SummitLabel> labelled = new ArrayList<>();
+
+        int maxY = Integer.MAX_VALUE;
+
+        for(SummitLabel point : visible)
+        {
+            if(point.y() >= MAX_Y
+                    && point.x() >= MIN_DISTANCE && point.x() < width - MIN_DISTANCE
+                    && doesNotContainSimilar(horizontalCoordinates, point.x(), MIN_DISTANCE))
+            {
+                if(point.y() < maxY)
+                    maxY = point.y();
+
+                horizontalCoordinates.add(point.x());
+                labelled.add(point);
+            }
+        }
+
+        final int labelsY = maxY - HORIZONTAL_LINE_SPACE;
+
+        final List<SummitLabel> labels = new ArrayList<>();
+
+        for(SummitLabel point : labelled)
+            labels.add(new SummitLabel(point.summit(), point.x(), point.y(), labelsY));
+
+        return labels;
+    }
+
+    /**
+     * Gives the visible summits based on panorama parameters, sorted from the top of the image, then by decreasing
+     * elevation.
+     * Each summit is labelled as if it were alone, right above it. The summits are tested in parallel on the pool of the
+     * labeler, the result being the same as if they were tested one after the other.
+     * @param parameters the panorama parameters
+     * @return the list of the visible summits
+     */
+    public List<SummitLabel> visibleSummits(PanoramaParameters parameters)
+    {
+        return visibleSummits(parameters, null);
+    }
+
+    /**
+     * Gives the visible summits based on panorama parameters, as {@link #visibleSummits(PanoramaParameters)} does, reading
+     * whether they are hidden in a computed panorama of the same view.
+     * The distances of the 4 samples of the panorama around a summit are compared to the distance of the summit. If they
+     * all show it, or all hide it, by more than {@value #RAY_INTERVAL} meters, the summit is known without marching any
+     * ray; else, for instance on the edge of a ridge, its ray is marched as usual.
+     * @param parameters the panorama parameters, of any size
+     * @param panorama a panorama of the same view, of any size, containing the distances
+     * @return the list of the visible summits
+     * @throws IllegalArgumentException if the panorama does not have the same view or does not contain the distances
+     */
+    public List<SummitLabel> visibleSummits(PanoramaParameters parameters, Panorama panorama)
+    {
+        if(panorama != null)
+        {
+            final PanoramaParameters p = panorama.parameters();
+
+            Preconditions.checkArgument(p.observerPosition().longitude() == parameters.observerPosition().longitude() && p.observerPosition().latitude() == parameters.observerPosition().latitude()
+                    && p.observerElevation() == parameters.observerElevation() && p.centerAzimuth() == parameters.centerAzimuth()
+                    && p.horizontalFieldOfView() == parameters.horizontalFieldOfView() && p.maxDistance() == parameters.maxDistance(), "The panorama must have the same view as the parameters.");
+            Preconditions.checkArgument(panorama.channels().contains(Panorama.Channel.DISTANCE), "The panorama must contain the distances.");
+        }
+
+        // Only the summits close enough are considered, found through the index instead of the whole list
+        final List<Summit> candidates = summits.summitsWithin(parameters.observerPosition(), parameters.maxDistance());
+        final SummitLabel[] labels = new SummitLabel[candidates.size()];
+
+        pool.invoke(new VisibilityTask(candidates, parameters, panorama, labels, 0, labels.length));
+
+        // Merged in the order of the candidates, so that the sort keeps the same order for the same keys
+        final List<SummitLabel> visible = new ArrayList<>();
+
+        for(SummitLabel label : labels)
+            if(label != null)
+                visible.add(label);
+
+        visible.sort((a, b) -> a.y() == b.y() ? Integer.compare(b.summit().elevation(), a.summit().elevation()) : Integer.compare(a.y(), b.y()));
+
+        return visible;
+    }
+
+    /**
+     * Labels a summit if it is visible.
+     * @param summit the summit
+     * @param parameters the panorama parameters
+     * @param panorama a panorama of the same view, or <code>null</code> to march the ray
+     * @return the label of the summit, right above it, or <code>null</code> if it is not visible
+     */
+    private SummitLabel visibleLabel(Summit summit, PanoramaParameters parameters, Panorama panorama)
+    {
+        final double azimuth = parameters.observerPosition().azimuthTo(summit.position());
+        final double distance = parameters.observerPosition().distanceTo(summit.position());
+        final double verticalAngle = Math.atan2(summit.elevation() - parameters.observerElevation(), distance);
+
+        if(Math.abs(Math2.angularDistance(parameters.centerAzimuth(), azimuth)) * 2 > parameters.horizontalFieldOfView()
+                || Math.abs(verticalAngle) * 2 > parameters.verticalFieldOfView())
+            return null;
+
+        // The ray is aimed at the ground under the summit, the elevation profile is only built to march it
+        final double distanceCurve = PanoramaComputer.rayToGroundDistance(parameters.observerElevation(), 0, distance, cDEM.elevationAt(summit.position()));
+
+        final double angle = Math.atan2(-distanceCurve, distance);
+
+        final Visibility known = panorama == null ? Visibility.UNKNOWN : visibilityIn(panorama, azimuth, angle, distance);
+
+        if(known == Visibility.HIDDEN || (known == Visibility.UNKNOWN && !isVisible(new ElevationProfile(cDEM, parameters.observerPosition(), azimuth, parameters.maxDistance()), parameters, angle, distance)))
+            return null;
+
+        final int y = (int) Math.round(parameters.yForAltitude(angle));
+
+        return new SummitLabel(summit, (int) Math.round(parameters.xForAzimuth(azimuth)), y, y - HORIZONTAL_LINE_SPACE);
+    }
+
+    /**
+     * Checks whether a summit is visible by marching the ray aimed at it.
+     * @param profile the elevation profile in the direction of the summit
+     * @param parameters the panorama parameters
+     * @param angle the altitude of the ray
+     * @param distance the distance of the summit
+     * @return <code>true</code> if the ray reaches no ground before the summit, <code>false</code> else
+     */
+    private static boolean isVisible(ElevationProfile profile, PanoramaParameters parameters, double angle, double distance)
+    {
+        final DoubleUnaryOperator function = PanoramaComputer.rayToGroundDistance(profile, parameters.observerElevation(), angle);
+
+        final double firstInterval = Math2.firstIntervalContainingRoot(function, 0, parameters.maxDistance(), RAY_INTERVAL);
+
+        return firstInterval == Double.POSITIVE_INFINITY || firstInterval >= distance - DISTANCE_THRESHOLD;
+    }
+
+    /**
+     * Reads whether a summit is visible in a computed panorama, from the 4 samples around the direction of its ray.
+     * @param panorama the panorama
+     * @param azimuth the azimuth of the summit
+     * @param angle the altitude of the ray
+     * @param distance the distance of the summit
+     * @return the visibility of the summit, unknown if the samples disagree or are too close to the limit
+     */
+    private static Visibility visibilityIn(Panorama panorama, double azimuth, double angle, double distance)
+    {
+        final PanoramaParameters p = panorama.parameters();
+
+        // The marched ray rises by the angle per meter, so that it is the ray of the panorama of altitude atan(angle)
+        final double altitude = Math.atan(angle);
+
+        if(Math.abs(altitude) * 2 > p.verticalFieldOfView())
+            return Visibility.UNKNOWN;
+
+        final double x = p.xForAzimuth(azimuth), y = p.yForAltitude(altitude);
+        final int x0 = (int) Math.floor(x), y0 = (int) Math.floor(y);
+
+        if(x0 < 0 || x0 + 1 >= p.width() || y0 < 0 || y0 + 1 >= p.height())
+            return Visibility.UNKNOWN;
+
+        Visibility visibility = null;
+
+        for(int i = x0; i <= x0 + 1; i++)
+        {
+            for(int j = y0; j <= y0 + 1; j++)
+            {
+                // The horizontal distance to the ground, compared with the same margin as the marched ray
+                final double margin = panorama.distanceAt(i, j) * Math.cos(p.altitudeForY(j)) - (distance - DISTANCE_THRESHOLD);
+                final Visibility sample = margin > RAY_INTERVAL ? Visibility.VISIBLE : margin < -RAY_INTERVAL ? Visibility.HIDDEN : Visibility.UNKNOWN;
+
+                if(sample == Visibility.UNKNOWN || (visibility != null && sample != visibility))
+                    return Visibility.UNKNOWN;
+
+                visibility = sample;
+            }
+        }
+
+        return visibility;
+    }
+
+    /**
+     * The visibility of a summit read in a panorama.
+     */
+    private enum Visibility
+    {
+        VISIBLE, HIDDEN, UNKNOWN
+    }
+
+    /**
+     * A task labelling a range of candidate summits, split in halves as long as other workers are likely to steal them.
+     */
+    private final class VisibilityTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Summit> candidates;
+        private final PanoramaParameters parameters;
+        private final Panorama panorama;
+        private final SummitLabel[] labels;
+        private final int from, to;
+
+        /**
+         * Creates a new task.
+         * @param candidates the candidate summits
+         * @param parameters the panorama parameters
+         * @param panorama a panorama of the same view, or <code>null</code> to march the rays
+         * @param labels the labels of the candidates, <code>null</code> for the hidden ones
+         * @param from the index of the first candidate (included)
+         * @param to the index of the last candidate (excluded)
+         */
+        private VisibilityTask(List<Summit> candidates, PanoramaParameters parameters, Panorama panorama, SummitLabel[] labels, int from, int to)
+        {
+            this.candidates = candidates;
+            this.parameters = parameters;
+            this.panorama = panorama;
+            this.labels = labels;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to - from > 1 && getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS)
+            {
+                final int middle = (from + to) >>> 1;
+
+                invokeAll(new VisibilityTask(candidates, parameters, panorama, labels, from, middle), new VisibilityTask(candidates, parameters, panorama, labels, middle, to));
+            }
+            else
+            {
+                for(int i = from; i < to; i++)
+                    labels[i] = visibleLabel(candidates.get(i), parameters, panorama);
+            }
+        }
+    }
+
+    /**
+     * Checks if a set contains a specified value or similar.
+     * @param collection the collection to check
+     * @param value the value to find
+     * @param distance the maximum distance between the value
+     * @return <code>false</code> no similar value was found, <code>true</code> else
+     */
+    private static boolean doesNotContainSimilar(Iterable<Integer> collection, double value, double distance)
+    {
+        for(Integer i : collection)
+            if(Math.abs(i - value) < distance)
+                return false;
+
+        return true;
+    }
+}
@@ -0,0 +1,186 @@
+package ch.epfl.alpano.summit;
+
+import ch.epfl.alpano.Distance;
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Preconditions;
+
+import java.util.*;
+
+/**
+ * A spatial index of summits, a grid of cells of {@value #CELL_SIZE_DEGREES}° of longitude and latitude covering them.
+ * The summits of a cell are stored contiguously, so that the summits around a point are found by reading the cells of the
+ * bounding box of the disc instead of the whole list.
+ */
+public final class SummitIndex
+{
+    /**
+     * The size of the cells, in degrees.
+     */
+    public static final double CELL_SIZE_DEGREES = 0.1;
+
+    private static final double CELL_SIZE = Math.toRadians(CELL_SIZE_DEGREES);
+
+    private final List<Summit> summits;
+    private final double minLongitude, minLatitude;
+    private final int columns, rows;
+
+    /**
+     * The indices in the list of the summits, sorted by cell then by index, and the position of the first one of each
+     * cell (followed by the number of summits).
+     */
+    private final int[] indices;
+    private final int[] cellStarts;
+
+    /**
+     * Creates an index of summits.
+     * @param summits the summits
+     */
+    public SummitIndex(List<Summit> summits)
+    {
+        this.summits = Collections.unmodifiableList(new ArrayList<>(summits));
+
+        double minLongitude = 0, maxLongitude = 0, minLatitude = 0, maxLatitude = 0;
+
+        for(int i = 0; i < this.summits.size(); i++)
+        {
+            final GeoPoint position = this.summits.get(i).position();
+
+            minLongitude = i == 0 ? position.longitude() : Math.min(minLongitude, position.longitude());
+            maxLongitude = i == 0 ? position.longitude() : Math.max(maxLongitude, position.longitude());
+            minLatitude = i == 0 ? position.latitude() : Math.min(minLatitude, position.latitude());
+            maxLatitude = i == 0 ? position.latitude() : Math.max(maxLatitude, position.latitude());
+        }
+
+        this.minLongitude = minLongitude;
+        this.minLatitude = minLatitude;
+        this.columns = (int) Math.floor((maxLongitude - minLongitude) / CELL_SIZE) + 1;
+        this.rows = (int) Math.floor((maxLatitude - minLatitude) / CELL_SIZE) + 1;
+
+        // Counting sort of the summits by cell, which keeps them in the order of the list within a cell
+        final int[] cells = new int[this.summits.size()];
+        this.cellStarts = new int[columns * rows + 1];
+
+        for(int i = 0; i < cells.length; i++)
+        {
+            final GeoPoint position = this.summits.get(i).position();
+
+            cells[i] = cell(column(position.longitude()), row(position.latitude()));
+            cellStarts[cells[i] + 1]++;
+        }
+
+        for(int c = 0; c < columns * rows; c++)
+            cellStarts[c + 1] += cellStarts[c];
+
+        this.indices = new int[cells.length];
+        final int[] next = Arrays.copyOf(cellStarts, columns * rows);
+
+        for(int i = 0; i < cells.length; i++)
+            indices[next[cells[i]]++] = i;
+    }
+
+    /**
+     * Returns the summits of the index.
+     * @return the summits, in the order they were given
+     */
+    public List<Summit> summits()
+    {
+        return summits;
+    }
+
+    /**
+     * Returns the summits at most at a given distance from a point.
+     * @param center the point
+     * @param maxDistance the maximal distance (meters)
+     * @return the summits, in the order they were given
+     * @throws IllegalArgumentException if the distance is negative
+     */
+    public List<Summit> summitsWithin(GeoPoint center, double maxDistance)
+    {
+        Preconditions.checkArgument(maxDistance >= 0, "The distance must be positive.");
+
+        if(summits.isEmpty())
+            return Collections.emptyList();
+
+        final double radius = maxDistance / Distance.EARTH_RADIUS;
+        final double latitude = center.latitude(), longitude = center.longitude();
+
+        final int firstRow = Math.max(row(latitude - radius), 0), lastRow = Math.min(row(latitude + radius), rows - 1);
+        int firstColumn = 0, lastColumn = columns - 1;
+
+        // The longitudes of a small circle that contains no pole are within asin(sin(radius) / cos(latitude)) of its center
+        final double sinLongitudes = Math.sin(radius) / Math.cos(latitude);
+
+        if(radius < Math.PI / 2 && Math.abs(latitude) + radius < Math.PI / 2 && sinLongitudes < 1)
+        {
+            final double longitudes = Math.asin(sinLongitudes);
+
+            if(longitude - longitudes >= -Math.PI && longitude + longitudes <= Math.PI) // Else the box wraps around the antimeridian
+            {
+                firstColumn = Math.max(column(longitude - longitudes), 0);
+                lastColumn = Math.min(column(longitude + longitudes), columns - 1);
+            }
+        }
+
+        int count = 0;
+        int[] found = new int[16];
+
+        for(int row = firstRow; row <= lastRow; row++)
+        {
+            for(int column = firstColumn; column <= lastColumn; column++)
+            {
+                final int cell = cell(column, row);
+
+                for(int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++)
+                {
+                    if(summits.get(indices[k]).position().distanceTo(center) <= maxDistance)
+                    {
+                        if(count == found.length)
+                            found = Arrays.copyOf(found, 2 * count);
+
+                        found[count++] = indices[k];
+                    }
+                }
+            }
+        }
+
+        Arrays.sort(found, 0, count);
+
+        final List<Summit> within = new ArrayList<>(count);
+
+        for(int i = 0; i < count; i++)
+            within.add(summits.get(found[i]));
+
+        return within;
+    }
+
+    /**
+     * Returns the column of the cells containing a longitude, which can be out of the grid.
+     * @param longitude the longitude
+     * @return the column
+     */
+    private int column(double longitude)
+    {
+        return (int) Math.max(Math.min(Math.floor((longitude - minLongitude) / CELL_SIZE), columns), -1);
+    }
+
+    /**
+     * Returns the row of the cells containing a latitude, which can be out of the grid.
+     * @param latitude the latitude
+     * @return the row
+     */
+    private int row(double latitude)
+    {
+        return (int) Math.max(Math.min(Math.floor((latitude - minLatitude) / CELL_SIZE), rows), -1);
+    }
+
+    /**
+     * Returns the linear index of a cell of the grid.
+     * @param column the column
+     * @param row the row
+     * @return the index
+     */
+    private int cell(int column, int row)
+    {
+        return row * columns + column;
+    }
+}
@@ -0,0 +1,145 @@
+package ch.epfl.alpano;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ch.epfl.alpano.PanoramaComputerTest.*;
+import static org.junit.Assert.*;
+
+public class CylindricalPanoramaCacheTest
+{
+    private static final GeoPoint OBSERVER = new GeoPoint(Math.toRadians(0.01), Math.toRadians(0.01));
+
+    /**
+     * Creates the parameters of a panorama whose resolution is one degree, matching a cylinder of 360 columns.
+     * @param centerAzimuth the center azimuth (degrees)
+     * @param width the width, odd so that the columns fall on half degrees when the center does
+     * @return the parameters
+     */
+    private static PanoramaParameters parameters(double centerAzimuth, int width)
+    {
+        return new PanoramaParameters(OBSERVER, 1200, Math.toRadians(centerAzimuth), Math.toRadians(width - 1), 20_000, width, 15);
+    }
+
+    @Test
+    public void testViewportsMatchCylinderColumns()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final CylindricalPanoramaCache cache = new CylindricalPanoramaCache(computer, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), 2);
+
+            final Panorama full = cache.panorama(parameters(180, 360));
+            assertEquals(1, cache.cylinders());
+
+            // Center on a column, and across the north (wrap-around)
+            for(double azimuth : new double[] {45.5, 0.5, 350.5})
+            {
+                final PanoramaParameters parameters = parameters(azimuth, 41);
+                final Panorama viewport = cache.panorama(parameters);
+
+                assertEquals(1, cache.cylinders());
+                assertEquals(parameters, viewport.parameters());
+
+                for(int x = 0; x < parameters.width(); x++)
+                {
+                    final int column = Math.floorMod((int) Math.floor(azimuth) - 20 + x, 360);
+
+                    for(int y = 0; y < parameters.height(); y++)
+                    {
+                        assertEquals(full.distanceAt(column, y), viewport.distanceAt(x, y), 0);
+                        assertEquals(full.elevationAt(column, y), viewport.elevationAt(x, y), 0);
+                        assertEquals(full.slopeAt(column, y), viewport.slopeAt(x, y), 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testViewportsMatchComputedPanoramas()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final CylindricalPanoramaCache cache = new CylindricalPanoramaCache(computer, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), 2);
+            final PanoramaParameters parameters = parameters(45.5, 41);
+
+            final Panorama expected = computer.computePanorama(parameters), actual = cache.panorama(parameters);
+
+            // The azimuths of the columns only differ by rounding errors
+            int different = 0;
+            for(int x = 0; x < parameters.width(); x++)
+                for(int y = 0; y < parameters.height(); y++)
+                    if(Math.abs(expected.distanceAt(x, y) - actual.distanceAt(x, y)) > 1e-2 * expected.distanceAt(x, y))
+                        different++;
+
+            assertTrue(different < parameters.width() * parameters.height() / 100);
+        }
+    }
+
+    @Test
+    public void testUnmatchedPanoramasAreComputed()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final CylindricalPanoramaCache cache = new CylindricalPanoramaCache(computer, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), 2);
+
+            // Resolution not dividing the full turn, then columns between the ones of the cylinder
+            final PanoramaParameters odd = new PanoramaParameters(OBSERVER, 1200, Math.toRadians(45), Math.toRadians(37), 20_000, 120, 15), shifted = parameters(45, 41);
+
+            assertSamePanoramas(computer.computePanorama(odd), cache.panorama(odd));
+            assertSamePanoramas(computer.computePanorama(shifted), cache.panorama(shifted));
+
+            assertEquals(0, cache.cylinders());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedCylindersAreDropped()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final CylindricalPanoramaCache cache = new CylindricalPanoramaCache(computer, Panorama.Storage.HEAP, EnumSet.of(Panorama.Channel.DISTANCE), 1);
+
+            cache.panorama(parameters(45.5, 41));
+            cache.panorama(new PanoramaParameters(OBSERVER, 1300, Math.toRadians(45.5), Math.toRadians(40), 20_000, 41, 15));
+
+            assertEquals(1, cache.cylinders());
+        }
+    }
+
+    @Test
+    public void testConcurrentViewportsComputeTheCylinderOnce()
+    {
+        final AtomicLong sequentialSamples = new AtomicLong(), concurrentSamples = new AtomicLong();
+
+        try(PanoramaComputer sequential = new PanoramaComputer(createHillyDEM(sequentialSamples)); PanoramaComputer concurrent = new PanoramaComputer(createHillyDEM(concurrentSamples)))
+        {
+            final Panorama expected = new CylindricalPanoramaCache(sequential, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), 1).panorama(parameters(45.5, 41));
+            final CylindricalPanoramaCache cache = new CylindricalPanoramaCache(concurrent, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), 1);
+
+            final List<CompletableFuture<Panorama>> viewports = new ArrayList<>();
+            for(int i = 0; i < 4; i++)
+                viewports.add(CompletableFuture.supplyAsync(() -> cache.panorama(parameters(45.5, 41))));
+
+            for(CompletableFuture<Panorama> viewport : viewports)
+                assertSamePanoramas(expected, viewport.join());
+
+            assertEquals(1, cache.cylinders());
+            assertEquals(sequentialSamples.get(), concurrentSamples.get());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCacheFailsWithoutCylinders()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            new CylindricalPanoramaCache(computer, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), 0);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ch.epfl.alpano;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.EnumSet;
+
+import static ch.epfl.alpano.PanoramaComputerTest.*;
+import static org.junit.Assert.*;
+
+public class PanoramaCacheTest
+{
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        directory = Files.createTempDirectory("alpano-cache").toFile();
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        final File[] files = directory.listFiles();
+        if(files != null)
+            for(File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void testStoredPanoramaIsReadBack()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final PanoramaCache cache = new PanoramaCache(directory, "hills", 1 << 20);
+
+        assertNull(cache.get(parameters, EnumSet.allOf(Panorama.Channel.class)));
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final Panorama expected = computer.computePanorama(parameters);
+
+            assertTrue(cache.put(expected));
+
+            final Panorama actual = new PanoramaCache(directory, "hills", 1 << 20).get(parameters, EnumSet.allOf(Panorama.Channel.class));
+
+            assertNotNull(actual);
+            assertEquals(Panorama.Storage.DIRECT, actual.storage());
+            assertSamePanoramas(expected, actual);
+        }
+
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testPanoramaIsKeyedByElevationModel()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            assertTrue(new PanoramaCache(directory, "hills", 1 << 20).put(computer.computePanorama(parameters)));
+        }
+
+        assertNull(new PanoramaCache(directory, "other hills", 1 << 20).get(parameters, EnumSet.noneOf(Panorama.Channel.class)));
+        assertNotNull(new PanoramaCache(directory, "hills", 1 << 20).get(parameters, EnumSet.noneOf(Panorama.Channel.class)));
+    }
+
+    @Test
+    public void testMissingChannelsAreNotReturned()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final PanoramaCache cache = new PanoramaCache(directory, "hills", 1 << 20);
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            assertTrue(cache.put(computer.computePanorama(parameters, Panorama.Storage.HEAP, EnumSet.of(Panorama.Channel.DISTANCE))));
+        }
+
+        assertNull(cache.get(parameters, EnumSet.of(Panorama.Channel.DISTANCE, Panorama.Channel.SLOPE)));
+
+        final Panorama panorama = cache.get(parameters, EnumSet.of(Panorama.Channel.DISTANCE));
+        assertNotNull(panorama);
+        assertEquals(EnumSet.of(Panorama.Channel.DISTANCE), panorama.channels());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPanoramasAreEvicted()
+    {
+        final PanoramaParameters[] parameters = new PanoramaParameters[3];
+        for(int i = 0; i < parameters.length; i++)
+            parameters[i] = new PanoramaParameters(new GeoPoint(Math.toRadians(0.01), Math.toRadians(0.01)), 1200 + i, Math.toRadians(45), Math.toRadians(40), 20_000, 120, 40);
+
+        // Room for two panoramas only
+        final PanoramaCache cache = new PanoramaCache(directory, "hills", 2 * (64 + Panorama.Storage.DIRECT.bytes(parameters[0])) + 100);
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            assertTrue(cache.put(computer.computePanorama(parameters[0])));
+            assertTrue(cache.put(computer.computePanorama(parameters[1])));
+
+            // The first panorama is used again, the second one becomes the least recently used
+            for(File file : directory.listFiles())
+                file.setLastModified(file.lastModified() - 10_000);
+            assertNotNull(cache.get(parameters[0], EnumSet.allOf(Panorama.Channel.class)));
+
+            assertTrue(cache.put(computer.computePanorama(parameters[2])));
+        }
+
+        assertNotNull(cache.get(parameters[0], EnumSet.allOf(Panorama.Channel.class)));
+        assertNull(cache.get(parameters[1], EnumSet.allOf(Panorama.Channel.class)));
+        assertNotNull(cache.get(parameters[2], EnumSet.allOf(Panorama.Channel.class)));
+    }
+
+    @Test
+    public void testCorruptedFileIsIgnored() throws IOException
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final PanoramaCache cache = new PanoramaCache(directory, "hills", 1 << 20);
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            assertTrue(cache.put(computer.computePanorama(parameters)));
+        }
+
+        final File file = directory.listFiles()[0];
+        try(RandomAccessFile f = new RandomAccessFile(file, "rw"))
+        {
+            f.setLength(f.length() - 1);
+        }
+
+        assertNull(cache.get(parameters, EnumSet.noneOf(Panorama.Channel.class)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyCacheFails()
+    {
+        new PanoramaCache(directory, "hills", 0);
+    }
+}
@@ -2,8 +2,14 @@ package ch.epfl.alpano;
 
 import static org.junit.Assert.*;
 
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import ch.epfl.alpano.dem.PyramidDiscreteElevationModel;
 import ch.epfl.alpano.dem.draw.DrawPanorama;
 import ch.epfl.test.Utils;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -11,6 +17,15 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleUnaryOperator;
 
 public class PanoramaComputerTest
 {
@@ -35,4 +50,525 @@ public class PanoramaComputerTest
 
         Utils.testAreSame(expected, actual);
     }
+
+    @Test
+    public void testSuccessiveComputationsAreIdentical()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final Panorama first = computer.computePanorama(parameters);
+            final Panorama second = computer.computePanorama(parameters);
+
+            assertSamePanoramas(first, second);
+        }
+    }
+
+    @Test
+    public void testRootsMatchMath2RootSearch()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final ContinuousElevationModel dem = createHillyDEM();
+
+        try(PanoramaComputer computer = new PanoramaComputer(dem))
+        {
+            final Panorama panorama = computer.computePanorama(parameters);
+
+            for(int x = 0; x < parameters.width(); x++)
+            {
+                final ElevationProfile profile = new ElevationProfile(dem, parameters.observerPosition(), parameters.azimuthForX(x), parameters.maxDistance());
+
+                double lastRoot = 0;
+
+                for(int y = parameters.height() - 1; y >= 0; y--)
+                {
+                    final DoubleUnaryOperator f = PanoramaComputer.rayToGroundDistance(profile, parameters.observerElevation(), Math.tan(parameters.altitudeForY(y)));
+                    final double interval = Math2.firstIntervalContainingRoot(f, lastRoot, parameters.maxDistance() - 64, 64);
+
+                    if(interval == Double.POSITIVE_INFINITY)
+                    {
+                        for(int y1 = y; y1 >= 0; y1--)
+                            assertEquals(Float.POSITIVE_INFINITY, panorama.distanceAt(x, y1), 0);
+
+                        break;
+                    }
+
+                    lastRoot = Math2.improveRoot(f, interval, interval + 64, 4);
+
+                    assertEquals((float) (lastRoot / Math.cos(parameters.altitudeForY(y))), panorama.distanceAt(x, y), 0);
+                    assertEquals((float) profile.elevationAt(lastRoot), panorama.elevationAt(x, y), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAdaptiveMarchingMatchesNiesenReference() throws Exception
+    {
+        // The tile is not part of the repository
+        Assume.assumeTrue(new File("N46E007.hgt").isFile());
+
+        try(DiscreteElevationModel dem = new HgtDiscreteElevationModel(new File("N46E007.hgt")))
+        {
+            final ContinuousElevationModel cDEM = new ContinuousElevationModel(dem);
+
+            try(PanoramaComputer computer = new PanoramaComputer(cDEM, cDEM.maxSlope()))
+            {
+                Utils.testAreSame(ImageIO.read(new File("res/expected/niesen.png")), DrawPanorama.draw(computer));
+            }
+        }
+    }
+
+    @Test
+    public void testAdaptiveMarchingMatchesFixedSteps()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final AtomicLong fixedSamples = new AtomicLong(), adaptiveSamples = new AtomicLong();
+
+        final ContinuousElevationModel hills = createHillyDEM();
+
+        // The slope of the hilly terrain is below 1 inside of the extent
+        try(PanoramaComputer fixed = new PanoramaComputer(createHillyDEM(fixedSamples)); PanoramaComputer adaptive = new PanoramaComputer(createHillyDEM(adaptiveSamples), 1); PanoramaComputer bounded = new PanoramaComputer(hills, hills.maxSlope()))
+        {
+            final Panorama expected = fixed.computePanorama(parameters);
+
+            assertSamePanoramas(expected, adaptive.computePanorama(parameters));
+            assertSamePanoramas(expected, bounded.computePanorama(parameters));
+
+            assertTrue(adaptiveSamples.get() < fixedSamples.get());
+        }
+    }
+
+    @Test
+    public void testPyramidMarchingMatchesFixedSteps()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final AtomicLong fixedSamples = new AtomicLong(), pyramidSamples = new AtomicLong();
+
+        final PyramidDiscreteElevationModel pyramid = new PyramidDiscreteElevationModel(createHillyDiscreteDEM(pyramidSamples));
+        pyramidSamples.set(0);
+
+        try(PanoramaComputer fixed = new PanoramaComputer(createHillyDEM(fixedSamples)); PanoramaComputer skipping = new PanoramaComputer(new ContinuousElevationModel(pyramid)); PanoramaComputer both = new PanoramaComputer(new ContinuousElevationModel(pyramid), 1))
+        {
+            final Panorama expected = fixed.computePanorama(parameters);
+
+            assertSamePanoramas(expected, skipping.computePanorama(parameters));
+
+            assertTrue(pyramidSamples.get() < fixedSamples.get());
+
+            assertSamePanoramas(expected, both.computePanorama(parameters));
+        }
+    }
+
+    @Test
+    public void testPanCopiesOverlappingColumns()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final PanoramaParameters panned = new PanoramaParameters(parameters.observerPosition(), parameters.observerElevation(), parameters.centerAzimuth() + 10 * parameters.horizontalFieldOfView() / (parameters.width() - 1), parameters.horizontalFieldOfView(), parameters.maxDistance(), parameters.width(), parameters.height());
+        final AtomicLong fullSamples = new AtomicLong(), panSamples = new AtomicLong();
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()); PanoramaComputer full = new PanoramaComputer(createHillyDEM(fullSamples)); PanoramaComputer pan = new PanoramaComputer(createHillyDEM(panSamples)))
+        {
+            final Panorama previous = computer.computePanorama(parameters);
+            final Panorama expected = full.computePanorama(panned);
+            final Panorama actual = pan.computePanorama(panned, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), previous);
+
+            // The copied columns are the ones the full computation marches
+            assertSamePanoramas(expected, actual);
+
+            assertTrue(panSamples.get() * 5 < fullSamples.get());
+        }
+    }
+
+    @Test
+    public void testAlignedPanCopiesOverlappingColumns()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final double delta = parameters.horizontalFieldOfView() / (parameters.width() - 1);
+        final PanoramaParameters panned = new PanoramaParameters(parameters.observerPosition(), parameters.observerElevation(), parameters.centerAzimuth() + 10.3 * delta, parameters.horizontalFieldOfView(), parameters.maxDistance(), parameters.width(), parameters.height());
+        final AtomicLong fullSamples = new AtomicLong(), panSamples = new AtomicLong();
+
+        final PanoramaParameters aligned = PanoramaComputer.alignedParameters(panned, parameters);
+
+        assertEquals(parameters.centerAzimuth() + 10 * delta, aligned.centerAzimuth(), 1e-12);
+        assertEquals(panned.width(), aligned.width());
+        assertEquals(parameters, PanoramaComputer.alignedParameters(parameters, parameters));
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()); PanoramaComputer full = new PanoramaComputer(createHillyDEM(fullSamples)); PanoramaComputer pan = new PanoramaComputer(createHillyDEM(panSamples)))
+        {
+            final Panorama previous = computer.computePanorama(parameters);
+
+            assertSamePanoramas(full.computePanorama(aligned), pan.computePanorama(aligned, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), previous));
+            assertTrue(panSamples.get() * 5 < fullSamples.get());
+        }
+    }
+
+    @Test
+    public void testPanByFractionOfColumnComputesAllColumns()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final PanoramaParameters panned = new PanoramaParameters(parameters.observerPosition(), parameters.observerElevation(), parameters.centerAzimuth() + 10.5 * parameters.horizontalFieldOfView() / (parameters.width() - 1), parameters.horizontalFieldOfView(), parameters.maxDistance(), parameters.width(), parameters.height());
+        final PanoramaParameters nudged = new PanoramaParameters(parameters.observerPosition(), parameters.observerElevation(), parameters.centerAzimuth() + 10.1 * parameters.horizontalFieldOfView() / (parameters.width() - 1), parameters.horizontalFieldOfView(), parameters.maxDistance(), parameters.width(), parameters.height());
+        final PanoramaParameters raised = new PanoramaParameters(parameters.observerPosition(), parameters.observerElevation() + 1, parameters.centerAzimuth(), parameters.horizontalFieldOfView(), parameters.maxDistance(), parameters.width(), parameters.height());
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final Panorama previous = computer.computePanorama(parameters);
+
+            assertSamePanoramas(computer.computePanorama(panned), computer.computePanorama(panned, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), previous));
+            assertSamePanoramas(computer.computePanorama(nudged), computer.computePanorama(nudged, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), previous));
+            assertSamePanoramas(computer.computePanorama(raised), computer.computePanorama(raised, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), previous));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdaptiveMarchingFailsWithInvalidSlope()
+    {
+        new PanoramaComputer(createHillyDEM(), 0).close();
+    }
+
+    @Test
+    public void testDirectStoragesMatchHeapStorage()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final Panorama heap = computer.computePanorama(parameters);
+            final Panorama direct = computer.computePanorama(parameters, Panorama.Storage.DIRECT);
+            final Panorama half = computer.computePanorama(parameters, Panorama.Storage.DIRECT_HALF);
+
+            assertSamePanoramas(heap, direct);
+            assertTrue(direct.buffer().isDirect());
+
+            for(int x = 0; x < parameters.width(); x++)
+            {
+                for(int y = 0; y < parameters.height(); y++)
+                {
+                    assertEquals(heap.distanceAt(x, y), half.distanceAt(x, y), 0);
+                    assertEquals(heap.longitudeAt(x, y), half.longitudeAt(x, y), 0);
+                    assertEquals(heap.latitudeAt(x, y), half.latitudeAt(x, y), 0);
+                    assertEquals(heap.elevationAt(x, y), half.elevationAt(x, y), 1);
+                    assertEquals(heap.slopeAt(x, y), half.slopeAt(x, y), 1e-3);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSelectedChannelsMatchFullComputation()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final Panorama full = computer.computePanorama(parameters);
+            final Panorama outline = computer.computePanorama(parameters, Panorama.Storage.DIRECT, EnumSet.of(Panorama.Channel.DISTANCE, Panorama.Channel.ELEVATION));
+
+            assertEquals(EnumSet.of(Panorama.Channel.DISTANCE, Panorama.Channel.ELEVATION), outline.channels());
+            assertEquals(parameters.width() * parameters.height() * 8, outline.buffer().remaining());
+
+            for(int x = 0; x < parameters.width(); x++)
+            {
+                for(int y = 0; y < parameters.height(); y++)
+                {
+                    assertEquals(full.distanceAt(x, y), outline.distanceAt(x, y), 0);
+                    assertEquals(full.elevationAt(x, y), outline.elevationAt(x, y), 0);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingChannelCannotBeRead()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            computer.computePanorama(createPanoramaParameters(), Panorama.Storage.HEAP, EnumSet.of(Panorama.Channel.DISTANCE)).slopeAt(0, 0);
+        }
+    }
+
+    @Test
+    public void testSharedPoolIsNotShutDown()
+    {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM(), pool))
+        {
+            computer.computePanorama(createPanoramaParameters());
+        }
+
+        assertFalse(pool.isShutdown());
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void testAsyncComputationMatchesSynchronousOne()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            assertSamePanoramas(computer.computePanorama(parameters), computer.computePanoramaAsync(parameters).join());
+        }
+    }
+
+    @Test
+    public void testProgressiveComputationMatchesSynchronousOne()
+    {
+        final PanoramaParameters parameters = createPanoramaParameters();
+        final List<Panorama> previews = new ArrayList<>();
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final Panorama expected = computer.computePanorama(parameters);
+
+            assertSamePanoramas(expected, computer.computePanoramaAsync(parameters, 8, previews::add).join());
+
+            assertEquals(3, previews.size());
+
+            final Panorama coarse = previews.get(0);
+            for(int x = 0; x < parameters.width(); x++)
+                for(int y = 0; y < parameters.height(); y++)
+                    assertEquals(expected.distanceAt(x - x % 8, y), coarse.distanceAt(x, y), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProgressiveComputationFailsWithInvalidStep()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            computer.computePanoramaAsync(createPanoramaParameters(), 6, p -> {});
+        }
+    }
+
+    @Test
+    public void testAdaptiveSupersamplingIsCloseToFullSupersampling()
+    {
+        final PanoramaParameters base = createPanoramaParameters();
+        final PanoramaParameters parameters = new PanoramaParameters(base.observerPosition(), base.observerElevation(), base.centerAzimuth(), base.horizontalFieldOfView(), base.maxDistance(), base.width() << 2, base.height() << 2);
+        final AtomicLong samples = new AtomicLong();
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM(samples)))
+        {
+            final Panorama full = computer.computePanorama(parameters, Panorama.Storage.HEAP, EnumSet.of(Panorama.Channel.DISTANCE));
+            final long fullSamples = samples.getAndSet(0);
+
+            final Panorama adaptive = computer.computeAdaptivePanorama(parameters, Panorama.Storage.HEAP, EnumSet.of(Panorama.Channel.DISTANCE), 2);
+
+            assertTrue(samples.get() < fullSamples * 3 / 4);
+
+            // The pixels are averages of the same distances, except inside the pixels away from the edges
+            double error = 0;
+            for(int x = 0; x < base.width(); x++)
+                for(int y = 0; y < base.height(); y++)
+                    error += Math.abs(meanDistance(full, x, y, 4) - meanDistance(adaptive, x, y, 4));
+
+            assertTrue(error / (base.width() * base.height()) < PanoramaComputer.EDGE_DISTANCE / 10);
+        }
+    }
+
+    @Test
+    public void testAdaptiveSupersamplingRefinesEdges()
+    {
+        final PanoramaParameters base = createPanoramaParameters();
+        final PanoramaParameters parameters = new PanoramaParameters(base.observerPosition(), base.observerElevation(), base.centerAzimuth(), base.horizontalFieldOfView(), base.maxDistance(), base.width() << 1, base.height() << 1);
+
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            final Panorama adaptive = computer.computeAdaptivePanorama(parameters, Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), 1);
+
+            int refined = 0, filled = 0;
+            for(int x = 0; x < base.width(); x++)
+            {
+                for(int y = 0; y < base.height(); y++)
+                {
+                    final float middle = adaptive.distanceAt(2 * x + 1, 2 * y + 1);
+                    final boolean uniform = adaptive.distanceAt(2 * x, 2 * y) == middle && adaptive.distanceAt(2 * x + 1, 2 * y) == middle && adaptive.distanceAt(2 * x, 2 * y + 1) == middle;
+
+                    if(uniform)
+                    {
+                        filled++;
+                        assertEquals(adaptive.slopeAt(2 * x + 1, 2 * y + 1), adaptive.slopeAt(2 * x, 2 * y), 0);
+                    }
+                    else
+                    {
+                        refined++;
+                    }
+                }
+            }
+
+            assertTrue(refined > 0 && filled > refined);
+        }
+    }
+
+    @Test
+    public void testAdaptiveSupersamplingWithoutSupersamplingIsFullComputation()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            assertSamePanoramas(computer.computePanorama(createPanoramaParameters()), computer.computeAdaptivePanorama(createPanoramaParameters(), Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), 0));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdaptiveSupersamplingFailsWithoutDistance()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            computer.computeAdaptivePanorama(createPanoramaParameters(), Panorama.Storage.HEAP, EnumSet.of(Panorama.Channel.SLOPE), 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAdaptiveSupersamplingFailsWithIndivisibleSize()
+    {
+        try(PanoramaComputer computer = new PanoramaComputer(createHillyDEM()))
+        {
+            computer.computeAdaptivePanorama(createPanoramaParameters(), Panorama.Storage.HEAP, EnumSet.allOf(Panorama.Channel.class), 4);
+        }
+    }
+
+    @Test
+    public void testCancelledComputationStops()
+    {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        final AtomicLong samples = new AtomicLong();
+        final AtomicReference<CompletableFuture<Panorama>> future = new AtomicReference<>();
+
+        final ContinuousElevationModel countingDEM = new ContinuousElevationModel(new DiscreteElevationModel()
+        {
+            private final Interval2D extent = new Interval2D(new Interval1D(0, 3600), new Interval1D(0, 3600));
+
+            @Override
+            public Interval2D extent()
+            {
+                return extent;
+            }
+
+            @Override
+            public double elevationSample(int x, int y)
+            {
+                if(samples.incrementAndGet() >= 10_000)
+                {
+                    // The computation may reach this point before its future is known
+                    CompletableFuture<Panorama> f;
+                    while((f = future.get()) == null)
+                        Thread.yield();
+
+                    f.cancel(false);
+                }
+
+                return 500;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        });
+
+        try(PanoramaComputer computer = new PanoramaComputer(countingDEM, pool))
+        {
+            future.set(new CompletableFuture<>());
+            computer.computePanorama(createPanoramaParameters());
+            final long total = samples.getAndSet(0);
+
+            future.set(null);
+            future.set(computer.computePanoramaAsync(createPanoramaParameters()));
+            assertTrue(pool.awaitQuiescence(1, TimeUnit.MINUTES));
+
+            assertTrue(future.get().isCancelled());
+            assertTrue(samples.get() < total / 2);
+        }
+
+        pool.shutdown();
+    }
+
+    public static PanoramaParameters createPanoramaParameters()
+    {
+        return new PanoramaParameters(new GeoPoint(Math.toRadians(0.01), Math.toRadians(0.01)), 1200, Math.toRadians(45), Math.toRadians(40), 20_000, 120, 40);
+    }
+
+    public static ContinuousElevationModel createHillyDEM()
+    {
+        return createHillyDEM(new AtomicLong());
+    }
+
+    public static ContinuousElevationModel createHillyDEM(AtomicLong samples)
+    {
+        return new ContinuousElevationModel(createHillyDiscreteDEM(samples));
+    }
+
+    public static DiscreteElevationModel createHillyDiscreteDEM(AtomicLong samples)
+    {
+        return createHillyDiscreteDEM(samples, 0, 0);
+    }
+
+    /**
+     * Returns a one degree model of rolling hills, counting the samples read.
+     * @param samples the counter of the samples
+     * @param longitude the longitude of the west border (degrees)
+     * @param latitude the latitude of the south border (degrees)
+     */
+    public static DiscreteElevationModel createHillyDiscreteDEM(AtomicLong samples, int longitude, int latitude)
+    {
+        return new DiscreteElevationModel()
+        {
+            private final Interval2D extent = new Interval2D(new Interval1D(longitude * SAMPLES_PER_DEGREE, (longitude + 1) * SAMPLES_PER_DEGREE),
+                    new Interval1D(latitude * SAMPLES_PER_DEGREE, (latitude + 1) * SAMPLES_PER_DEGREE));
+
+            @Override
+            public Interval2D extent()
+            {
+                return extent;
+            }
+
+            @Override
+            public double elevationSample(int x, int y)
+            {
+                samples.incrementAndGet();
+
+                return 800 * (1 + Math.sin(x / 40.0) * Math.cos(y / 55.0));
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+    }
+
+    /**
+     * Returns the mean distance of the samples of a pixel of a supersampled panorama, the sky being at the maximal distance.
+     */
+    private static double meanDistance(Panorama panorama, int x, int y, int samples)
+    {
+        double sum = 0;
+        for(int i = 0; i < samples; i++)
+            for(int j = 0; j < samples; j++)
+                sum += Math.min(panorama.distanceAt(x * samples + i, y * samples + j), panorama.parameters().maxDistance());
+
+        return sum / (samples * samples);
+    }
+
+    static void assertSamePanoramas(Panorama expected, Panorama actual)
+    {
+        final PanoramaParameters parameters = expected.parameters();
+
+        for(int x = 0; x < parameters.width(); x++)
+        {
+            for(int y = 0; y < parameters.height(); y++)
+            {
+                assertEquals(expected.distanceAt(x, y), actual.distanceAt(x, y), 0);
+                assertEquals(expected.longitudeAt(x, y), actual.longitudeAt(x, y), 0);
+                assertEquals(expected.latitudeAt(x, y), actual.latitudeAt(x, y), 0);
+                assertEquals(expected.elevationAt(x, y), actual.elevationAt(x, y), 0);
+                assertEquals(expected.slopeAt(x, y), actual.slopeAt(x, y), 0);
+            }
+        }
+    }
 }
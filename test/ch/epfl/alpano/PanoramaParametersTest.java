@@ -106,4 +106,17 @@ public class PanoramaParametersTest
     {
         createPanorama().yForAltitude(-createPanorama().verticalFieldOfView() / 2.0 - 0.1);
     }
+
+    @Test
+    public void testEqualsAndHashCode()
+    {
+        final PanoramaParameters parameters = createPanorama();
+
+        assertEquals(parameters, createPanorama());
+        assertEquals(parameters.hashCode(), createPanorama().hashCode());
+
+        assertNotEquals(parameters, new PanoramaParameters(new GeoPoint(Math.toRadians(6.8087), Math.toRadians(47.0085)), 1381, Math.toRadians(162), Math.toRadians(27), 300, 2500, 800));
+        assertNotEquals(parameters, new PanoramaParameters(new GeoPoint(Math.toRadians(6.8087), Math.toRadians(47.0085)), 1380, Math.toRadians(162), Math.toRadians(27), 300, 2500, 801));
+        assertNotEquals(parameters, null);
+    }
 }
@@ -2,6 +2,9 @@ package ch.epfl.alpano;
 
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import static org.junit.Assert.*;
 
 public class PanoramaTest
@@ -109,4 +112,75 @@ public class PanoramaTest
         builder.setDistanceAt(0, 100, 0);
         builder.setDistanceAt(2499, 799, 0);
     }
+
+    @Test
+    public void testDirectBufferLayout()
+    {
+        final PanoramaParameters parameters = new PanoramaParameters(new GeoPoint(0, 0), 1000, 0, Math.toRadians(60), 1000, 4, 3);
+        final Panorama panorama = new Panorama.Builder(parameters, Panorama.Storage.DIRECT_HALF).setDistanceAt(1, 2, 42).setLatitudeAt(3, 0, 0.5f).setSlopeAt(2, 1, 0.25f).build();
+
+        final ByteBuffer buffer = panorama.buffer();
+        final int size = 12;
+
+        assertEquals(Panorama.Storage.DIRECT_HALF.bytes(parameters), buffer.remaining());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        assertEquals(Float.POSITIVE_INFINITY, buffer.getFloat(0), 0);
+        assertEquals(42, buffer.getFloat(4 * parameters.linearSampleIndex(1, 2)), 0);
+        assertEquals(0.5f, buffer.getFloat(4 * (2 * size + parameters.linearSampleIndex(3, 0))), 0);
+        assertEquals(0.25f, FloatChannel.halfToFloat(buffer.getShort(12 * size + 2 * (size + parameters.linearSampleIndex(2, 1)))), 0);
+        assertEquals(0.25f, panorama.slopeAt(2, 1), 0);
+    }
+
+    @Test
+    public void testBuilderResetsGivenBuffer()
+    {
+        final PanoramaParameters parameters = new PanoramaParameters(new GeoPoint(0, 0), 1000, 0, Math.toRadians(60), 1000, 4, 3);
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Panorama.Storage.DIRECT.bytes(parameters) + 8);
+
+        for(int i = 0; i < buffer.capacity(); i++)
+            buffer.put(i, (byte) 7);
+
+        buffer.position(8);
+
+        final Panorama panorama = new Panorama.Builder(parameters, Panorama.Storage.DIRECT, buffer).setElevationAt(0, 0, 1234).build();
+
+        assertEquals(7, buffer.get(0));
+        assertEquals(Float.POSITIVE_INFINITY, panorama.distanceAt(3, 2), 0);
+        assertEquals(0, panorama.longitudeAt(3, 2), 0);
+        assertEquals(1234, panorama.elevationAt(0, 0), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderFailsWithTooSmallBuffer()
+    {
+        final PanoramaParameters parameters = new PanoramaParameters(new GeoPoint(0, 0), 1000, 0, Math.toRadians(60), 1000, 4, 3);
+
+        new Panorama.Builder(parameters, Panorama.Storage.DIRECT, ByteBuffer.allocateDirect(100));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testHeapPanoramaHasNoBuffer()
+    {
+        createPanoramaBuilder().build().buffer();
+    }
+
+    @Test
+    public void testHalfFloatConversion()
+    {
+        final float[] exact = {0, -0f, 1, -2, 0.5f, 65504, 2048, 0x1p-14f, 0x1p-24f, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
+
+        for(float value : exact)
+            assertEquals(value, FloatChannel.halfToFloat(FloatChannel.floatToHalf(value)), 0);
+
+        assertEquals(2050, FloatChannel.halfToFloat(FloatChannel.floatToHalf(2049.5f)), 0);
+        assertEquals(1234, FloatChannel.halfToFloat(FloatChannel.floatToHalf(1234.2f)), 0);
+        assertEquals(0, FloatChannel.halfToFloat(FloatChannel.floatToHalf(0x1p-25f)), 0);
+        assertEquals(0x1p-23f, FloatChannel.halfToFloat(FloatChannel.floatToHalf(0x1.8p-24f)), 0);
+        assertEquals(0x1p-23f, FloatChannel.halfToFloat(FloatChannel.floatToHalf(0x1.4p-23f)), 0);
+        assertEquals(Float.POSITIVE_INFINITY, FloatChannel.halfToFloat(FloatChannel.floatToHalf(70000)), 0);
+        assertTrue(Float.isNaN(FloatChannel.halfToFloat(FloatChannel.floatToHalf(Float.NaN))));
+
+        for(float value = 0; value < 4000; value += 0.37f)
+            assertEquals(value, FloatChannel.halfToFloat(FloatChannel.floatToHalf(value)), value / 2048);
+    }
 }
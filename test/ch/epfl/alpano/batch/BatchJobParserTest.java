@@ -0,0 +1,125 @@
+package ch.epfl.alpano.batch;
+
+import ch.epfl.alpano.gui.PredefinedPanoramas;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchJobParserTest
+{
+    private static final String HEADER = "observer_longitude,observer_latitude,observer_elevation,center_azimuth,horizontal_field_of_view,max_distance,width,height,super_sampling_exponent,painter";
+
+    @Test
+    public void testCsvJobs() throws IOException
+    {
+        final String csv = "# Catalogue\n" +
+                "name," + HEADER + "\n" +
+                "\n" +
+                "niesen,76500,467300,600,180,110,300,2500,800,0,0\n" +
+                ",68087,470085,1380,162,27,300,2500,800,0,0\n";
+
+        final List<BatchJob> jobs = BatchJobParser.readCsv(new StringReader(csv));
+
+        assertEquals(2, jobs.size());
+        assertEquals("niesen", jobs.get(0).name());
+        assertEquals(PredefinedPanoramas.NIESEN, jobs.get(0).parameters());
+        assertEquals("panorama-00002", jobs.get(1).name());
+        assertEquals(PredefinedPanoramas.ALPES_JURA, jobs.get(1).parameters());
+    }
+
+    @Test
+    public void testCsvColumnsInAnyOrder() throws IOException
+    {
+        final String csv = "PAINTER,super_sampling_exponent,height,width,max_distance,horizontal_field_of_view,center_azimuth,observer_elevation,observer_latitude,observer_longitude\n" +
+                "0,0,800,2500,300,110,180,600,467300,76500\n";
+
+        assertEquals(PredefinedPanoramas.NIESEN, BatchJobParser.readCsv(new StringReader(csv)).get(0).parameters());
+    }
+
+    @Test(expected = IOException.class)
+    public void testCsvMissingParameter() throws IOException
+    {
+        BatchJobParser.readCsv(new StringReader("observer_longitude,observer_latitude\n76500,467300\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCsvWrongFieldCount() throws IOException
+    {
+        BatchJobParser.readCsv(new StringReader(HEADER + "\n76500,467300,600\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCsvDuplicateNames() throws IOException
+    {
+        BatchJobParser.readCsv(new StringReader("name," + HEADER + "\na,76500,467300,600,180,110,300,2500,800,0,0\na,76500,467300,600,180,110,300,2500,800,0,0\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCsvNameOutsideDirectory() throws IOException
+    {
+        BatchJobParser.readCsv(new StringReader("name," + HEADER + "\n../a,76500,467300,600,180,110,300,2500,800,0,0\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCsvValueOutOfRange() throws IOException
+    {
+        BatchJobParser.readCsv(new StringReader(HEADER + "\n76500,467300,600,180,110,300,2500,800,0,3\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCsvHeightAboveFieldOfView() throws IOException
+    {
+        // Valid on its own, but 800 pixels exceed the 170° vertical field of view of a 360° wide panorama of 300 pixels
+        BatchJobParser.readCsv(new StringReader(HEADER + "\n76500,467300,600,180,360,300,300,800,0,0\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCsvUnknownColumn() throws IOException
+    {
+        BatchJobParser.readCsv(new StringReader("title," + HEADER + "\nNiesen,76500,467300,600,180,110,300,2500,800,0,0\n"));
+    }
+
+    @Test
+    public void testJsonJobs() throws IOException
+    {
+        final String json = "[\n" +
+                "  {\"name\": \"niesen \\\"east\\\"\", \"observer_longitude\": 76500, \"observer_latitude\": 467300, \"observer_elevation\": 600, \"center_azimuth\": 180,\n" +
+                "   \"horizontal_field_of_view\": 110, \"max_distance\": 300, \"width\": 2500, \"height\": 800, \"super_sampling_exponent\": 0, \"painter\": 0},\n" +
+                "  {\"OBSERVER_LONGITUDE\": 68087, \"observer_latitude\": 470085, \"observer_elevation\": 1380, \"center_azimuth\": 162,\n" +
+                "   \"horizontal_field_of_view\": 27, \"max_distance\": 300, \"width\": 2500, \"height\": 800, \"super_sampling_exponent\": 0, \"painter\": 0}\n" +
+                "]";
+
+        final List<BatchJob> jobs = BatchJobParser.readJson(new StringReader(json));
+
+        assertEquals(2, jobs.size());
+        assertEquals("niesen \"east\"", jobs.get(0).name());
+        assertEquals(PredefinedPanoramas.NIESEN, jobs.get(0).parameters());
+        assertEquals("panorama-00002", jobs.get(1).name());
+        assertEquals(PredefinedPanoramas.ALPES_JURA, jobs.get(1).parameters());
+
+        assertTrue(BatchJobParser.readJson(new StringReader(" [ ] ")).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testJsonNonIntegerValue() throws IOException
+    {
+        BatchJobParser.readJson(new StringReader("[{\"observer_longitude\": 7.65}]"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testJsonParentDirectoryName() throws IOException
+    {
+        BatchJobParser.readJson(new StringReader("[{\"name\": \"..\", \"observer_longitude\": 76500, \"observer_latitude\": 467300, \"observer_elevation\": 600, \"center_azimuth\": 180, "
+                + "\"horizontal_field_of_view\": 110, \"max_distance\": 300, \"width\": 2500, \"height\": 800, \"super_sampling_exponent\": 0, \"painter\": 0}]"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testJsonUnterminatedArray() throws IOException
+    {
+        BatchJobParser.readJson(new StringReader("[{\"name\": \"a\"}"));
+    }
+}
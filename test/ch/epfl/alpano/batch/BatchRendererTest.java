@@ -0,0 +1,161 @@
+package ch.epfl.alpano.batch;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.PanoramaComputerTest;
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.gui.PanoramaUserParameters;
+import ch.epfl.alpano.summit.Summit;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class BatchRendererTest
+{
+    /**
+     * Returns a one degree model of rolling hills around 46.5° N 7.5° E.
+     */
+    private static ContinuousElevationModel hills()
+    {
+        return new ContinuousElevationModel(PanoramaComputerTest.createHillyDiscreteDEM(new AtomicLong(), 7, 46));
+    }
+
+    @Test
+    public void testBatchIsWrittenAndReported() throws IOException, InterruptedException
+    {
+        final File directory = Files.createTempDirectory("batch").toFile();
+
+        try
+        {
+            final BatchJob colored = new BatchJob("colored", new PanoramaUserParameters(7_5000, 46_5000, 1500, 90, 60, 10, 60, 20, 1, 0));
+            final BatchJob outlines = new BatchJob("outlines", new PanoramaUserParameters(7_5000, 46_5000, 1500, 270, 60, 10, 60, 20, 0, 2));
+            final BatchJob outOfModel = new BatchJob("outside", new PanoramaUserParameters(11_0000, 47_5000, 1500, 0, 40, 10, 40, 10, 0, 1));
+
+            final BatchRenderer.Report report;
+            try(BatchRenderer renderer = new BatchRenderer(hills(), Collections.singletonList(new Summit("HILL", new GeoPoint(Math.toRadians(7.55), Math.toRadians(46.5)), 1200)), directory))
+            {
+                report = renderer.render(Arrays.asList(colored, outlines, outOfModel));
+            }
+
+            assertEquals(3, report.jobs());
+            assertEquals(3, report.rendered());
+            assertTrue(report.failures().isEmpty());
+            assertEquals(3, report.compute().count());
+            assertEquals(3, report.paint().count());
+            assertEquals(3, report.encode().count());
+            assertTrue(report.panoramasPerMinute() > 0);
+            assertTrue(report.compute().maxMillis() >= report.compute().meanMillis());
+
+            // The images have the display size, whatever the supersampling
+            final BufferedImage image = ImageIO.read(new File(directory, "colored.png"));
+            assertEquals(60, image.getWidth());
+            assertEquals(20, image.getHeight());
+
+            assertTrue(new File(directory, "outlines.png").isFile());
+            assertTrue(new File(directory, "outside.png").isFile());
+        }
+        finally
+        {
+            for(File file : directory.listFiles())
+                file.delete();
+
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testAdaptiveSupersamplingIsRendered() throws IOException, InterruptedException
+    {
+        final File directory = Files.createTempDirectory("batch").toFile();
+
+        try
+        {
+            final BatchJob colored = new BatchJob("colored", new PanoramaUserParameters(7_5000, 46_5000, 1500, 90, 60, 10, 60, 20, 2, 0));
+
+            final BatchRenderer.Report report;
+            try(BatchRenderer renderer = new BatchRenderer(hills(), Collections.emptyList(), directory, true))
+            {
+                report = renderer.render(Collections.singletonList(colored));
+            }
+
+            assertTrue(report.failures().isEmpty());
+
+            final BufferedImage image = ImageIO.read(new File(directory, "colored.png"));
+            assertEquals(60, image.getWidth());
+            assertEquals(20, image.getHeight());
+        }
+        finally
+        {
+            for(File file : directory.listFiles())
+                file.delete();
+
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testErrorStopsTheBatch() throws IOException, InterruptedException
+    {
+        final File directory = Files.createTempDirectory("batch").toFile();
+        final DiscreteElevationModel hills = PanoramaComputerTest.createHillyDiscreteDEM(new AtomicLong(), 7, 46);
+        final Error error = new Error("Corrupted.");
+
+        // The west half of the model throws an error, as if the memory were exhausted
+        final DiscreteElevationModel failing = new DiscreteElevationModel()
+        {
+            @Override
+            public Interval2D extent()
+            {
+                return hills.extent();
+            }
+
+            @Override
+            public double elevationSample(int x, int y)
+            {
+                if(x < hills.extent().iX().includedFrom() + hills.extent().iX().size() / 2)
+                    throw error;
+
+                return hills.elevationSample(x, y);
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+
+        try
+        {
+            final BatchJob west = new BatchJob("west", new PanoramaUserParameters(7_5000, 46_5000, 1500, 270, 60, 10, 60, 20, 0, 0));
+            final BatchJob east = new BatchJob("east", new PanoramaUserParameters(7_5000, 46_5000, 1500, 90, 60, 10, 60, 20, 0, 0));
+
+            final BatchRenderer.Report report;
+            try(BatchRenderer renderer = new BatchRenderer(new ContinuousElevationModel(failing), Collections.emptyList(), directory))
+            {
+                report = renderer.render(Arrays.asList(west, east));
+            }
+
+            assertEquals(0, report.rendered());
+            assertTrue(report.failures().get("west").endsWith(error.getMessage()));
+            assertTrue(report.failures().get("east").contains("stopped"));
+            assertFalse(new File(directory, "east.png").exists());
+        }
+        finally
+        {
+            for(File file : directory.listFiles())
+                file.delete();
+
+            directory.delete();
+        }
+    }
+}
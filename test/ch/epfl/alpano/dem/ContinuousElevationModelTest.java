@@ -1,5 +1,8 @@
 package ch.epfl.alpano.dem;
 
+import ch.epfl.alpano.Distance;
+import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.PanoramaComputerTest;
 import ch.epfl.alpano.dem.draw.DrawDEM;
 import ch.epfl.test.Utils;
 import org.junit.BeforeClass;
@@ -9,6 +12,9 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
 
 public class ContinuousElevationModelTest
 {
@@ -42,4 +48,27 @@ public class ContinuousElevationModelTest
 
         Utils.testAreSame(expected, actual);
     }
+
+    @Test
+    public void testMaxSlopeBoundsTheSlopeAcrossTheBorder()
+    {
+        final ContinuousElevationModel cDEM = PanoramaComputerTest.createHillyDEM();
+        final double maxSlope = cDEM.maxSlope();
+        final double step = 1; // meter
+        final Random random = new Random(0);
+
+        for(int i = 0; i < 100_000; i++)
+        {
+            // The points go slightly beyond the extent, from 0° to 1°
+            final double longitude = Math.toRadians(random.nextDouble() * 1.002 - 0.001), latitude = Math.toRadians(random.nextDouble() * 1.002 - 0.001);
+            final double azimuth = random.nextDouble() * Math2.PI2;
+
+            final double nextLongitude = longitude + Distance.toRadians(step) * Math.sin(azimuth) / Math.cos(latitude), nextLatitude = latitude + Distance.toRadians(step) * Math.cos(azimuth);
+
+            assertTrue(Math.abs(cDEM.elevationAt(nextLongitude, nextLatitude) - cDEM.elevationAt(longitude, latitude)) <= maxSlope * step * (1 + 1e-9));
+        }
+
+        // The elevation falls from up to 1600 m to 0 across the border
+        assertTrue(maxSlope > 1000 / Distance.toMeters(1 / DiscreteElevationModel.SAMPLES_PER_RADIAN));
+    }
 }
@@ -1,6 +1,8 @@
 package ch.epfl.alpano.dem;
 
 import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
 import ch.epfl.alpano.dem.draw.DrawElevationProfile;
 import ch.epfl.test.Utils;
 import org.junit.BeforeClass;
@@ -147,4 +149,41 @@ public class ElevationProfileTest
             {}
         }
     }
+
+    @Test
+    public void testPrimitiveAccessorsMatchPositionAt()
+    {
+        final DiscreteElevationModel dem = new DiscreteElevationModel()
+        {
+            @Override
+            public Interval2D extent()
+            {
+                return new Interval2D(new Interval1D(0, 7200), new Interval1D(0, 7200));
+            }
+
+            @Override
+            public double elevationSample(int x, int y)
+            {
+                return 1000 * (1 + Math.sin(x / 30.0) * Math.cos(y / 45.0));
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+
+        final ContinuousElevationModel cDEM = new ContinuousElevationModel(dem);
+        final ElevationProfile profile = new ElevationProfile(cDEM, new GeoPoint(Math.toRadians(0.5), Math.toRadians(0.5)), Math.toRadians(30), 50000);
+
+        for(double x = 0; x <= 50000; x += 137.5)
+        {
+            final GeoPoint position = profile.positionAt(x);
+
+            assertEquals(position.longitude(), profile.longitudeAt(x), 0);
+            assertEquals(position.latitude(), profile.latitudeAt(x), 0);
+            assertEquals(cDEM.elevationAt(position), profile.elevationAt(x), 0);
+            assertEquals(cDEM.slopeAt(position), profile.slopeAt(x), 0);
+        }
+    }
 }
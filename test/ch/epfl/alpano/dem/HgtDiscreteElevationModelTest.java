@@ -9,6 +9,14 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.Assert.*;
 
 public class HgtDiscreteElevationModelTest
 {
@@ -39,4 +47,88 @@ public class HgtDiscreteElevationModelTest
 
         Utils.testAreSame(expected, actual);
     }
+
+    @Test
+    public void testCachedSamplesAreIdentical() throws Exception
+    {
+        final File file = createSyntheticHgtFile("N46E007.hgt");
+
+        try(HgtDiscreteElevationModel direct = new HgtDiscreteElevationModel(file); HgtDiscreteElevationModel cached = new HgtDiscreteElevationModel(file, 4))
+        {
+            final Random random = new Random(0);
+
+            for(int i = 0; i < 100_000; i++)
+            {
+                final int x = 7 * 3600 + random.nextInt(3601), y = 46 * 3600 + random.nextInt(3601);
+                assertEquals(direct.elevationSample(x, y), cached.elevationSample(x, y), 0);
+            }
+
+            final int[] corners = {0, 3600};
+            for(int cx : corners)
+                for(int cy : corners)
+                    assertEquals(direct.elevationSample(7 * 3600 + cx, 46 * 3600 + cy), cached.elevationSample(7 * 3600 + cx, 46 * 3600 + cy), 0);
+
+            assertEquals(0, direct.cacheHits() + direct.cacheMisses());
+            assertTrue(cached.cacheMisses() > 0);
+            assertTrue(cached.cacheHits() + cached.cacheMisses() <= 100_004);
+        }
+    }
+
+    @Test
+    public void testCacheCountsTileLookups() throws Exception
+    {
+        final File file = createSyntheticHgtFile("N46E007.hgt");
+
+        try(HgtDiscreteElevationModel cached = new HgtDiscreteElevationModel(file, 2))
+        {
+            // The neighbouring samples are read from the last tile of the thread, without looking up the cache
+            for(int x = 0; x < 256; x++)
+                cached.elevationSample(7 * 3600 + x, 47 * 3600);
+
+            assertEquals(1, cached.cacheMisses());
+            assertEquals(0, cached.cacheHits());
+
+            cached.elevationSample(7 * 3600 + 256, 47 * 3600);
+            cached.elevationSample(7 * 3600, 47 * 3600);
+
+            assertEquals(2, cached.cacheMisses());
+            assertEquals(1, cached.cacheHits());
+        }
+    }
+
+    /**
+     * Creates a HGT file whose samples depend on their position.
+     * @param name the name of the file
+     * @return the file, in a temporary directory
+     */
+    private static File createSyntheticHgtFile(String name) throws IOException
+    {
+        final Path directory = Files.createTempDirectory("hgt");
+        directory.toFile().deleteOnExit();
+
+        return createSyntheticHgtFile(directory, name);
+    }
+
+    /**
+     * Creates a HGT file whose samples depend on their position.
+     * @param directory the directory of the file
+     * @param name the name of the file
+     * @return the file
+     */
+    static File createSyntheticHgtFile(Path directory, String name) throws IOException
+    {
+        final Path path = directory.resolve(name);
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            final ShortBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 3601L * 3601L * 2L).asShortBuffer();
+
+            for(int i = 0; i < 3601 * 3601; i++)
+                buffer.put(i, (short) ((i % 3601) * 7 - (i / 3601) * 3));
+        }
+
+        path.toFile().deleteOnExit();
+
+        return path.toFile();
+    }
 }
@@ -0,0 +1,136 @@
+package ch.epfl.alpano.dem;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+public class LazyHgtDiscreteElevationModelTest
+{
+    private static final int D = DiscreteElevationModel.SAMPLES_PER_DEGREE;
+
+    private static Path directory;
+
+    @BeforeClass
+    public static void createHgtFiles() throws IOException
+    {
+        directory = Files.createTempDirectory("hgt");
+        directory.toFile().deleteOnExit();
+
+        HgtDiscreteElevationModelTest.createSyntheticHgtFile(directory, "N46E007.hgt");
+        HgtDiscreteElevationModelTest.createSyntheticHgtFile(directory, "N46E008.hgt");
+        HgtDiscreteElevationModelTest.createSyntheticHgtFile(directory, "N47E009.hgt");
+
+        final File other = directory.resolve("alps.txt").toFile();
+        Files.write(other.toPath(), new byte[] {1, 2, 3});
+        other.deleteOnExit();
+    }
+
+    @Test
+    public void testFilesAreDiscoveredByName() throws Exception
+    {
+        try(LazyHgtDiscreteElevationModel dem = new LazyHgtDiscreteElevationModel(directory.toFile(), 2))
+        {
+            assertEquals(new Interval2D(new Interval1D(7 * D, 10 * D), new Interval1D(46 * D, 48 * D)), dem.extent());
+            assertEquals(0, dem.openTiles());
+        }
+    }
+
+    @Test
+    public void testSamplesAreReadLazily() throws Exception
+    {
+        try(LazyHgtDiscreteElevationModel dem = new LazyHgtDiscreteElevationModel(directory.toFile(), 2); HgtDiscreteElevationModel expected = new HgtDiscreteElevationModel(directory.resolve("N46E008.hgt").toFile()))
+        {
+            assertEquals(expected.elevationSample(8 * D + 123, 46 * D + 456), dem.elevationSample(8 * D + 123, 46 * D + 456), 0);
+            assertEquals(1, dem.openTiles());
+
+            assertEquals(0, dem.elevationSample(7 * D + 10, 47 * D + 10), 0);
+            assertEquals(1, dem.openTiles());
+        }
+    }
+
+    @Test
+    public void testOpenTilesBudgetIsRespected() throws Exception
+    {
+        try(LazyHgtDiscreteElevationModel dem = new LazyHgtDiscreteElevationModel(directory.toFile(), 2))
+        {
+            final double a = dem.elevationSample(7 * D + 10, 46 * D + 10);
+            dem.elevationSample(8 * D + 10, 46 * D + 10);
+            dem.elevationSample(7 * D + 20, 46 * D + 20);
+            dem.elevationSample(9 * D + 10, 47 * D + 10);
+
+            assertEquals(2, dem.openTiles());
+
+            assertEquals(a, dem.elevationSample(7 * D + 10, 46 * D + 10), 0);
+            assertEquals(2, dem.openTiles());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTileIsClosed() throws Exception
+    {
+        final List<String> opened = new ArrayList<>(), closed = new ArrayList<>();
+
+        try(LazyHgtDiscreteElevationModel dem = new LazyHgtDiscreteElevationModel(directory.toFile(), 2, file ->
+        {
+            final HgtDiscreteElevationModel model = new HgtDiscreteElevationModel(file);
+            opened.add(file.getName());
+
+            return new DiscreteElevationModel()
+            {
+                @Override
+                public Interval2D extent()
+                {
+                    return model.extent();
+                }
+
+                @Override
+                public double elevationSample(int x, int y)
+                {
+                    return model.elevationSample(x, y);
+                }
+
+                @Override
+                public void close()
+                {
+                    closed.add(file.getName());
+                }
+            };
+        }))
+        {
+            dem.elevationSample(7 * D + 10, 46 * D + 10);
+            dem.elevationSample(8 * D + 10, 46 * D + 10);
+            dem.elevationSample(7 * D + 20, 46 * D + 20);
+
+            // N46E008 was used less recently than N46E007, although opened after it
+            dem.elevationSample(9 * D + 10, 47 * D + 10);
+            assertEquals(2, dem.openTiles());
+            assertEquals(singletonList("N46E008.hgt"), closed);
+
+            dem.elevationSample(7 * D + 30, 46 * D + 30);
+            assertEquals(asList("N46E007.hgt", "N46E008.hgt", "N47E009.hgt"), opened);
+        }
+
+        assertEquals(asList("N46E008.hgt", "N46E007.hgt", "N47E009.hgt"), closed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDirectoryWithoutHgtFilesFails() throws IOException
+    {
+        final Path empty = Files.createTempDirectory("hgt");
+        empty.toFile().deleteOnExit();
+
+        new LazyHgtDiscreteElevationModel(empty.toFile(), 2);
+    }
+}
@@ -0,0 +1,133 @@
+package ch.epfl.alpano.dem;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MosaicDiscreteElevationModelTest
+{
+    private static final int D = DiscreteElevationModel.SAMPLES_PER_DEGREE;
+
+    @Test
+    public void testSamplesMatchCompositeModel()
+    {
+        final DiscreteElevationModel a = new DegreeDEM(6, 45), b = new DegreeDEM(7, 45), c = new DegreeDEM(6, 46), d = new DegreeDEM(7, 46);
+
+        final DiscreteElevationModel composite = a.union(b).union(c.union(d));
+        final DiscreteElevationModel mosaic = new MosaicDiscreteElevationModel(Arrays.asList(d, a, c, b));
+
+        assertEquals(composite.extent(), mosaic.extent());
+
+        final Random random = new Random(1);
+        for(int i = 0; i < 10_000; i++)
+        {
+            final int x = 6 * D + random.nextInt(2 * D + 1), y = 45 * D + random.nextInt(2 * D + 1);
+            assertEquals(composite.elevationSample(x, y), mosaic.elevationSample(x, y), 0);
+        }
+
+        assertEquals(composite.elevationSample(8 * D, 47 * D), mosaic.elevationSample(8 * D, 47 * D), 0);
+        assertEquals(composite.elevationSample(7 * D, 46 * D), mosaic.elevationSample(7 * D, 46 * D), 0);
+    }
+
+    @Test
+    public void testMissingTilesAreVoid()
+    {
+        final DiscreteElevationModel mosaic = new MosaicDiscreteElevationModel(Arrays.asList(new DegreeDEM(6, 45), new DegreeDEM(8, 46)));
+
+        assertEquals(new Interval2D(new Interval1D(6 * D, 9 * D), new Interval1D(45 * D, 47 * D)), mosaic.extent());
+
+        assertEquals(0, mosaic.elevationSample(7 * D + 10, 45 * D + 10), 0);
+        assertEquals(0, mosaic.elevationSample(6 * D + 10, 46 * D + 10), 0);
+        assertEquals(DegreeDEM.elevation(8 * D + 10, 46 * D + 10), mosaic.elevationSample(8 * D + 10, 46 * D + 10), 0);
+
+        // Edges shared with a void tile belong to the existing one
+        assertEquals(DegreeDEM.elevation(7 * D, 45 * D + 10), mosaic.elevationSample(7 * D, 45 * D + 10), 0);
+        assertEquals(DegreeDEM.elevation(8 * D, 46 * D), mosaic.elevationSample(8 * D, 46 * D), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfBoundsSampleFails()
+    {
+        new MosaicDiscreteElevationModel(Collections.singletonList(new DegreeDEM(6, 45))).elevationSample(5 * D, 45 * D);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverlappingTilesFail()
+    {
+        new MosaicDiscreteElevationModel(Arrays.asList(new DegreeDEM(6, 45), new DegreeDEM(6, 45)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMisalignedTileFails()
+    {
+        new MosaicDiscreteElevationModel(Collections.singletonList(new DiscreteElevationModel()
+        {
+            @Override
+            public Interval2D extent()
+            {
+                return new Interval2D(new Interval1D(10, 10 + D), new Interval1D(0, D));
+            }
+
+            @Override
+            public double elevationSample(int x, int y)
+            {
+                return 0;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyMosaicFails()
+    {
+        new MosaicDiscreteElevationModel(Collections.emptyList());
+    }
+
+    /**
+     * A one degree model whose samples depend on their position.
+     */
+    private static final class DegreeDEM implements DiscreteElevationModel
+    {
+        private final Interval2D extent;
+
+        private DegreeDEM(int longitude, int latitude)
+        {
+            this.extent = new Interval2D(new Interval1D(longitude * D, (longitude + 1) * D), new Interval1D(latitude * D, (latitude + 1) * D));
+        }
+
+        private static double elevation(int x, int y)
+        {
+            return (x % 1000) + 3 * (y % 700);
+        }
+
+        @Override
+        public Interval2D extent()
+        {
+            return extent;
+        }
+
+        @Override
+        public double elevationSample(int x, int y)
+        {
+            if(!extent.contains(x, y))
+                throw new IllegalArgumentException();
+
+            return elevation(x, y);
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
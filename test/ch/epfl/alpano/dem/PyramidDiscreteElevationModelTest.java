@@ -0,0 +1,232 @@
+package ch.epfl.alpano.dem;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PyramidDiscreteElevationModelTest
+{
+    @Test
+    public void testBoundsCoverSamples()
+    {
+        final DiscreteElevationModel dem = new WavyDEM(new AtomicLong());
+        final DiscreteElevationModel pyramid = new PyramidDiscreteElevationModel(dem);
+
+        final Random random = new Random(2);
+        for(int i = 0; i < 500; i++)
+        {
+            final int xMin = 100 + random.nextInt(600), yMin = -50 + random.nextInt(400);
+            final int xMax = xMin + random.nextInt(random.nextBoolean() ? 20 : 300), yMax = yMin + random.nextInt(random.nextBoolean() ? 20 : 300);
+
+            double max = Double.NEGATIVE_INFINITY;
+            for(int x = xMin; x <= Math.min(xMax, 700); x++)
+                for(int y = Math.max(yMin, -50); y <= Math.min(yMax, 350); y++)
+                    max = Math.max(max, dem.elevationSample(x, y));
+
+            final double bound = pyramid.maxElevationSample(xMin, yMin, xMax, yMax);
+
+            assertTrue(bound >= max);
+        }
+
+        // A single sample is bounded by the maximum of its block
+        assertEquals(blockMax(404, 94), pyramid.maxElevationSample(412, 101, 412, 101), 1e-3);
+    }
+
+    @Test
+    public void testWholeExtentBoundIsExact()
+    {
+        final DiscreteElevationModel dem = new WavyDEM(new AtomicLong());
+
+        double max = Double.NEGATIVE_INFINITY;
+        for(int x = 100; x <= 700; x++)
+            for(int y = -50; y <= 350; y++)
+                max = Math.max(max, dem.elevationSample(x, y));
+
+        assertEquals(max, new PyramidDiscreteElevationModel(dem).maxElevationSample(0, -100, 1000, 1000), 1e-3);
+    }
+
+    @Test
+    public void testRectangleOutOfExtentHasNoSamples()
+    {
+        final DiscreteElevationModel pyramid = new PyramidDiscreteElevationModel(new WavyDEM(new AtomicLong()));
+
+        assertEquals(Double.NEGATIVE_INFINITY, pyramid.maxElevationSample(800, 0, 900, 10), 0);
+    }
+
+    @Test
+    public void testSamplesAreDelegated()
+    {
+        final DiscreteElevationModel pyramid = new PyramidDiscreteElevationModel(new WavyDEM(new AtomicLong()));
+
+        assertEquals(new Interval2D(new Interval1D(100, 700), new Interval1D(-50, 350)), pyramid.extent());
+        assertEquals(WavyDEM.elevation(345, 12), pyramid.elevationSample(345, 12), 0);
+    }
+
+    @Test
+    public void testPersistedPyramidIsReused() throws IOException
+    {
+        final File file = File.createTempFile("pyramid", PyramidDiscreteElevationModel.FILE_EXTENSION);
+        file.delete();
+
+        try
+        {
+            final DiscreteElevationModel computed = new PyramidDiscreteElevationModel(new WavyDEM(new AtomicLong()), file);
+            assertTrue(file.isFile());
+
+            final AtomicLong samples = new AtomicLong();
+            final DiscreteElevationModel read = new PyramidDiscreteElevationModel(new WavyDEM(samples), file);
+
+            assertEquals(0, samples.get());
+
+            final Random random = new Random(3);
+            for(int i = 0; i < 100; i++)
+            {
+                final int xMin = 100 + random.nextInt(600), yMin = -50 + random.nextInt(400);
+                final int xMax = xMin + random.nextInt(300), yMax = yMin + random.nextInt(300);
+
+                assertEquals(computed.maxElevationSample(xMin, yMin, xMax, yMax), read.maxElevationSample(xMin, yMin, xMax, yMax), 0);
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMismatchedFileIsComputedAgain() throws IOException
+    {
+        final File file = File.createTempFile("pyramid", PyramidDiscreteElevationModel.FILE_EXTENSION);
+
+        try
+        {
+            // Empty file, then pyramid of another extent
+            final AtomicLong samples = new AtomicLong();
+            new PyramidDiscreteElevationModel(new WavyDEM(samples), file);
+            assertTrue(samples.get() > 0);
+
+            new PyramidDiscreteElevationModel(new ConstantDEM(), file);
+
+            samples.set(0);
+            final DiscreteElevationModel pyramid = new PyramidDiscreteElevationModel(new WavyDEM(samples), file);
+            assertTrue(samples.get() > 0);
+
+            assertEquals(blockMax(404, 94), pyramid.maxElevationSample(412, 101, 412, 101), 1e-3);
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMosaicBoundsIncludeMissingTiles()
+    {
+        final int d = DiscreteElevationModel.SAMPLES_PER_DEGREE;
+
+        final DiscreteElevationModel mosaic = new MosaicDiscreteElevationModel(Arrays.asList(new PyramidDiscreteElevationModel(new ConstantDEM()), new ConstantDEM(2 * d, 1 * d)));
+
+        assertEquals(ConstantDEM.ELEVATION, mosaic.maxElevationSample(10, 10, 20, 20), 0);
+        assertEquals(Double.POSITIVE_INFINITY, mosaic.maxElevationSample(2 * d + 10, d + 10, 2 * d + 20, d + 20), 0);
+        assertEquals(0, mosaic.maxElevationSample(d + 10, 10, d + 20, 20), 0); // Missing tile
+        assertEquals(ConstantDEM.ELEVATION, mosaic.maxElevationSample(d - 10, 10, d + 20, 20), 0);
+    }
+
+    /**
+     * Returns the maximum of the samples of a block of the first level of the pyramid of a {@link WavyDEM}.
+     * @param x the x coordinate of the bottom left sample of the block
+     * @param y the y coordinate of the bottom left sample of the block
+     * @return the maximum
+     */
+    private static double blockMax(int x, int y)
+    {
+        double max = Double.NEGATIVE_INFINITY;
+        for(int i = x; i <= x + PyramidDiscreteElevationModel.BLOCK_SIZE; i++)
+            for(int j = y; j <= y + PyramidDiscreteElevationModel.BLOCK_SIZE; j++)
+                max = Math.max(max, WavyDEM.elevation(i, j));
+
+        return max;
+    }
+
+    /**
+     * A small model with varied samples, counting the samples read.
+     */
+    private static final class WavyDEM implements DiscreteElevationModel
+    {
+        private final AtomicLong samples;
+
+        private WavyDEM(AtomicLong samples)
+        {
+            this.samples = samples;
+        }
+
+        private static double elevation(int x, int y)
+        {
+            return 1000 + 700 * Math.sin(x / 23.0) * Math.cos(y / 31.0) + 0.37 * x;
+        }
+
+        @Override
+        public Interval2D extent()
+        {
+            return new Interval2D(new Interval1D(100, 700), new Interval1D(-50, 350));
+        }
+
+        @Override
+        public double elevationSample(int x, int y)
+        {
+            samples.incrementAndGet();
+
+            return elevation(x, y);
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    /**
+     * A one degree model at constant elevation.
+     */
+    private static final class ConstantDEM implements DiscreteElevationModel
+    {
+        private static final double ELEVATION = 321;
+
+        private final Interval2D extent;
+
+        private ConstantDEM()
+        {
+            this(0, 0);
+        }
+
+        private ConstantDEM(int x, int y)
+        {
+            this.extent = new Interval2D(new Interval1D(x, x + SAMPLES_PER_DEGREE), new Interval1D(y, y + SAMPLES_PER_DEGREE));
+        }
+
+        @Override
+        public Interval2D extent()
+        {
+            return extent;
+        }
+
+        @Override
+        public double elevationSample(int x, int y)
+        {
+            return ELEVATION;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -44,25 +44,29 @@ public final class DrawPanorama {
                      new HgtDiscreteElevationModel(HGT_FILE)) {
             ContinuousElevationModel cDEM =
                     new ContinuousElevationModel(dDEM);
-            Panorama p = new PanoramaComputer(cDEM)
-                    .computePanorama(PARAMS);
 
-            BufferedImage i =
-                    new BufferedImage(IMAGE_WIDTH,
-                            IMAGE_HEIGHT,
-                            TYPE_INT_RGB);
+            ImageIO.write(draw(new PanoramaComputer(cDEM)), "png", new File("res/actual/niesen.png"));
+        }
+    }
 
-            for (int x = 0; x < IMAGE_WIDTH; ++x) {
-                for (int y = 0; y < IMAGE_HEIGHT; ++y) {
-                    float d = p.distanceAt(x, y);
-                    int c = (d == Float.POSITIVE_INFINITY)
-                            ? 0x87_CE_EB
-                            : gray((d - 2_000) / 15_000);
-                    i.setRGB(x, y, c);
-                }
-            }
+    public static BufferedImage draw(PanoramaComputer computer) {
+        Panorama p = computer.computePanorama(PARAMS);
 
-            ImageIO.write(i, "png", new File("res/actual/niesen.png"));
+        BufferedImage i =
+                new BufferedImage(IMAGE_WIDTH,
+                        IMAGE_HEIGHT,
+                        TYPE_INT_RGB);
+
+        for (int x = 0; x < IMAGE_WIDTH; ++x) {
+            for (int y = 0; y < IMAGE_HEIGHT; ++y) {
+                float d = p.distanceAt(x, y);
+                int c = (d == Float.POSITIVE_INFINITY)
+                        ? 0x87_CE_EB
+                        : gray((d - 2_000) / 15_000);
+                i.setRGB(x, y, c);
+            }
         }
+
+        return i;
     }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package ch.epfl.alpano.gui;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaComputerTest;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.render.ArgbPainter;
+import ch.epfl.alpano.render.PanoramaRasterizer;
+import javafx.scene.paint.Color;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ImagePainterTest
+{
+    @Test
+    public void testHsbArgbMatchesColor()
+    {
+        final Random random = new Random(4);
+
+        for(int i = 0; i < 100_000; i++)
+        {
+            final float hue = (random.nextFloat() - 0.2f) * 900, saturation = random.nextInt(10) == 0 ? 0 : random.nextFloat(), brightness = random.nextFloat(), opacity = random.nextInt(4) == 0 ? 0 : 1;
+            final ImagePainter painter = ImagePainter.hsb((x, y) -> hue, (x, y) -> saturation, (x, y) -> brightness, (x, y) -> opacity);
+
+            assertEquals(argb(painter.colorAt(0, 0)), painter.argbAt(0, 0));
+        }
+    }
+
+    @Test
+    public void testGrayArgbMatchesColor()
+    {
+        final Random random = new Random(5);
+
+        for(int i = 0; i < 100_000; i++)
+        {
+            final float gray = random.nextFloat(), opacity = random.nextFloat();
+            final ImagePainter painter = ImagePainter.gray((x, y) -> gray, (x, y) -> opacity);
+
+            assertEquals(argb(painter.colorAt(0, 0)), painter.argbAt(0, 0));
+        }
+    }
+
+    @Test
+    public void testNaNComponentIsAccepted()
+    {
+        final ImagePainter painter = ImagePainter.gray((x, y) -> Float.NaN, (x, y) -> 1);
+
+        assertEquals(argb(painter.colorAt(0, 0)), painter.argbAt(0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testArgbFailsOnInvalidComponent()
+    {
+        ImagePainter.gray((x, y) -> 1.5f, (x, y) -> 1).argbAt(0, 0);
+    }
+
+    @Test
+    public void testDefaultArgbConvertsColor()
+    {
+        final ImagePainter painter = (x, y) -> Color.color(0.2, 0.4, 0.6, 1);
+
+        assertEquals(0xFF336699, painter.argbAt(0, 0));
+    }
+
+    @Test
+    public void testOutlinesPaintersPaintTheSky()
+    {
+        final PanoramaParameters parameters = PanoramaComputerTest.createPanoramaParameters();
+
+        final Panorama panorama;
+        try(PanoramaComputer computer = new PanoramaComputer(PanoramaComputerTest.createHillyDEM()))
+        {
+            panorama = computer.computePanorama(parameters);
+        }
+
+        assertEquals(Float.POSITIVE_INFINITY, panorama.distanceAt(0, 0), 0);
+
+        // Between two samples of the sky, the distance to the neighbors is not a number
+        for(ArgbPainter painter : new ArgbPainter[] {PanoramaRasterizer.blackWhiteBorderedPainter(panorama), PanoramaRasterizer.borderedPainter(panorama)})
+        {
+            final int[] pixels = PanoramaRasterizer.render(panorama, painter);
+
+            for(int x = 0; x < parameters.width(); x++)
+                for(int y = 0; y < parameters.height(); y++)
+                    assertEquals(painter.argbAt(x, y), pixels[y * parameters.width() + x]);
+        }
+    }
+
+    /**
+     * Packs a color as written to an image.
+     * @param color the color
+     * @return the packed color
+     */
+    private static int argb(Color color)
+    {
+        return (int) Math.round(color.getOpacity() * 255) << 24 | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8 | (int) Math.round(color.getBlue() * 255);
+    }
+}
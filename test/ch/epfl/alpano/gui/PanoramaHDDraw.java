@@ -7,6 +7,7 @@ import ch.epfl.alpano.PanoramaParameters;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
 import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import ch.epfl.alpano.render.ChannelPainter;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 
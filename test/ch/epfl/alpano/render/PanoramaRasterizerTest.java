@@ -0,0 +1,153 @@
+package ch.epfl.alpano.render;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.summit.Summit;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PanoramaRasterizerTest
+{
+    private static Panorama createPanorama()
+    {
+        final PanoramaParameters parameters = new PanoramaParameters(new GeoPoint(0, 0), 1000, 0, Math.toRadians(60), 10_000, 50, 37);
+        final Panorama.Builder builder = new Panorama.Builder(parameters);
+
+        for(int x = 0; x < parameters.width(); x++)
+            for(int y = 0; y < parameters.height(); y++)
+                builder.setDistanceAt(x, y, y < 5 ? Float.POSITIVE_INFINITY : x * 100 + y * 7).setSlopeAt(x, y, (float) (x + y) / 100);
+
+        return builder.build();
+    }
+
+    @Test
+    public void testRenderPaintsEveryPixel()
+    {
+        final Panorama panorama = createPanorama();
+        final int width = panorama.parameters().width();
+
+        for(int painter = 0; painter < 3; painter++)
+        {
+            final ArgbPainter argbPainter = PanoramaRasterizer.painter(panorama, painter);
+            final int[] pixels = PanoramaRasterizer.render(panorama, argbPainter);
+
+            assertEquals(width * panorama.parameters().height(), pixels.length);
+
+            for(int x = 0; x < width; x++)
+                for(int y = 0; y < panorama.parameters().height(); y++)
+                    assertEquals(argbPainter.argbAt(x, y), pixels[y * width + x]);
+        }
+    }
+
+    @Test
+    public void testPaintersReadOnlyTheirChannels()
+    {
+        final Panorama full = createPanorama();
+        final PanoramaParameters parameters = full.parameters();
+
+        for(int painter = 0; painter < 3; painter++)
+        {
+            final Set<Panorama.Channel> channels = PanoramaRasterizer.channels(painter);
+            final Panorama.Builder builder = new Panorama.Builder(parameters, Panorama.Storage.HEAP, channels);
+
+            for(int x = 0; x < parameters.width(); x++)
+            {
+                for(int y = 0; y < parameters.height(); y++)
+                {
+                    builder.setDistanceAt(x, y, full.distanceAt(x, y));
+
+                    if(channels.contains(Panorama.Channel.SLOPE))
+                        builder.setSlopeAt(x, y, full.slopeAt(x, y));
+                }
+            }
+
+            final Panorama panorama = builder.build();
+
+            assertArrayEquals(PanoramaRasterizer.render(full, PanoramaRasterizer.painter(full, painter)), PanoramaRasterizer.render(panorama, PanoramaRasterizer.painter(panorama, painter)));
+        }
+    }
+
+    @Test
+    public void testRenderImageHasPixels()
+    {
+        final Panorama panorama = createPanorama();
+        final ArgbPainter painter = PanoramaRasterizer.coloredPainter(panorama);
+
+        final BufferedImage image = PanoramaRasterizer.renderImage(panorama, painter);
+
+        assertEquals(panorama.parameters().width(), image.getWidth());
+        assertEquals(panorama.parameters().height(), image.getHeight());
+
+        assertEquals(0, image.getRGB(3, 2) >>> 24); // The sky is transparent
+        assertEquals(painter.argbAt(17, 23), image.getRGB(17, 23));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRenderFailsOnSmallArray()
+    {
+        final Panorama panorama = createPanorama();
+
+        PanoramaRasterizer.render(panorama, (x, y) -> 0, 0, new int[10]);
+    }
+
+    @Test
+    public void testComposeDrawsLabels()
+    {
+        final BufferedImage transparent = new BufferedImage(50, 40, BufferedImage.TYPE_INT_ARGB);
+
+        final SummitLabel label = new SummitLabel(new Summit("TEST", new GeoPoint(0, 0), 1000), 25, 35, 10);
+        final BufferedImage composed = PanoramaRasterizer.compose(transparent, Collections.singletonList(label));
+
+        // The line joins the label to the summit
+        assertEquals(255, composed.getRGB(25, 25) >>> 24);
+        assertEquals(0, composed.getRGB(40, 30));
+    }
+
+    @Test
+    public void testDownsamplingAveragesSamples()
+    {
+        final Panorama even = new Panorama.Builder(new PanoramaParameters(new GeoPoint(0, 0), 1000, 0, Math.toRadians(60), 10_000, 48, 36)).build();
+
+        final ArgbPainter painter = (x, y) -> 0xFF000000 | (x * 5) << 16 | (y * 7) << 8 | (x + y);
+        final int[] pixels = PanoramaRasterizer.render(even, painter, 2);
+
+        assertEquals(12 * 9, pixels.length);
+
+        for(int x = 0; x < 12; x++)
+        {
+            for(int y = 0; y < 9; y++)
+            {
+                // The samples are linear, their average is the one of the center of the pixel
+                final double red = (x * 4 + 1.5) * 5, green = (y * 4 + 1.5) * 7, blue = x * 4 + y * 4 + 3;
+                assertEquals(0xFF000000 | (int) Math.round(red) << 16 | (int) Math.round(green) << 8 | (int) Math.round(blue), pixels[y * 12 + x]);
+            }
+        }
+
+        assertArrayEquals(PanoramaRasterizer.render(even, painter), PanoramaRasterizer.render(even, painter, 0));
+        assertEquals(12, PanoramaRasterizer.renderImage(even, painter, 2).getWidth());
+    }
+
+    @Test
+    public void testDownsamplingIgnoresTransparentSamples()
+    {
+        // Half of the samples are transparent black, the other ones opaque white
+        final ArgbPainter painter = (x, y) -> x % 2 == 0 ? 0 : 0xFFFFFFFF;
+
+        assertEquals(0x80FFFFFF, PanoramaRasterizer.averageAt(painter, 0, 0, 2));
+        assertEquals(0, PanoramaRasterizer.averageAt((x, y) -> 0x00FF0000, 0, 0, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDownsamplingFailsOnIndivisibleSize()
+    {
+        final Panorama panorama = createPanorama(); // 37 rows
+
+        PanoramaRasterizer.render(panorama, (x, y) -> 0, 1);
+    }
+}
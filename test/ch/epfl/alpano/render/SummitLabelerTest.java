@@ -0,0 +1,173 @@
+package ch.epfl.alpano.render;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaComputerTest;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.summit.Summit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SummitLabelerTest
+{
+    private static SummitLabel label(String name, int x, int y)
+    {
+        return new SummitLabel(new Summit(name, new GeoPoint(0, 0), 2000), x, y, y - 22);
+    }
+
+    @Test
+    public void testLayoutKeepsSpacedLabelsWithRoom()
+    {
+        final List<SummitLabel> visible = Arrays.asList(
+                label("HIGH", 300, 100), // No room above
+                label("A", 200, 180),
+                label("CLOSE", 210, 190), // Too close to A
+                label("EDGE", 10, 200), // Too close to the border
+                label("B", 400, 250));
+
+        final List<SummitLabel> labels = SummitLabeler.layout(visible, 1000);
+
+        assertEquals(2, labels.size());
+        assertEquals("A (2000 m)", labels.get(0).text());
+        assertEquals("B", labels.get(1).summit().name());
+
+        for(SummitLabel label : labels)
+        {
+            assertEquals(180 - 22, label.labelY());
+            assertEquals(180 - 22 + SummitLabeler.LABEL_LINE_SPACE, label.lineY());
+        }
+
+        assertEquals(400, labels.get(1).x());
+        assertEquals(250, labels.get(1).y());
+    }
+
+    @Test
+    public void testPanoramaOcclusionMatchesMarchedRays()
+    {
+        final AtomicLong samples = new AtomicLong();
+        final ContinuousElevationModel cDEM = hills(samples);
+        final SummitLabeler labeler = new SummitLabeler(cDEM, hillSummits(cDEM));
+
+        final PanoramaParameters display = parameters(300, 100);
+        final Panorama panorama;
+
+        try(PanoramaComputer computer = new PanoramaComputer(cDEM))
+        {
+            panorama = computer.computePanorama(parameters(1200, 400), Panorama.Storage.HEAP, EnumSet.of(Panorama.Channel.DISTANCE));
+        }
+
+        samples.set(0);
+        final List<SummitLabel> marched = labeler.visibleSummits(display);
+        final long marchedSamples = samples.getAndSet(0);
+
+        final List<SummitLabel> read = labeler.visibleSummits(display, panorama);
+
+        assertTrue(marched.size() > 10);
+        assertTrue(samples.get() < marchedSamples / 2);
+
+        assertEquals(marched.size(), read.size());
+        for(int i = 0; i < marched.size(); i++)
+        {
+            assertSame(marched.get(i).summit(), read.get(i).summit());
+            assertEquals(marched.get(i).x(), read.get(i).x());
+            assertEquals(marched.get(i).y(), read.get(i).y());
+        }
+
+        assertEquals(labeler.labels(display).size(), labeler.labels(display, panorama).size());
+    }
+
+    @Test
+    public void testParallelVisibilityIsDeterministic()
+    {
+        final ContinuousElevationModel cDEM = hills(new AtomicLong());
+        final List<Summit> summits = hillSummits(cDEM);
+        final ForkJoinPool single = new ForkJoinPool(1), several = new ForkJoinPool(4);
+
+        try
+        {
+            final List<SummitLabel> expected = new SummitLabeler(cDEM, summits, single).visibleSummits(parameters(300, 100));
+            final SummitLabeler labeler = new SummitLabeler(cDEM, summits, several);
+
+            assertTrue(expected.size() > 10);
+
+            for(int i = 1; i < expected.size(); i++)
+            {
+                final SummitLabel previous = expected.get(i - 1), label = expected.get(i);
+
+                assertTrue(previous.y() < label.y() || (previous.y() == label.y() && previous.summit().elevation() >= label.summit().elevation()));
+            }
+
+            for(int k = 0; k < 5; k++)
+            {
+                final List<SummitLabel> actual = labeler.visibleSummits(parameters(300, 100));
+
+                assertEquals(expected.size(), actual.size());
+                for(int i = 0; i < expected.size(); i++)
+                    assertSame(expected.get(i).summit(), actual.get(i).summit());
+            }
+        }
+        finally
+        {
+            single.shutdown();
+            several.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPanoramaOfAnotherViewIsRejected()
+    {
+        final ContinuousElevationModel cDEM = hills(new AtomicLong());
+        final PanoramaParameters other = new PanoramaParameters(new GeoPoint(Math.toRadians(7.5), Math.toRadians(46.5)), 1500, Math.toRadians(100), Math.toRadians(60), 30_000, 60, 20);
+
+        try(PanoramaComputer computer = new PanoramaComputer(cDEM))
+        {
+            new SummitLabeler(cDEM, hillSummits(cDEM)).labels(parameters(60, 20), computer.computePanorama(other));
+        }
+    }
+
+    /**
+     * Returns a one degree model of rolling hills around 46.5° N 7.5° E, counting the samples read.
+     */
+    private static ContinuousElevationModel hills(AtomicLong samples)
+    {
+        return new ContinuousElevationModel(PanoramaComputerTest.createHillyDiscreteDEM(samples, 7, 46));
+    }
+
+    /**
+     * Returns the parameters of a view of the hills.
+     */
+    private static PanoramaParameters parameters(int width, int height)
+    {
+        return new PanoramaParameters(new GeoPoint(Math.toRadians(7.5), Math.toRadians(46.5)), 1800, Math.toRadians(90), Math.toRadians(60), 30_000, width, height);
+    }
+
+    /**
+     * Returns summits on a grid over the hills, at the elevation of the terrain.
+     */
+    private static List<Summit> hillSummits(ContinuousElevationModel cDEM)
+    {
+        final List<Summit> summits = new ArrayList<>();
+
+        for(int i = 0; i < 40; i++)
+        {
+            for(int j = 0; j < 20; j++)
+            {
+                final GeoPoint position = new GeoPoint(Math.toRadians(7.5 + i * 0.01), Math.toRadians(46.4 + j * 0.01));
+
+                summits.add(new Summit("S" + i + "-" + j, position, (int) cDEM.elevationAt(position)));
+            }
+        }
+
+        return summits;
+    }
+}
@@ -0,0 +1,98 @@
+package ch.epfl.alpano.summit;
+
+import ch.epfl.alpano.GeoPoint;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SummitIndexTest
+{
+    @Test
+    public void testSummitsWithinMatchesFullScan()
+    {
+        final List<Summit> summits = randomSummits(new Random(1), 3000, 5, 11, 45, 48);
+        final SummitIndex index = new SummitIndex(summits);
+
+        final Random random = new Random(2);
+        for(int i = 0; i < 200; i++)
+        {
+            final GeoPoint center = new GeoPoint(Math.toRadians(3 + 10 * random.nextDouble()), Math.toRadians(44 + 5 * random.nextDouble()));
+            final double maxDistance = random.nextInt(300_000);
+
+            assertEquals(fullScan(summits, center, maxDistance), index.summitsWithin(center, maxDistance));
+        }
+    }
+
+    @Test
+    public void testSummitsWithinAroundPolesAndAntimeridian()
+    {
+        final List<Summit> summits = new ArrayList<>(randomSummits(new Random(3), 500, -180, 180, 80, 90));
+        summits.addAll(randomSummits(new Random(4), 500, 179, 180, -10, 10));
+        summits.addAll(randomSummits(new Random(5), 500, -180, -179, -10, 10));
+
+        final SummitIndex index = new SummitIndex(summits);
+
+        for(GeoPoint center : Arrays.asList(new GeoPoint(0, Math.toRadians(89)), new GeoPoint(Math.PI, 0), new GeoPoint(-Math.PI, Math.toRadians(1)), new GeoPoint(Math.toRadians(90), Math.toRadians(85))))
+            for(double maxDistance : new double[] {0, 50_000, 300_000, 2_000_000})
+                assertEquals(fullScan(summits, center, maxDistance), index.summitsWithin(center, maxDistance));
+    }
+
+    @Test
+    public void testSummitsAreKeptInOrder()
+    {
+        final List<Summit> summits = randomSummits(new Random(6), 100, 7, 8, 46, 47);
+        final SummitIndex index = new SummitIndex(summits);
+
+        assertEquals(summits, index.summits());
+        assertEquals(summits, index.summitsWithin(new GeoPoint(Math.toRadians(7.5), Math.toRadians(46.5)), 200_000));
+    }
+
+    @Test
+    public void testEmptyIndex()
+    {
+        assertTrue(new SummitIndex(Collections.emptyList()).summitsWithin(new GeoPoint(0, 0), 100_000).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSummitsWithinFailsWithNegativeDistance()
+    {
+        new SummitIndex(Collections.emptyList()).summitsWithin(new GeoPoint(0, 0), -1);
+    }
+
+    /**
+     * Returns the summits at most at a given distance from a point, by testing all of them.
+     */
+    private static List<Summit> fullScan(List<Summit> summits, GeoPoint center, double maxDistance)
+    {
+        final List<Summit> within = new ArrayList<>();
+
+        for(Summit summit : summits)
+            if(summit.position().distanceTo(center) <= maxDistance)
+                within.add(summit);
+
+        return within;
+    }
+
+    /**
+     * Returns summits randomly placed in an area given in degrees.
+     */
+    private static List<Summit> randomSummits(Random random, int count, double minLongitude, double maxLongitude, double minLatitude, double maxLatitude)
+    {
+        final List<Summit> summits = new ArrayList<>();
+
+        for(int i = 0; i < count; i++)
+        {
+            final double longitude = minLongitude + (maxLongitude - minLongitude) * random.nextDouble(), latitude = minLatitude + (maxLatitude - minLatitude) * random.nextDouble();
+
+            summits.add(new Summit("S" + i, new GeoPoint(Math.toRadians(longitude), Math.toRadians(latitude)), 1000 + random.nextInt(3000)));
+        }
+
+        return summits;
+    }
+}